@@ -0,0 +1,73 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Same sweep as MultivariateKalmanFilterBenchmark on the flat array engine, gc.alloc.rate.norm should read ~0
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ArrayMultivariateKalmanFilterBenchmark {
+
+    @Param({"1", "2", "3", "4", "6", "9", "12"})
+    public int stateDimension;
+
+    @Param({"1", "2", "3", "6"})
+    public int measurementDimension;
+
+    @Param({"INVERSE", "JOSEPH", "SEQUENTIAL"})
+    public UpdateMode updateMode;
+
+    private ArrayMultivariateKalmanFilter filter;
+    private double[] F;
+    private double[] Q;
+    private double[] H;
+    private double[] R;
+    private double[] z;
+
+    @Setup
+    public void setup(){
+        filter = new ArrayMultivariateKalmanFilter(stateDimension, measurementDimension);
+        filter.setUpdateMode(updateMode);
+
+        F = BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension));
+        Q = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        H = BenchmarkMatrices.flatten(BenchmarkMatrices.selection(measurementDimension, stateDimension));
+        R = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(measurementDimension, BenchmarkMatrices.VARIANCE));
+        z = new double[measurementDimension];
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter move(){
+        filter.move(F, Q);
+        return filter;
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter measure(){
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter step(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.avisautomata;
+
+//Well conditioned inputs shared by the benchmarks: a chain of integrators for F, and H rows that each pick one state.
+//F is slightly damped so that millions of move() calls in a row settle P instead of growing it until it overflows.
+final class BenchmarkMatrices {
+
+    static final double DT = 0.01;
+    static final double VARIANCE = 0.01;
+    static final double DAMPING = 0.99;
+
+    private BenchmarkMatrices(){}
+
+    static double[][] transition(int n){
+        double[][] F = new double[n][n];
+        for(int i = 0; i < n; i++){
+            F[i][i] = DAMPING;
+            if(i + 1 < n){
+                F[i][i + 1] = DT;
+            }
+        }
+        return F;
+    }
+
+    static double[][] diagonal(int n, double value){
+        double[][] D = new double[n][n];
+        for(int i = 0; i < n; i++){
+            D[i][i] = value;
+        }
+        return D;
+    }
+
+    static double[][] selection(int k, int n){
+        double[][] H = new double[k][n];
+        for(int i = 0; i < k; i++){
+            H[i][i % n] = 1;
+        }
+        return H;
+    }
+
+    static double[] flatten(double[][] matrix){
+        int cols = matrix[0].length;
+        double[] flat = new double[matrix.length * cols];
+        for(int i = 0; i < matrix.length; i++){
+            System.arraycopy(matrix[i], 0, flat, i * cols, cols);
+        }
+        return flat;
+    }
+
+}
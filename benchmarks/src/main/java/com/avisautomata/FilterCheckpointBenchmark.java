@@ -0,0 +1,75 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+//Checkpointing a whole bank of 10,000 filters, with and without forcing it to disk, against restoring it
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FilterCheckpointBenchmark {
+
+    private static final int COUNT = 10_000;
+
+    @Param({"2", "4", "6", "9"})
+    public int stateDimension;
+
+    private Path path;
+    private FilterCheckpoint checkpoint;
+    private KalmanFilterBank bank;
+    private double[] times;
+    private double time;
+
+    @Setup
+    public void setup() throws IOException {
+        path = Files.createTempFile("filters", ".ckpt");
+        checkpoint = FilterCheckpoint.open(path, stateDimension, COUNT);
+        bank = new KalmanFilterBank(COUNT, stateDimension, 1);
+        times = new double[COUNT];
+        checkpoint.save(0, bank);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        checkpoint.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public FilterCheckpoint save(){
+        checkpoint.save(time++, bank);
+        return checkpoint;
+    }
+
+    @Benchmark
+    public FilterCheckpoint saveAndFlush(){
+        checkpoint.save(time++, bank);
+        checkpoint.flush();
+        return checkpoint;
+    }
+
+    @Benchmark
+    public double[] restore(){
+        checkpoint.restore(bank, times);
+        return times;
+    }
+
+}
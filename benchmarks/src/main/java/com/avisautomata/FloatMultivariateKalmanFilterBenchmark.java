@@ -0,0 +1,77 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Same sweep as ArrayMultivariateKalmanFilterBenchmark in single precision, to compare against its JOSEPH numbers
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FloatMultivariateKalmanFilterBenchmark {
+
+    @Param({"1", "2", "3", "4", "6", "9", "12"})
+    public int stateDimension;
+
+    @Param({"1", "2", "3", "6"})
+    public int measurementDimension;
+
+    private FloatMultivariateKalmanFilter filter;
+    private float[] F;
+    private float[] Q;
+    private float[] H;
+    private float[] R;
+    private float[] z;
+
+    @Setup
+    public void setup(){
+        filter = new FloatMultivariateKalmanFilter(stateDimension, measurementDimension);
+
+        F = narrow(BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension)));
+        Q = narrow(BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE)));
+        H = narrow(BenchmarkMatrices.flatten(BenchmarkMatrices.selection(measurementDimension, stateDimension)));
+        R = narrow(BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(measurementDimension, BenchmarkMatrices.VARIANCE)));
+        z = new float[measurementDimension];
+    }
+
+    private static float[] narrow(double[] values){
+        float[] out = new float[values.length];
+        for(int i = 0; i < values.length; i++){
+            out[i] = (float) values[i];
+        }
+        return out;
+    }
+
+    @Benchmark
+    public FloatMultivariateKalmanFilter move(){
+        filter.move(F, Q);
+        return filter;
+    }
+
+    @Benchmark
+    public FloatMultivariateKalmanFilter measure(){
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+    @Benchmark
+    public FloatMultivariateKalmanFilter step(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//One predict and then every sensor reporting, each with 2 rows: one covariance-form update per sensor against one
+//information-form contribution per sensor and a single solve back to x
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InformationKalmanFilterBenchmark {
+
+    private static final int ROWS = 2;
+
+    @Param({"3", "6", "12"})
+    public int stateDimension;
+
+    @Param({"1", "4", "16", "64"})
+    public int sensors;
+
+    private ArrayMultivariateKalmanFilter covariance;
+    private InformationKalmanFilter information;
+    private InformationKalmanFilter.Contribution[] contributions;
+    private double[] F;
+    private double[] Q;
+    private double[][] H;
+    private double[] R;
+    private double[] z;
+    private double[] state;
+
+    @Setup
+    public void setup(){
+        covariance = new ArrayMultivariateKalmanFilter(stateDimension, ROWS);
+        covariance.setUpdateMode(UpdateMode.JOSEPH);
+        information = new InformationKalmanFilter(stateDimension, ROWS);
+
+        F = BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension));
+        Q = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        R = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(ROWS, BenchmarkMatrices.VARIANCE));
+        z = new double[ROWS];
+        state = new double[stateDimension];
+
+        //Sensor s picks states s and s + 1
+        H = new double[sensors][ROWS * stateDimension];
+        contributions = new InformationKalmanFilter.Contribution[sensors];
+        for(int s = 0; s < sensors; s++){
+            for(int i = 0; i < ROWS; i++){
+                H[s][i * stateDimension + (s + i) % stateDimension] = 1;
+            }
+            contributions[s] = new InformationKalmanFilter.Contribution(stateDimension, ROWS);
+        }
+    }
+
+    @Benchmark
+    public double[] covarianceForm(){
+        covariance.move(F, Q);
+        for(int s = 0; s < sensors; s++){
+            covariance.measure(H[s], R, z);
+        }
+        covariance.getState(state);
+        return state;
+    }
+
+    @Benchmark
+    public double[] informationForm(){
+        information.move(F, Q);
+        for(int s = 0; s < sensors; s++){
+            contributions[s].compute(H[s], R, z);
+        }
+        information.add(contributions);
+        information.getState(state);
+        return state;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+//One predict and update of a whole bank across pools of different sizes, to see how close the executor gets to
+//linear scaling. parallelism 0 is the bank on its own, without the executor, as the single thread baseline.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KalmanBankExecutorBenchmark {
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"1000", "10000", "100000"})
+    public int count;
+
+    @Param({"4"})
+    public int stateDimension;
+
+    private KalmanFilterBank bank;
+    private ForkJoinPool pool;
+    private KalmanBankExecutor executor;
+    private double[] F;
+    private double[] Q;
+    private double[] H;
+    private double[] R;
+    private double[] z;
+
+    @Setup
+    public void setup(){
+        bank = new KalmanFilterBank(count, stateDimension, 1);
+        if(parallelism > 0){
+            pool = new ForkJoinPool(parallelism);
+            executor = new KalmanBankExecutor(bank, pool);
+        }
+
+        F = BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension));
+        Q = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        H = BenchmarkMatrices.flatten(BenchmarkMatrices.selection(1, stateDimension));
+        R = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(1, BenchmarkMatrices.VARIANCE));
+        z = new double[count];
+    }
+
+    @TearDown
+    public void tearDown(){
+        if(pool != null){
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public KalmanFilterBank step(){
+        if(executor == null){
+            bank.predictAll(F, Q);
+            bank.updateAll(H, R, z);
+        } else {
+            executor.predictAll(F, Q);
+            executor.updateAll(H, R, z);
+        }
+        return bank;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//The commons-math filter in each update mode
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultivariateKalmanFilterBenchmark {
+
+    @Param({"1", "2", "3", "4", "6", "9", "12"})
+    public int stateDimension;
+
+    @Param({"1", "2", "3", "6"})
+    public int measurementDimension;
+
+    @Param({"INVERSE", "JOSEPH", "SEQUENTIAL"})
+    public UpdateMode updateMode;
+
+    private MultivariateKalmanFilter filter;
+    private MultivariateKalmanFilter instrumented;
+    private RealMatrix F;
+    private RealMatrix Q;
+    private RealMatrix H;
+    private RealMatrix R;
+    private RealVector z;
+    private double[] state;
+    private double[] covariance;
+
+    @Setup
+    public void setup(){
+        filter = new MultivariateKalmanFilter(stateDimension);
+        filter.setUpdateMode(updateMode);
+        instrumented = new MultivariateKalmanFilter(stateDimension);
+        instrumented.setUpdateMode(updateMode);
+        instrumented.setMetrics(new KalmanMetrics());
+
+        F = MatrixUtils.createRealMatrix(BenchmarkMatrices.transition(stateDimension));
+        Q = MatrixUtils.createRealMatrix(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        H = MatrixUtils.createRealMatrix(BenchmarkMatrices.selection(measurementDimension, stateDimension));
+        R = MatrixUtils.createRealMatrix(BenchmarkMatrices.diagonal(measurementDimension, BenchmarkMatrices.VARIANCE));
+        z = MatrixUtils.createRealVector(new double[measurementDimension]);
+        state = new double[stateDimension];
+        covariance = new double[stateDimension * stateDimension];
+    }
+
+    @Benchmark
+    public MultivariateKalmanFilter move(){
+        filter.move(F, Q);
+        return filter;
+    }
+
+    @Benchmark
+    public MultivariateKalmanFilter measure(){
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+    @Benchmark
+    public MultivariateKalmanFilter step(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+    //step() against the same filter recording into KalmanMetrics
+    @Benchmark
+    public MultivariateKalmanFilter stepWithMetrics(){
+        instrumented.move(F, Q);
+        instrumented.measure(H, R, z);
+        return instrumented;
+    }
+
+    //Polling the estimate once per step, through the copying accessors and through the distribution
+    @Benchmark
+    public double[] stepAndGetState(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        filter.getState(state);
+        filter.getCovariance(covariance);
+        return covariance;
+    }
+
+    @Benchmark
+    public MultivariateNormalDistribution stepAndGetEstimate(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        return filter.getEstimate();
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Same sweep as ArrayMultivariateKalmanFilterBenchmark on the square root filter, to compare against its JOSEPH numbers
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SquareRootKalmanFilterBenchmark {
+
+    @Param({"1", "2", "3", "4", "6", "9", "12"})
+    public int stateDimension;
+
+    @Param({"1", "2", "3", "6"})
+    public int measurementDimension;
+
+    private SquareRootKalmanFilter filter;
+    private double[] F;
+    private double[] Q;
+    private double[] H;
+    private double[] R;
+    private double[] z;
+
+    @Setup
+    public void setup(){
+        filter = new SquareRootKalmanFilter(stateDimension, measurementDimension);
+
+        F = BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension));
+        Q = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        H = BenchmarkMatrices.flatten(BenchmarkMatrices.selection(measurementDimension, stateDimension));
+        R = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(measurementDimension, BenchmarkMatrices.VARIANCE));
+        z = new double[measurementDimension];
+    }
+
+    @Benchmark
+    public SquareRootKalmanFilter move(){
+        filter.move(F, Q);
+        return filter;
+    }
+
+    @Benchmark
+    public SquareRootKalmanFilter measure(){
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+    @Benchmark
+    public SquareRootKalmanFilter step(){
+        filter.move(F, Q);
+        filter.measure(H, R, z);
+        return filter;
+    }
+
+}
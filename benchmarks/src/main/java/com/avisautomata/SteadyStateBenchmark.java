@@ -0,0 +1,67 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//A full step next to a frozen gain step on the same sizes, to show what the steady state mode saves
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SteadyStateBenchmark {
+
+    @Param({"1", "2", "3", "4", "6", "9", "12"})
+    public int stateDimension;
+
+    @Param({"1", "2", "3", "6"})
+    public int measurementDimension;
+
+    private ArrayMultivariateKalmanFilter full;
+    private ArrayMultivariateKalmanFilter steady;
+    private double[] F;
+    private double[] Q;
+    private double[] H;
+    private double[] R;
+    private double[] z;
+
+    @Setup
+    public void setup(){
+        F = BenchmarkMatrices.flatten(BenchmarkMatrices.transition(stateDimension));
+        Q = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(stateDimension, BenchmarkMatrices.VARIANCE));
+        H = BenchmarkMatrices.flatten(BenchmarkMatrices.selection(measurementDimension, stateDimension));
+        R = BenchmarkMatrices.flatten(BenchmarkMatrices.diagonal(measurementDimension, BenchmarkMatrices.VARIANCE));
+        z = new double[measurementDimension];
+
+        full = new ArrayMultivariateKalmanFilter(stateDimension, measurementDimension);
+        steady = new ArrayMultivariateKalmanFilter(stateDimension, measurementDimension);
+        steady.setSteadyState(F, H, Q, R);
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter fullStep(){
+        full.move(F, Q);
+        full.measure(H, R, z);
+        return full;
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter steadyStep(){
+        steady.move(F, Q);
+        steady.measure(H, R, z);
+        return steady;
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.avisautomata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+//Constant acceleration on 1 to 4 independent axes with position measured on each: dense F and H against the block
+//diagonal and selection kernels
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StructuredMatrixBenchmark {
+
+    @Param({"1", "2", "3", "4"})
+    public int axes;
+
+    private ArrayMultivariateKalmanFilter dense;
+    private ArrayMultivariateKalmanFilter structured;
+    private double[] F;
+    private double[] Q;
+    private double[] H;
+    private double[] r;
+    private BlockDiagonalMatrix blockF;
+    private SelectionMatrix selection;
+    private DiagonalMatrix R;
+    private double[] z;
+
+    @Setup
+    public void setup(){
+        int n = 3 * axes;
+        dense = new ArrayMultivariateKalmanFilter(n, axes);
+        structured = new ArrayMultivariateKalmanFilter(n, axes);
+
+        MotionModel model = new ConstantAccelerationModel(axes, BenchmarkMatrices.VARIANCE);
+        model.prepare(BenchmarkMatrices.DT);
+        F = model.getF().clone();
+        Q = model.getQ().clone();
+        blockF = BlockDiagonalMatrix.uniform(3, axes);
+        blockF.copyBlocksFrom(F);
+
+        int[] columns = new int[axes];
+        for(int axis = 0; axis < axes; axis++){
+            columns[axis] = 3 * axis;
+        }
+        selection = new SelectionMatrix(n, columns);
+        H = selection.toArray();
+        r = new double[axes];
+        Arrays.fill(r, BenchmarkMatrices.VARIANCE);
+        R = new DiagonalMatrix(r.clone());
+        z = new double[axes];
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter denseStep(){
+        dense.move(F, Q);
+        dense.measureDiagonal(H, r, z);
+        return dense;
+    }
+
+    @Benchmark
+    public ArrayMultivariateKalmanFilter structuredStep(){
+        structured.move(blockF, Q);
+        structured.measure(selection, R, z);
+        return structured;
+    }
+
+}
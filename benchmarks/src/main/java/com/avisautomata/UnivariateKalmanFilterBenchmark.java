@@ -0,0 +1,94 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//Throughput for ops/s, SampleTime for the latency percentiles
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UnivariateKalmanFilterBenchmark {
+
+    private UnivariateKalmanFilter filter;
+    private UnivariateKalmanFilter steady;
+    private UnivariateKalmanFilter instrumented;
+    private NormalDistribution movement;
+    private NormalDistribution measurement;
+    private double position;
+
+    @Setup
+    public void setup(){
+        filter = new UnivariateKalmanFilter(0, 1);
+        steady = new UnivariateKalmanFilter(0, 1);
+        steady.setSteadyState(BenchmarkMatrices.VARIANCE, BenchmarkMatrices.VARIANCE);
+        instrumented = new UnivariateKalmanFilter(0, 1);
+        instrumented.setMetrics(new KalmanMetrics());
+        movement = new NormalDistribution(0.01, Math.sqrt(BenchmarkMatrices.VARIANCE));
+        measurement = new NormalDistribution(0, Math.sqrt(BenchmarkMatrices.VARIANCE));
+    }
+
+    @Benchmark
+    public double movePrimitive(){
+        filter.move(0.01, BenchmarkMatrices.VARIANCE);
+        return filter.getMean();
+    }
+
+    @Benchmark
+    public double measurePrimitive(){
+        position += 0.01;
+        filter.measure(position, BenchmarkMatrices.VARIANCE);
+        return filter.getMean();
+    }
+
+    @Benchmark
+    public double stepSteadyState(){
+        position += 0.01;
+        steady.move(0.01, BenchmarkMatrices.VARIANCE);
+        steady.measure(position, BenchmarkMatrices.VARIANCE);
+        return steady.getMean();
+    }
+
+    @Benchmark
+    public double stepWithMetrics(){
+        position += 0.01;
+        instrumented.move(0.01, BenchmarkMatrices.VARIANCE);
+        instrumented.measure(position, BenchmarkMatrices.VARIANCE);
+        return instrumented.getMean();
+    }
+
+    @Benchmark
+    public double moveDistribution(){
+        filter.move(movement);
+        return filter.getMean();
+    }
+
+    @Benchmark
+    public double measureDistribution(){
+        filter.measure(measurement);
+        return filter.getMean();
+    }
+
+    //What callers building a fresh NormalDistribution per step pay
+    @Benchmark
+    public double stepAllocatingInputs(){
+        position += 0.01;
+        filter.move(new NormalDistribution(0.01, Math.sqrt(BenchmarkMatrices.VARIANCE)));
+        filter.measure(new NormalDistribution(position, Math.sqrt(BenchmarkMatrices.VARIANCE)));
+        return filter.getMean();
+    }
+
+}
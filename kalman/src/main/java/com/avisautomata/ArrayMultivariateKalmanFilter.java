@@ -0,0 +1,713 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+//Same equations as MultivariateKalmanFilter, but every matrix is a flat row-major double[] and every
+//intermediate lives in a buffer sized up front. After construction move() and measure() never allocate.
+public class ArrayMultivariateKalmanFilter {
+
+    private static final double LOG_2PI = Math.log(2 * Math.PI);
+    private static final double STEADY_STATE_TOLERANCE = 1e-12;
+    private static final int STEADY_STATE_ITERATIONS = 100_000;
+
+    private final int n;
+    //Largest measurement we can take. Smaller measurements (z.length < m) reuse the same buffers.
+    private final int m;
+
+    private final double[] x;
+    private final double[] P;
+
+    private UpdateMode updateMode = UpdateMode.INVERSE;
+
+    //Built on the first getEstimate() after x or P changes
+    private MultivariateNormalDistribution estimate;
+
+    //Innovation statistics of the last measurement, y^T * S^-1 * y and log N(y; 0, S). Only kept when asked for, NaN
+    //otherwise, so plain filtering doesn't pay for the extra solve and logs.
+    private boolean statistics;
+    private double nis = Double.NaN;
+    private double logLikelihood = Double.NaN;
+
+    //Frozen gain once setSteadyState() has run. P no longer moves, move() and measure() only touch x.
+    private boolean steadyState;
+    private int steadyRows;
+    private double[] steadyGain;
+    private double[] previousP;
+    private double[] riccatiP;
+
+    //Scratch for move()
+    private final double[] xNext;
+    private final double[] FP;
+    //Block layout of the last motion model with independent axes, rebuilt when the block size changes
+    private final int[] modelBlockStart;
+    private final int[] modelBlockEnd;
+    private int modelBlockSize;
+
+    //Scratch for measure()
+    private final double[] y;
+    private final double[] PHt;
+    private final double[] S;
+    private final double[] SInv;
+    private final double[] K;
+    private final double[] IKH;
+    private final double[] Ph;
+    private final double[] whitened;
+
+    //Scratch for the RealMatrix adapters
+    private final double[] adaptF;
+    private final double[] adaptB;
+    private final double[] adaptU;
+    private final double[] adaptQ;
+    private final double[] adaptH;
+    private final double[] adaptR;
+    private final double[] adaptZ;
+
+    public ArrayMultivariateKalmanFilter(double[] initial, int m){
+        this.n = initial.length;
+        this.m = m;
+
+        this.x = initial.clone();
+        this.P = new double[n * n];
+        for(int i = 0; i < n; i++){
+            P[i * n + i] = 1;
+        }
+
+        this.xNext = new double[n];
+        this.FP = new double[n * n];
+        this.modelBlockStart = new int[n];
+        this.modelBlockEnd = new int[n];
+
+        this.y = new double[m];
+        this.PHt = new double[n * m];
+        this.S = new double[m * m];
+        this.SInv = new double[m * m];
+        this.K = new double[n * m];
+        this.IKH = new double[n * n];
+        this.Ph = new double[n];
+        this.whitened = new double[m];
+
+        this.adaptF = new double[n * n];
+        this.adaptB = new double[n * n];
+        this.adaptU = new double[n];
+        this.adaptQ = new double[n * n];
+        this.adaptH = new double[m * n];
+        this.adaptR = new double[m * m];
+        this.adaptZ = new double[m];
+    }
+
+    public ArrayMultivariateKalmanFilter(int n, int m){
+        this(new double[n], m);
+    }
+
+    //F is n x n, B is n x u.length, Q is n x n
+    public void move(double[] F, double[] B, double[] u, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        checkLength(B, n * u.length);
+
+        estimate = null;
+        DenseMath.multiplyVector(F, x, xNext, n, n);
+        DenseMath.multiplyVectorAdd(B, u, xNext, n, u.length);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        if(!steadyState){
+            propagateCovariance(F, Q);
+        }
+    }
+
+    public void move(double[] F, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+
+        estimate = null;
+        DenseMath.multiplyVector(F, x, xNext, n, n);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        if(!steadyState){
+            propagateCovariance(F, Q);
+        }
+    }
+
+    //Moves forward by dt using F and Q from the model, which are built in place and cached by dt. Models made of
+    //independent axes go through the block diagonal kernels.
+    public void predict(MotionModel model, double dt){
+        if(model.getDimension() != n){
+            throw new DimensionMismatchException(model.getDimension(), n);
+        }
+        model.prepare(dt);
+        int blockSize = model.getBlockSize();
+        if(blockSize >= n || n % blockSize != 0){
+            move(model.getF(), model.getQ());
+            return;
+        }
+
+        if(blockSize != modelBlockSize){
+            for(int i = 0; i < n; i++){
+                modelBlockStart[i] = i - i % blockSize;
+                modelBlockEnd[i] = modelBlockStart[i] + blockSize;
+            }
+            modelBlockSize = blockSize;
+        }
+        moveBlocks(model.getF(), modelBlockStart, modelBlockEnd);
+        if(!steadyState){
+            DenseMath.add(P, model.getQ(), n * n);
+        }
+    }
+
+    //F is block diagonal, e.g. one block per axis, so x and P move block by block. Q is n x n.
+    public void move(BlockDiagonalMatrix F, double[] Q){
+        if(F.getDimension() != n){
+            throw new DimensionMismatchException(F.getDimension(), n);
+        }
+        checkLength(Q, n * n);
+
+        moveBlocks(F.getData(), F.getBlockStart(), F.getBlockEnd());
+        if(!steadyState){
+            DenseMath.add(P, Q, n * n);
+        }
+    }
+
+    //Same as move(BlockDiagonalMatrix, double[]) with independent process noise per state
+    public void move(BlockDiagonalMatrix F, DiagonalMatrix Q){
+        if(F.getDimension() != n){
+            throw new DimensionMismatchException(F.getDimension(), n);
+        }
+        if(Q.getDimension() != n){
+            throw new DimensionMismatchException(Q.getDimension(), n);
+        }
+
+        moveBlocks(F.getData(), F.getBlockStart(), F.getBlockEnd());
+        if(!steadyState){
+            for(int i = 0; i < n; i++){
+                P[i * n + i] += Q.getEntry(i);
+            }
+        }
+    }
+
+    //x = F * x and P = F * P * F^T touching only F's blocks, n^2 * b work per product instead of n^3. The terms
+    //skipped are exact zeros, so the result is the same as the dense product.
+    private void moveBlocks(double[] F, int[] blockStart, int[] blockEnd){
+        estimate = null;
+        DenseMath.multiplyVectorBlockDiagonal(F, x, xNext, n, blockStart, blockEnd);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        if(!steadyState){
+            DenseMath.multiplyBlockDiagonal(F, P, FP, n, blockStart, blockEnd);
+            DenseMath.multiplyTransposeBlockDiagonal(FP, F, P, n, blockStart, blockEnd);
+        }
+    }
+
+    private void propagateCovariance(double[] F, double[] Q){
+        propagateCovariance(P, F, Q);
+    }
+
+    //covariance = F * covariance * F^T + Q
+    private void propagateCovariance(double[] covariance, double[] F, double[] Q){
+        DenseMath.multiply(F, covariance, FP, n, n, n);
+        DenseMath.multiplyTranspose(FP, F, covariance, n, n, n);
+        DenseMath.add(covariance, Q, n * n);
+    }
+
+    //For filters that predict x themselves, e.g. the EKF with f(x). P moves with the linearized F as usual.
+    void propagate(double[] predictedState, double[] F, double[] Q){
+        estimate = null;
+        System.arraycopy(predictedState, 0, x, 0, n);
+        propagateCovariance(F, Q);
+    }
+
+    //For filters that form the innovation themselves, e.g. the EKF with z - h(x). H is the linearized k x n H.
+    void correct(double[] H, double[] R, double[] innovation, int k){
+        estimate = null;
+        System.arraycopy(innovation, 0, y, 0, k);
+        correct(H, R, k);
+    }
+
+    //H is k x n, R is k x k and z has k entries, where k <= m
+    public void measure(double[] H, double[] R, double[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        checkLength(H, k * n);
+        checkLength(R, k * k);
+
+        measure(H, R, z, k);
+    }
+
+    //Unchecked measure() that reads only the leading k rows, so callers can keep measurements of any size in
+    //buffers sized for m
+    void measure(double[] H, double[] R, double[] z, int k){
+        estimate = null;
+        if(steadyState){
+            measureSteady(H, z, k);
+            return;
+        }
+        if(updateMode == UpdateMode.SEQUENTIAL && isDiagonal(R, k)){
+            measureSequential(H, R, k + 1, z, k);
+            return;
+        }
+
+        //y = z - H * x
+        DenseMath.multiplyVector(H, x, y, k, n);
+        for(int i = 0; i < k; i++){
+            y[i] = z[i] - y[i];
+        }
+
+        correct(H, R, k);
+    }
+
+    //x = x + K * (z - H * x) with the frozen gain
+    private void measureSteady(double[] H, double[] z, int k){
+        if(k != steadyRows){
+            throw new DimensionMismatchException(k, steadyRows);
+        }
+        DenseMath.multiplyVector(H, x, y, k, n);
+        for(int i = 0; i < k; i++){
+            y[i] = z[i] - y[i];
+        }
+        DenseMath.multiplyVectorAdd(steadyGain, y, x, n, k);
+    }
+
+    //For time-invariant F, H, Q and R, P and K converge to fixed values. This finds them by running the Riccati
+    //recursion on P from its current value until it stops changing, then freezes K, so from here on move() is
+    //x = F * x + B * u and measure() is x = x + K * (z - H * x). The matrices passed to move() and measure() must stay
+    //the ones given here, Q and R are no longer read at all. H is k x n and R is k x k.
+    public void setSteadyState(double[] F, double[] H, double[] Q, double[] R){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        int k = H.length / n;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        checkLength(H, k * n);
+        checkLength(R, k * k);
+
+        //Setup rather than the hot path, so these are only allocated for filters that use it
+        if(steadyGain == null){
+            steadyGain = new double[n * m];
+            previousP = new double[n * n];
+            riccatiP = new double[n * n];
+        }
+
+        //The recursion runs on a copy of P, so a call that fails to converge leaves the filter as it was. Only the
+        //scratch buffers are shared with measure().
+        System.arraycopy(P, 0, riccatiP, 0, n * n);
+        for(int iteration = 0; ; iteration++){
+            if(iteration == STEADY_STATE_ITERATIONS){
+                throw new MaxCountExceededException(STEADY_STATE_ITERATIONS);
+            }
+            System.arraycopy(riccatiP, 0, previousP, 0, n * n);
+            propagateCovariance(riccatiP, F, Q);
+
+            //K = P * H^T * S^-1 through a Cholesky factor of S, then the Joseph form update of P
+            DenseMath.multiplyTranspose(riccatiP, H, PHt, n, n, k);
+            DenseMath.multiply(H, PHt, S, k, n, k);
+            DenseMath.add(S, R, k * k);
+            DenseMath.cholesky(S, k);
+            System.arraycopy(PHt, 0, K, 0, n * k);
+            for(int i = 0; i < n; i++){
+                DenseMath.choleskySolve(S, K, i * k, k);
+            }
+            josephCovariance(riccatiP, H, R, k);
+            if(converged(riccatiP)){
+                break;
+            }
+        }
+
+        estimate = null;
+        System.arraycopy(riccatiP, 0, P, 0, n * n);
+        System.arraycopy(K, 0, steadyGain, 0, n * k);
+        steadyRows = k;
+        steadyState = true;
+    }
+
+    private boolean converged(double[] covariance){
+        double change = 0;
+        double size = 0;
+        for(int i = 0; i < n * n; i++){
+            change = Math.max(change, Math.abs(covariance[i] - previousP[i]));
+            size = Math.max(size, Math.abs(covariance[i]));
+        }
+        return change <= STEADY_STATE_TOLERANCE * Math.max(1, size);
+    }
+
+    //Goes back to the full update, starting from the steady state P
+    public void clearSteadyState(){
+        steadyState = false;
+    }
+
+    public boolean isSteadyState(){
+        return steadyState;
+    }
+
+    //Steady state gain, n x k. Only meaningful once setSteadyState() has run.
+    public void getSteadyStateGain(double[] out){
+        System.arraycopy(steadyGain, 0, out, 0, n * steadyRows);
+    }
+
+    //Same as measure(), but R is given as just its diagonal so rows are always processed one at a time
+    public void measureDiagonal(double[] H, double[] r, double[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        checkLength(H, k * n);
+        checkLength(r, k);
+
+        estimate = null;
+        if(steadyState){
+            measureSteady(H, z, k);
+            return;
+        }
+        measureSequential(H, r, 1, z, k);
+    }
+
+    //H picks states directly and R is diagonal, so each row is a scalar update against one column of P. No products
+    //with H at all, and the same result as measureDiagonal() with the dense H.
+    public void measure(SelectionMatrix H, DiagonalMatrix R, double[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        if(H.getColumnDimension() != n){
+            throw new DimensionMismatchException(H.getColumnDimension(), n);
+        }
+        if(H.getRowDimension() != k){
+            throw new DimensionMismatchException(H.getRowDimension(), k);
+        }
+        if(R.getDimension() != k){
+            throw new DimensionMismatchException(R.getDimension(), k);
+        }
+
+        estimate = null;
+        if(steadyState){
+            H.copyTo(adaptH);
+            measureSteady(adaptH, z, k);
+            return;
+        }
+
+        double squared = 0;
+        double logDeterminant = 0;
+        for(int row = 0; row < k; row++){
+            int column = H.getColumn(row);
+
+            //Ph = P * h^T is column c of P, s = P[c][c] + r
+            for(int i = 0; i < n; i++){
+                Ph[i] = P[i * n + column];
+            }
+            double s = R.getEntry(row) + Ph[column];
+            double innovation = z[row] - x[column];
+
+            if(statistics){
+                squared += innovation * innovation / s;
+                logDeterminant += Math.log(s);
+            }
+
+            //K = Ph / s, x = x + K * y, P = P - K * Ph^T
+            double scale = innovation / s;
+            for(int i = 0; i < n; i++){
+                x[i] += Ph[i] * scale;
+            }
+            for(int i = 0; i < n; i++){
+                double ki = Ph[i] / s;
+                int pRow = i * n;
+                for(int j = 0; j < n; j++){
+                    P[pRow + j] -= ki * Ph[j];
+                }
+            }
+        }
+        if(statistics){
+            setInnovation(squared, logDeterminant, k);
+        }
+    }
+
+    //Row i of the measurement has variance r[i * stride]
+    private void measureSequential(double[] H, double[] r, int stride, double[] z, int k){
+        //Each row's innovation is conditioned on the rows before it, so the per-row terms add up to the batch ones
+        double squared = 0;
+        double logDeterminant = 0;
+        for(int row = 0; row < k; row++){
+            int hRow = row * n;
+
+            //Ph = P * h^T, s = h * P * h^T + r
+            double s = r[row * stride];
+            double innovation = z[row];
+            for(int i = 0; i < n; i++){
+                double sum = 0;
+                for(int j = 0; j < n; j++){
+                    sum += P[i * n + j] * H[hRow + j];
+                }
+                Ph[i] = sum;
+                s += H[hRow + i] * sum;
+                innovation -= H[hRow + i] * x[i];
+            }
+
+            if(statistics){
+                squared += innovation * innovation / s;
+                logDeterminant += Math.log(s);
+            }
+
+            //K = Ph / s, x = x + K * y, P = P - K * Ph^T
+            double scale = innovation / s;
+            for(int i = 0; i < n; i++){
+                x[i] += Ph[i] * scale;
+            }
+            for(int i = 0; i < n; i++){
+                double ki = Ph[i] / s;
+                int pRow = i * n;
+                for(int j = 0; j < n; j++){
+                    P[pRow + j] -= ki * Ph[j];
+                }
+            }
+        }
+        if(statistics){
+            setInnovation(squared, logDeterminant, k);
+        }
+    }
+
+    private static boolean isDiagonal(double[] R, int k){
+        for(int i = 0; i < k; i++){
+            for(int j = 0; j < k; j++){
+                if(i != j && R[i * k + j] != 0){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void correct(double[] H, double[] R, int k){
+        //S = H * P * H^T + R
+        DenseMath.multiplyTranspose(P, H, PHt, n, n, k);
+        DenseMath.multiply(H, PHt, S, k, n, k);
+        DenseMath.add(S, R, k * k);
+
+        switch(updateMode){
+            case INVERSE -> correctInverse(H, k);
+            case JOSEPH, SEQUENTIAL -> correctJoseph(H, R, k);
+        }
+    }
+
+    private void correctInverse(double[] H, int k){
+        //K = P * H^T * S^-1
+        double determinant = DenseMath.invert(S, SInv, k);
+        DenseMath.multiply(PHt, SInv, K, n, k, k);
+
+        if(statistics){
+            double squared = 0;
+            for(int i = 0; i < k; i++){
+                double sum = 0;
+                for(int j = 0; j < k; j++){
+                    sum += SInv[i * k + j] * y[j];
+                }
+                squared += y[i] * sum;
+            }
+            //Rounding can leave the determinant of a nearly singular S at or below 0, floor it rather than take NaN
+            setInnovation(squared, Math.log(Math.max(determinant, Double.MIN_NORMAL)), k);
+        }
+
+        //x = x + K * y
+        DenseMath.multiplyVectorAdd(K, y, x, n, k);
+
+        //P = (I - K * H) * P
+        identityMinus(K, H, k);
+        DenseMath.multiply(IKH, P, FP, n, n, n);
+        System.arraycopy(FP, 0, P, 0, n * n);
+    }
+
+    private void correctJoseph(double[] H, double[] R, int k){
+        //K * S = P * H^T. S is symmetric so each row of K solves S * K[i]^T = (P * H^T)[i]^T
+        DenseMath.cholesky(S, k);
+        System.arraycopy(PHt, 0, K, 0, n * k);
+        for(int i = 0; i < n; i++){
+            DenseMath.choleskySolve(S, K, i * k, k);
+        }
+
+        //y^T * S^-1 * y = |L^-1 * y|^2 and log|S| = 2 * sum(log L_ii)
+        if(statistics){
+            double squared = 0;
+            double logDeterminant = 0;
+            for(int i = 0; i < k; i++){
+                double sum = y[i];
+                for(int j = 0; j < i; j++){
+                    sum -= S[i * k + j] * whitened[j];
+                }
+                double lii = S[i * k + i];
+                whitened[i] = sum / lii;
+                squared += whitened[i] * whitened[i];
+                logDeterminant += 2 * Math.log(lii);
+            }
+            setInnovation(squared, logDeterminant, k);
+        }
+
+        //x = x + K * y
+        DenseMath.multiplyVectorAdd(K, y, x, n, k);
+
+        josephCovariance(P, H, R, k);
+    }
+
+    //covariance = (I - K * H) * covariance * (I - K * H)^T + K * R * K^T with the gain in K
+    private void josephCovariance(double[] covariance, double[] H, double[] R, int k){
+        identityMinus(K, H, k);
+        DenseMath.multiply(IKH, covariance, FP, n, n, n);
+        DenseMath.multiplyTranspose(FP, IKH, covariance, n, n, n);
+        DenseMath.multiply(K, R, PHt, n, k, k);
+        DenseMath.multiplyTranspose(PHt, K, FP, n, k, n);
+        DenseMath.add(covariance, FP, n * n);
+        DenseMath.symmetrize(covariance, n);
+    }
+
+    private void setInnovation(double squared, double logDeterminant, int k){
+        nis = squared;
+        logLikelihood = -0.5 * (squared + logDeterminant + k * LOG_2PI);
+    }
+
+    //IKH = I - K * H
+    private void identityMinus(double[] K, double[] H, int k){
+        DenseMath.multiply(K, H, IKH, n, k, n);
+        for(int i = 0; i < n * n; i++){
+            IKH[i] = -IKH[i];
+        }
+        for(int i = 0; i < n; i++){
+            IKH[i * n + i] += 1;
+        }
+    }
+
+    public void move(RealMatrix F, RealMatrix B, RealVector u, RealMatrix Q){
+        if(u.getDimension() > n){
+            throw new DimensionMismatchException(u.getDimension(), n);
+        }
+        copy(F, adaptF, n, n);
+        copy(B, adaptB, n, u.getDimension());
+        copy(Q, adaptQ, n, n);
+        for(int i = 0; i < u.getDimension(); i++){
+            adaptU[i] = u.getEntry(i);
+        }
+
+        estimate = null;
+        DenseMath.multiplyVector(adaptF, x, xNext, n, n);
+        DenseMath.multiplyVectorAdd(adaptB, adaptU, xNext, n, u.getDimension());
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        if(!steadyState){
+            propagateCovariance(adaptF, adaptQ);
+        }
+    }
+
+    public void move(RealMatrix F, RealMatrix Q){
+        copy(F, adaptF, n, n);
+        copy(Q, adaptQ, n, n);
+        move(adaptF, adaptQ);
+    }
+
+    public void measure(RealMatrix H, RealMatrix R, RealVector z){
+        int k = z.getDimension();
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        copy(H, adaptH, k, n);
+        copy(R, adaptR, k, k);
+        for(int i = 0; i < k; i++){
+            adaptZ[i] = z.getEntry(i);
+        }
+
+        measure(adaptH, adaptR, adaptZ, k);
+    }
+
+    private static void copy(RealMatrix source, double[] target, int rows, int cols){
+        if(source.getRowDimension() != rows){
+            throw new DimensionMismatchException(source.getRowDimension(), rows);
+        }
+        if(source.getColumnDimension() != cols){
+            throw new DimensionMismatchException(source.getColumnDimension(), cols);
+        }
+        for(int i = 0; i < rows; i++){
+            for(int j = 0; j < cols; j++){
+                target[i * cols + j] = source.getEntry(i, j);
+            }
+        }
+    }
+
+    private static void checkLength(double[] array, int expected){
+        if(array.length != expected){
+            throw new DimensionMismatchException(array.length, expected);
+        }
+    }
+
+    //Replaces x and P, e.g. when restoring a filter or moving it between storage layouts. P is n x n. A frozen steady
+    //state gain belongs to the old P, so it is dropped and the full update resumes from the new one.
+    public void setState(double[] state, double[] covariance){
+        checkLength(state, n);
+        checkLength(covariance, n * n);
+        estimate = null;
+        System.arraycopy(state, 0, x, 0, n);
+        System.arraycopy(covariance, 0, P, 0, n * n);
+        steadyState = false;
+    }
+
+    public void getState(double[] out){
+        System.arraycopy(x, 0, out, 0, n);
+    }
+
+    public void getCovariance(double[] out){
+        System.arraycopy(P, 0, out, 0, n * n);
+    }
+
+    //Built once per change of state and shared until the next change. Sampling from it advances its generator.
+    //Callers polling every step should use getState() and getCovariance().
+    public MultivariateNormalDistribution getEstimate(){
+        if(estimate == null){
+            double[][] covariance = new double[n][n];
+            for(int i = 0; i < n; i++){
+                System.arraycopy(P, i * n, covariance[i], 0, n);
+            }
+            estimate = new MultivariateNormalDistribution(x.clone(), covariance);
+        }
+        return estimate;
+    }
+
+    //Keeps the NIS and log likelihood of each measurement, e.g. for consistency checks or noise tuning. Off by default,
+    //both read NaN while off.
+    public void setInnovationStatistics(boolean enabled){
+        this.statistics = enabled;
+        if(!enabled){
+            nis = Double.NaN;
+            logLikelihood = Double.NaN;
+        }
+    }
+
+    public boolean isInnovationStatistics(){
+        return statistics;
+    }
+
+    //Normalized innovation squared of the last measurement, chi-squared with k degrees of freedom when Q and R are right
+    public double getNormalizedInnovationSquared(){
+        return nis;
+    }
+
+    //Log density of the last measurement's innovation under its predicted covariance S
+    public double getLogLikelihood(){
+        return logLikelihood;
+    }
+
+    public void setUpdateMode(UpdateMode updateMode){
+        this.updateMode = updateMode;
+    }
+
+    public UpdateMode getUpdateMode(){
+        return updateMode;
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+
+import java.util.Arrays;
+
+//An n x n matrix made of square blocks down the diagonal and zero elsewhere, e.g. F for independent x, y and h axes.
+//Entries live in an ordinary dense row-major array so blocks are filled with the usual indexing, only entries inside
+//a block are ever read. Products with it skip the zero blocks: F * P costs n^2 * b instead of n^3 for blocks of b.
+public class BlockDiagonalMatrix {
+
+    private final int n;
+    private final double[] data;
+    //Row i of the matrix is only non-zero in columns [blockStart[i], blockEnd[i])
+    private final int[] blockStart;
+    private final int[] blockEnd;
+
+    public BlockDiagonalMatrix(int... blockSizes){
+        int total = 0;
+        for(int size : blockSizes){
+            if(size <= 0){
+                throw new NotStrictlyPositiveException(size);
+            }
+            total += size;
+        }
+        this.n = total;
+        this.data = new double[n * n];
+        this.blockStart = new int[n];
+        this.blockEnd = new int[n];
+
+        int offset = 0;
+        for(int size : blockSizes){
+            for(int i = offset; i < offset + size; i++){
+                blockStart[i] = offset;
+                blockEnd[i] = offset + size;
+            }
+            offset += size;
+        }
+    }
+
+    //count blocks of size each, e.g. one per axis
+    public static BlockDiagonalMatrix uniform(int size, int count){
+        int[] sizes = new int[count];
+        Arrays.fill(sizes, size);
+        return new BlockDiagonalMatrix(sizes);
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    //The live n x n row-major storage, write block entries straight into it
+    public double[] getData(){
+        return data;
+    }
+
+    public double getEntry(int row, int column){
+        return data[row * n + column];
+    }
+
+    public void setEntry(int row, int column, double value){
+        data[row * n + column] = value;
+    }
+
+    //Copies the block entries of a dense n x n matrix that is known to have this structure
+    public void copyBlocksFrom(double[] dense){
+        for(int i = 0; i < n; i++){
+            int row = i * n;
+            System.arraycopy(dense, row + blockStart[i], data, row + blockStart[i], blockEnd[i] - blockStart[i]);
+        }
+    }
+
+    int[] getBlockStart(){
+        return blockStart;
+    }
+
+    int[] getBlockEnd(){
+        return blockEnd;
+    }
+
+    public double[] toArray(){
+        double[] out = new double[n * n];
+        for(int i = 0; i < n; i++){
+            int row = i * n;
+            System.arraycopy(data, row + blockStart[i], out, row + blockStart[i], blockEnd[i] - blockStart[i]);
+        }
+        return out;
+    }
+
+}
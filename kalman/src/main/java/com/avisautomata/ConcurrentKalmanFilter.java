@@ -0,0 +1,154 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+import java.util.concurrent.locks.StampedLock;
+
+//Lets one writer thread run a filter while any number of threads read its estimate. After every step the writer
+//copies (time, x, P) into a published snapshot under a StampedLock write lock, which only the writer ever takes, so
+//it is never contended. Readers copy the snapshot with an optimistic read and retry if a publish overlapped, the
+//seqlock pattern, so they never block the writer or each other and never write to shared memory.
+//
+//All the step methods must be called from the same thread. The read methods are safe from any thread.
+public class ConcurrentKalmanFilter {
+
+    private final int n;
+    private final ArrayMultivariateKalmanFilter filter;
+
+    //Writer side, only touched by the writer thread
+    private double time;
+
+    //Published snapshot, written under the write lock
+    private final StampedLock lock = new StampedLock();
+    private double publishedTime;
+    private long version;
+    private final double[] publishedX;
+    private final double[] publishedP;
+
+    public record Snapshot(double time, long version, double[] x, double[] P) {}
+
+    //Takes ownership of filter, nothing else may call it afterwards
+    public ConcurrentKalmanFilter(ArrayMultivariateKalmanFilter filter, double startTime){
+        this.n = filter.getDimension();
+        this.filter = filter;
+        this.time = startTime;
+        this.publishedX = new double[n];
+        this.publishedP = new double[n * n];
+        publish();
+    }
+
+    //Writer only. Moves the filter to time with the given F and Q.
+    public void move(double time, double[] F, double[] Q){
+        filter.move(F, Q);
+        this.time = time;
+        publish();
+    }
+
+    //Writer only. Moves the filter forward to time using the model.
+    public void predict(double time, MotionModel model){
+        filter.predict(model, time - this.time);
+        this.time = time;
+        publish();
+    }
+
+    //Writer only. Measures at the current time, H is k x n, R is k x k and z has k entries.
+    public void measure(double[] H, double[] R, double[] z){
+        filter.measure(H, R, z);
+        publish();
+    }
+
+    //Writer only. Replaces the whole state, e.g. when restoring.
+    public void setState(double time, double[] state, double[] covariance){
+        filter.setState(state, covariance);
+        this.time = time;
+        publish();
+    }
+
+    private void publish(){
+        long stamp = lock.writeLock();
+        try {
+            filter.getState(publishedX);
+            filter.getCovariance(publishedP);
+            publishedTime = time;
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //Copies a consistent x and P into the buffers and returns the time they are for. Never blocks.
+    public double read(double[] x, double[] P){
+        if(x.length != n){
+            throw new DimensionMismatchException(x.length, n);
+        }
+        if(P.length != n * n){
+            throw new DimensionMismatchException(P.length, n * n);
+        }
+        while(true){
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0){
+                System.arraycopy(publishedX, 0, x, 0, n);
+                System.arraycopy(publishedP, 0, P, 0, n * n);
+                double snapshotTime = publishedTime;
+                if(lock.validate(stamp)){
+                    return snapshotTime;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    //Same as read(), for readers that only need x
+    public double readState(double[] x){
+        if(x.length != n){
+            throw new DimensionMismatchException(x.length, n);
+        }
+        while(true){
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0){
+                System.arraycopy(publishedX, 0, x, 0, n);
+                double snapshotTime = publishedTime;
+                if(lock.validate(stamp)){
+                    return snapshotTime;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    //A consistent copy in fresh arrays, for callers that would rather allocate than manage buffers
+    public Snapshot snapshot(){
+        double[] x = new double[n];
+        double[] P = new double[n * n];
+        while(true){
+            long stamp = lock.tryOptimisticRead();
+            if(stamp != 0){
+                System.arraycopy(publishedX, 0, x, 0, n);
+                System.arraycopy(publishedP, 0, P, 0, n * n);
+                double snapshotTime = publishedTime;
+                long snapshotVersion = version;
+                if(lock.validate(stamp)){
+                    return new Snapshot(snapshotTime, snapshotVersion, x, P);
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    //Number of snapshots published so far, readers can poll this to see if anything changed
+    public long getVersion(){
+        while(true){
+            long stamp = lock.tryOptimisticRead();
+            long snapshotVersion = version;
+            if(stamp != 0 && lock.validate(stamp)){
+                return snapshotVersion;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+}
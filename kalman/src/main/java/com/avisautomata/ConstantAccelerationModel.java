@@ -0,0 +1,64 @@
+package com.avisautomata;
+
+import java.util.Arrays;
+
+//Position, velocity and acceleration per axis, state laid out [p0, v0, a0, p1, v1, a1, ...].
+//Q is the discrete white noise model, where the change in acceleration over a step has the given variance.
+public class ConstantAccelerationModel extends MotionModel {
+
+    private final int axes;
+    private final double variance;
+
+    public ConstantAccelerationModel(int axes, double variance, double quantum, int capacity){
+        super(axes * 3, quantum, capacity);
+        this.axes = axes;
+        this.variance = variance;
+    }
+
+    public ConstantAccelerationModel(int axes, double variance){
+        this(axes, variance, DEFAULT_QUANTUM, DEFAULT_CAPACITY);
+    }
+
+    //Axes don't interact
+    @Override
+    public int getBlockSize(){
+        return 3;
+    }
+
+    @Override
+    protected void fill(double dt, double[] F, double[] Q) {
+        int n = getDimension();
+        Arrays.fill(F, 0);
+        Arrays.fill(Q, 0);
+
+        double dt2 = dt * dt;
+
+        //Noise enters through the gain g = [dt^2 / 2, dt, 1], Q = variance * g * g^T
+        double g0 = dt2 / 2;
+        double g1 = dt;
+
+        for(int axis = 0; axis < axes; axis++){
+            int p = axis * 3;
+            int v = p + 1;
+            int a = p + 2;
+
+            F[p * n + p] = 1;
+            F[p * n + v] = dt;
+            F[p * n + a] = dt2 / 2;
+            F[v * n + v] = 1;
+            F[v * n + a] = dt;
+            F[a * n + a] = 1;
+
+            Q[p * n + p] = variance * g0 * g0;
+            Q[p * n + v] = variance * g0 * g1;
+            Q[p * n + a] = variance * g0;
+            Q[v * n + p] = variance * g1 * g0;
+            Q[v * n + v] = variance * g1 * g1;
+            Q[v * n + a] = variance * g1;
+            Q[a * n + p] = variance * g0;
+            Q[a * n + v] = variance * g1;
+            Q[a * n + a] = variance;
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.avisautomata;
+
+import java.util.Arrays;
+
+//Position and velocity per axis, state laid out [p0, v0, p1, v1, ...].
+//Q is the discrete white noise model, where acceleration is constant across a step with the given variance.
+public class ConstantVelocityModel extends MotionModel {
+
+    private final int axes;
+    private final double variance;
+
+    public ConstantVelocityModel(int axes, double variance, double quantum, int capacity){
+        super(axes * 2, quantum, capacity);
+        this.axes = axes;
+        this.variance = variance;
+    }
+
+    public ConstantVelocityModel(int axes, double variance){
+        this(axes, variance, DEFAULT_QUANTUM, DEFAULT_CAPACITY);
+    }
+
+    //Axes don't interact
+    @Override
+    public int getBlockSize(){
+        return 2;
+    }
+
+    @Override
+    protected void fill(double dt, double[] F, double[] Q) {
+        int n = getDimension();
+        Arrays.fill(F, 0);
+        Arrays.fill(Q, 0);
+
+        double dt2 = dt * dt;
+        double dt3 = dt2 * dt;
+        double dt4 = dt3 * dt;
+
+        for(int axis = 0; axis < axes; axis++){
+            int p = axis * 2;
+            int v = p + 1;
+
+            F[p * n + p] = 1;
+            F[p * n + v] = dt;
+            F[v * n + v] = 1;
+
+            Q[p * n + p] = variance * dt4 / 4;
+            Q[p * n + v] = variance * dt3 / 2;
+            Q[v * n + p] = variance * dt3 / 2;
+            Q[v * n + v] = variance * dt2;
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+//Row-major kernels over flat double[] storage. Nothing in here allocates, callers own every buffer.
+final class DenseMath {
+
+    private static final double SINGULARITY_THRESHOLD = 1e-11;
+    private static final double POSITIVITY_THRESHOLD = 1e-10;
+    private static final double RANK_THRESHOLD = 1e-14;
+
+    private DenseMath(){}
+
+    //out(rows x cols) = a(rows x inner) * b(inner x cols)
+    static void multiply(double[] a, double[] b, double[] out, int rows, int inner, int cols){
+        for(int i = 0; i < rows; i++){
+            int outRow = i * cols;
+            for(int j = 0; j < cols; j++){
+                out[outRow + j] = 0;
+            }
+            int aRow = i * inner;
+            for(int k = 0; k < inner; k++){
+                double aik = a[aRow + k];
+                int bRow = k * cols;
+                for(int j = 0; j < cols; j++){
+                    out[outRow + j] += aik * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    //out(rows x cols) = a(rows x inner) * b(cols x inner)^T
+    static void multiplyTranspose(double[] a, double[] b, double[] out, int rows, int inner, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * inner;
+            for(int j = 0; j < cols; j++){
+                int bRow = j * inner;
+                double sum = 0;
+                for(int k = 0; k < inner; k++){
+                    sum += a[aRow + k] * b[bRow + k];
+                }
+                out[i * cols + j] = sum;
+            }
+        }
+    }
+
+    //out(rows) = a(rows x cols) * v(cols)
+    static void multiplyVector(double[] a, double[] v, double[] out, int rows, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * cols;
+            double sum = 0;
+            for(int j = 0; j < cols; j++){
+                sum += a[aRow + j] * v[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    //out(rows) += a(rows x cols) * v(cols)
+    static void multiplyVectorAdd(double[] a, double[] v, double[] out, int rows, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * cols;
+            double sum = 0;
+            for(int j = 0; j < cols; j++){
+                sum += a[aRow + j] * v[j];
+            }
+            out[i] += sum;
+        }
+    }
+
+    //out(n x n) = F(n x n) * b(n x n), where row i of F is only non-zero in columns [start[i], end[i])
+    static void multiplyBlockDiagonal(double[] F, double[] b, double[] out, int n, int[] start, int[] end){
+        for(int i = 0; i < n; i++){
+            int outRow = i * n;
+            for(int j = 0; j < n; j++){
+                out[outRow + j] = 0;
+            }
+            for(int k = start[i]; k < end[i]; k++){
+                double fik = F[outRow + k];
+                int bRow = k * n;
+                for(int j = 0; j < n; j++){
+                    out[outRow + j] += fik * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    //out(n x n) = a(n x n) * F(n x n)^T, with F as in multiplyBlockDiagonal()
+    static void multiplyTransposeBlockDiagonal(double[] a, double[] F, double[] out, int n, int[] start, int[] end){
+        for(int i = 0; i < n; i++){
+            int aRow = i * n;
+            for(int j = 0; j < n; j++){
+                int fRow = j * n;
+                double sum = 0;
+                for(int k = start[j]; k < end[j]; k++){
+                    sum += a[aRow + k] * F[fRow + k];
+                }
+                out[aRow + j] = sum;
+            }
+        }
+    }
+
+    //out(n) = F(n x n) * v(n), with F as in multiplyBlockDiagonal()
+    static void multiplyVectorBlockDiagonal(double[] F, double[] v, double[] out, int n, int[] start, int[] end){
+        for(int i = 0; i < n; i++){
+            int fRow = i * n;
+            double sum = 0;
+            for(int j = start[i]; j < end[i]; j++){
+                sum += F[fRow + j] * v[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    static void add(double[] a, double[] b, int length){
+        for(int i = 0; i < length; i++){
+            a[i] += b[i];
+        }
+    }
+
+    //Gauss-Jordan with partial pivoting. work is destroyed, out receives the inverse of the n x n matrix in work.
+    //Returns the determinant, which falls out of the pivots for free.
+    static double invert(double[] work, double[] out, int n){
+        double determinant = 1;
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                out[i * n + j] = i == j ? 1 : 0;
+            }
+        }
+
+        for(int col = 0; col < n; col++){
+            int pivot = col;
+            double best = Math.abs(work[col * n + col]);
+            for(int r = col + 1; r < n; r++){
+                double candidate = Math.abs(work[r * n + col]);
+                if(candidate > best){
+                    best = candidate;
+                    pivot = r;
+                }
+            }
+            if(best < SINGULARITY_THRESHOLD){
+                throw new SingularMatrixException();
+            }
+            if(pivot != col){
+                swapRows(work, n, pivot, col);
+                swapRows(out, n, pivot, col);
+                determinant = -determinant;
+            }
+            determinant *= work[col * n + col];
+
+            double scale = 1 / work[col * n + col];
+            for(int j = 0; j < n; j++){
+                work[col * n + j] *= scale;
+                out[col * n + j] *= scale;
+            }
+
+            for(int r = 0; r < n; r++){
+                if(r == col){
+                    continue;
+                }
+                double factor = work[r * n + col];
+                if(factor == 0){
+                    continue;
+                }
+                for(int j = 0; j < n; j++){
+                    work[r * n + j] -= factor * work[col * n + j];
+                    out[r * n + j] -= factor * out[col * n + j];
+                }
+            }
+        }
+        return determinant;
+    }
+
+    //Overwrites the n x n symmetric matrix a with its lower Cholesky factor L (a = L * L^T). The upper triangle is zeroed.
+    //A pivot fails when it is not above POSITIVITY_THRESHOLD times a's largest diagonal entry, so the test scales with a
+    //and a well-posed S built from tiny variances still factors.
+    static void cholesky(double[] a, int n){
+        double largest = 0;
+        for(int i = 0; i < n; i++){
+            largest = Math.max(largest, a[i * n + i]);
+        }
+        double threshold = POSITIVITY_THRESHOLD * largest;
+
+        for(int j = 0; j < n; j++){
+            int jRow = j * n;
+            double diagonal = a[jRow + j];
+            for(int k = 0; k < j; k++){
+                diagonal -= a[jRow + k] * a[jRow + k];
+            }
+            if(diagonal <= threshold){
+                throw new NonPositiveDefiniteMatrixException(diagonal, j, threshold);
+            }
+            double ljj = Math.sqrt(diagonal);
+            a[jRow + j] = ljj;
+
+            for(int i = j + 1; i < n; i++){
+                int iRow = i * n;
+                double sum = a[iRow + j];
+                for(int k = 0; k < j; k++){
+                    sum -= a[iRow + k] * a[jRow + k];
+                }
+                a[iRow + j] = sum / ljj;
+            }
+            for(int i = j + 1; i < n; i++){
+                a[jRow + i] = 0;
+            }
+        }
+    }
+
+    //Lower factor L of the n x n symmetric positive semidefinite a, written to L with a left alone. Unlike cholesky()
+    //the cutoff is relative to a's largest diagonal entry, so tiny variances are fine, and a pivot below it leaves a
+    //zero column rather than failing, so rank deficient a (e.g. Q driven by fewer noise terms than states) is fine too.
+    static void choleskySemidefinite(double[] a, double[] L, int n){
+        double largest = 0;
+        for(int i = 0; i < n; i++){
+            largest = Math.max(largest, a[i * n + i]);
+        }
+        double threshold = RANK_THRESHOLD * largest;
+
+        for(int i = 0; i < n * n; i++){
+            L[i] = 0;
+        }
+        for(int j = 0; j < n; j++){
+            int jRow = j * n;
+            double diagonal = a[jRow + j];
+            for(int k = 0; k < j; k++){
+                diagonal -= L[jRow + k] * L[jRow + k];
+            }
+            if(diagonal <= threshold){
+                continue;
+            }
+            double ljj = Math.sqrt(diagonal);
+            L[jRow + j] = ljj;
+            for(int i = j + 1; i < n; i++){
+                int iRow = i * n;
+                double sum = a[iRow + j];
+                for(int k = 0; k < j; k++){
+                    sum -= L[iRow + k] * L[jRow + k];
+                }
+                L[iRow + j] = sum / ljj;
+            }
+        }
+    }
+
+    //Solves L * L^T * v = b in place, where L is the n x n lower factor from cholesky() and b starts at offset in v
+    static void choleskySolve(double[] L, double[] v, int offset, int n){
+        for(int i = 0; i < n; i++){
+            int lRow = i * n;
+            double sum = v[offset + i];
+            for(int k = 0; k < i; k++){
+                sum -= L[lRow + k] * v[offset + k];
+            }
+            v[offset + i] = sum / L[lRow + i];
+        }
+        for(int i = n - 1; i >= 0; i--){
+            double sum = v[offset + i];
+            for(int k = i + 1; k < n; k++){
+                sum -= L[k * n + i] * v[offset + k];
+            }
+            v[offset + i] = sum / L[i * n + i];
+        }
+    }
+
+    //out = (L * L^T)^-1 for the lower factor L from cholesky(). The inverse is symmetric, so row i is solved in place
+    //as column i, and out comes out symmetric up to rounding.
+    static void choleskyInverse(double[] L, double[] out, int n){
+        for(int i = 0; i < n; i++){
+            int row = i * n;
+            for(int j = 0; j < n; j++){
+                out[row + j] = i == j ? 1 : 0;
+            }
+            choleskySolve(L, out, row, n);
+        }
+    }
+
+    //Reduces the rows x cols matrix a (rows <= cols) to [L 0] with L lower triangular and a positive diagonal, by
+    //Householder reflections applied from the right. a * a^T is unchanged, so L * L^T equals the original a * a^T.
+    //v is scratch of length cols.
+    static void lowerTriangularize(double[] a, int rows, int cols, double[] v){
+        for(int i = 0; i < rows; i++){
+            int iRow = i * cols;
+            double norm = 0;
+            for(int j = i; j < cols; j++){
+                norm += a[iRow + j] * a[iRow + j];
+            }
+            norm = Math.sqrt(norm);
+
+            //Reflect row i onto alpha * e_i, picking the sign of alpha that avoids cancellation
+            double alpha = a[iRow + i] > 0 ? -norm : norm;
+            double vv = 0;
+            for(int j = i; j < cols; j++){
+                v[j] = a[iRow + j];
+            }
+            v[i] -= alpha;
+            for(int j = i; j < cols; j++){
+                vv += v[j] * v[j];
+            }
+
+            if(vv > 0){
+                double scale = 2 / vv;
+                for(int r = i; r < rows; r++){
+                    int rRow = r * cols;
+                    double dot = 0;
+                    for(int j = i; j < cols; j++){
+                        dot += a[rRow + j] * v[j];
+                    }
+                    dot *= scale;
+                    for(int j = i; j < cols; j++){
+                        a[rRow + j] -= dot * v[j];
+                    }
+                }
+            }
+            for(int j = i + 1; j < cols; j++){
+                a[iRow + j] = 0;
+            }
+
+            //Flipping a column is orthogonal too, so keep the diagonal positive
+            if(a[iRow + i] < 0){
+                for(int r = i; r < rows; r++){
+                    a[r * cols + i] = -a[r * cols + i];
+                }
+            }
+        }
+    }
+
+    static void symmetrize(double[] a, int n){
+        for(int i = 0; i < n; i++){
+            for(int j = i + 1; j < n; j++){
+                double average = 0.5 * (a[i * n + j] + a[j * n + i]);
+                a[i * n + j] = average;
+                a[j * n + i] = average;
+            }
+        }
+    }
+
+    private static void swapRows(double[] a, int n, int r1, int r2){
+        int o1 = r1 * n;
+        int o2 = r2 * n;
+        for(int j = 0; j < n; j++){
+            double t = a[o1 + j];
+            a[o1 + j] = a[o2 + j];
+            a[o2 + j] = t;
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.avisautomata;
+
+//An n x n matrix that is zero off the diagonal, e.g. R for independent sensor channels or Q for independent states.
+//Wraps the given array without copying, so a caller can update the variances in place between steps.
+public class DiagonalMatrix {
+
+    private final double[] diagonal;
+
+    public DiagonalMatrix(double... diagonal){
+        this.diagonal = diagonal;
+    }
+
+    public int getDimension(){
+        return diagonal.length;
+    }
+
+    public double getEntry(int i){
+        return diagonal[i];
+    }
+
+    //The live diagonal
+    public double[] getDiagonal(){
+        return diagonal;
+    }
+
+    //Writes the dense n x n matrix into the leading entries of out
+    public void copyTo(double[] out){
+        int n = diagonal.length;
+        for(int i = 0; i < n * n; i++){
+            out[i] = 0;
+        }
+        for(int i = 0; i < n; i++){
+            out[i * n + i] = diagonal[i];
+        }
+    }
+
+    public double[] toArray(){
+        int n = diagonal.length;
+        double[] out = new double[n * n];
+        copyTo(out);
+        return out;
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+
+//Linearizes f and h around the current estimate each step and then runs the same covariance math, update modes
+//and preallocated buffers as the linear filter. Only the state prediction and the innovation use the full
+//nonlinear functions.
+public class ExtendedKalmanFilter extends ArrayMultivariateKalmanFilter {
+
+    private final double[] state;
+    private final double[] predicted;
+    private final double[] F;
+    private final double[] H;
+    private final double[] hx;
+    private final double[] innovation;
+
+    public ExtendedKalmanFilter(double[] initial, int m){
+        super(initial, m);
+        int n = initial.length;
+
+        this.state = new double[n];
+        this.predicted = new double[n];
+        this.F = new double[n * n];
+        this.H = new double[m * n];
+        this.hx = new double[m];
+        this.innovation = new double[m];
+    }
+
+    public ExtendedKalmanFilter(int n, int m){
+        this(new double[n], m);
+    }
+
+    //x = f(x), P = F * P * F^T + Q where F is the Jacobian of f at the current x
+    public void predict(VectorFunction f, JacobianFunction jacobian, double[] Q){
+        int n = getDimension();
+        if(Q.length != n * n){
+            throw new DimensionMismatchException(Q.length, n * n);
+        }
+
+        getState(state);
+        jacobian.apply(state, F);
+        f.apply(state, predicted);
+        propagate(predicted, F, Q);
+    }
+
+    //Measures z against h(x), where H is the Jacobian of h at the current x. R is k x k and z has k entries.
+    public void measure(VectorFunction h, JacobianFunction jacobian, double[] R, double[] z){
+        measure(h, jacobian, R, z, ResidualFunction.SUBTRACT);
+    }
+
+    //As above with the innovation z - h(x) taken by residual, e.g. ResidualFunction.angles() for a heading or bearing
+    public void measure(VectorFunction h, JacobianFunction jacobian, double[] R, double[] z, ResidualFunction residual){
+        int k = z.length;
+        if(k > getMeasurementDimension()){
+            throw new DimensionMismatchException(k, getMeasurementDimension());
+        }
+        if(R.length != k * k){
+            throw new DimensionMismatchException(R.length, k * k);
+        }
+
+        getState(state);
+        jacobian.apply(state, H);
+        h.apply(state, hx);
+        residual.apply(z, hx, k, innovation);
+        correct(H, R, innovation, k);
+    }
+
+    //The Jacobians move with the estimate, so there is no fixed gain to freeze, and the nonlinear predict() and
+    //measure() always run the full update
+    @Override
+    public void setSteadyState(double[] F, double[] H, double[] Q, double[] R){
+        throw new MathUnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,353 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.exception.NumberIsTooLargeException;
+import org.apache.commons.math3.exception.OutOfRangeException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.CRC32C;
+
+//Binary snapshots of x, P, the filter time and the update mode in a memory-mapped file, one fixed-size slot per
+//filter, for warm restarts. A save is a bulk copy into the mapping, the OS writes it back on its own schedule and
+//flush() forces only what changed since the last flush, so the update loop never waits on the disk.
+//
+//Each slot holds two copies that saves alternate between, each with a version and a CRC32C. A crash part way through
+//a save can only tear the copy being written, restore() then falls back to the other one and loses that last save.
+//
+//Steady-state gains are configuration rather than state and are not saved. restore() goes through setState(), which
+//drops any gain the target had frozen since it belongs to the old P, so a restored filter runs the full update until
+//its steady state is set or detected again.
+//
+//save() and restore() belong to one thread, flush() may run on another, e.g. a timer.
+public class FilterCheckpoint implements Closeable {
+
+    private static final int MAGIC = 0x4B464350;
+    //Format 1 stored UpdateMode.ordinal(), which shifts if the enum is reordered
+    private static final int FORMAT = 2;
+    static final int HEADER_SIZE = 64;
+
+    //Copy layout: CRC of the rest, n (0 for never written), version, time, update mode, padding, then x and P
+    private static final int CRC_OFFSET = 0;
+    private static final int N_OFFSET = 4;
+    private static final int VERSION_OFFSET = 8;
+    private static final int TIME_OFFSET = 16;
+    private static final int MODE_OFFSET = 24;
+    private static final int DATA_OFFSET = 32;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int n;
+    private final int slots;
+    private final int copySize;
+
+    //Latest version written to each slot, so saves know which copy to overwrite without reading the file
+    private final long[] versions;
+    //One bit per copy written since the last flush()
+    private final AtomicLongArray dirty;
+
+    private final byte[] scratch;
+    private final ByteBuffer scratchBuffer;
+    private final CRC32C crc = new CRC32C();
+    private final double[] x;
+    private final double[] P;
+
+    //Filled by load()
+    private double loadedTime;
+    private UpdateMode loadedMode;
+
+    private FilterCheckpoint(FileChannel channel, int n, int slots) throws IOException {
+        if(n <= 0){
+            throw new NotStrictlyPositiveException(n);
+        }
+        if(slots <= 0){
+            throw new NotStrictlyPositiveException(slots);
+        }
+        this.channel = channel;
+        this.n = n;
+        this.slots = slots;
+        this.copySize = copySize(n);
+
+        //A MappedByteBuffer is int indexed
+        long size = HEADER_SIZE + 2L * slots * copySize;
+        if(size > Integer.MAX_VALUE){
+            throw new NumberIsTooLargeException(size, Integer.MAX_VALUE, true);
+        }
+
+        boolean existing = channel.size() > 0;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        this.versions = new long[slots];
+        this.dirty = new AtomicLongArray((2 * slots + 63) / 64);
+        this.scratch = new byte[copySize];
+        this.scratchBuffer = ByteBuffer.wrap(scratch).order(ByteOrder.LITTLE_ENDIAN);
+        this.x = new double[n];
+        this.P = new double[n * n];
+
+        if(existing){
+            if(buffer.getInt(0) != MAGIC){
+                throw new IOException("Not a filter checkpoint: " + channel);
+            }
+            if(buffer.getInt(4) != FORMAT){
+                throw new IOException("Checkpoint format " + buffer.getInt(4) + " is not supported, expected " + FORMAT);
+            }
+            if(buffer.getInt(8) != n || buffer.getInt(12) != slots){
+                throw new IOException("Checkpoint holds " + buffer.getInt(12) + " slots of dimension " + buffer.getInt(8)
+                        + ", expected " + slots + " of dimension " + n);
+            }
+            for(int slot = 0; slot < slots; slot++){
+                versions[slot] = Math.max(readVersion(slot, 0), readVersion(slot, 1));
+            }
+        }else{
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT);
+            buffer.putInt(8, n);
+            buffer.putInt(12, slots);
+            buffer.putInt(16, copySize);
+            buffer.force(0, HEADER_SIZE);
+        }
+    }
+
+    //Maps the checkpoint at path, creating it if needed. An existing file must have been made with the same n and slots.
+    public static FilterCheckpoint open(Path path, int n, int slots) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try{
+            return new FilterCheckpoint(channel, n, slots);
+        }catch(IOException | RuntimeException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    //Bytes per copy: the 32 byte copy header, x and P
+    static int copySize(int n){
+        return DATA_OFFSET + 8 * (n + n * n);
+    }
+
+    public void save(int slot, double time, ArrayMultivariateKalmanFilter filter){
+        checkDimension(filter.getDimension());
+        filter.getState(x);
+        filter.getCovariance(P);
+        write(slot, time, filter.getUpdateMode());
+    }
+
+    public void save(int slot, double time, MultivariateKalmanFilter filter){
+        checkDimension(filter.getDimension());
+        filter.getState(x);
+        filter.getCovariance(P);
+        write(slot, time, filter.getUpdateMode());
+    }
+
+    //Filter i of the bank goes to slot i, all at the same time
+    public void save(double time, KalmanFilterBank bank){
+        checkBank(bank);
+        UpdateMode mode = bank.getUpdateMode();
+        for(int i = 0; i < bank.getCount(); i++){
+            bank.getState(i, x);
+            bank.getCovariance(i, P);
+            write(i, time, mode);
+        }
+    }
+
+    //Restores the newest intact snapshot in slot into filter, including its update mode, and returns its time
+    public double restore(int slot, ArrayMultivariateKalmanFilter filter){
+        checkDimension(filter.getDimension());
+        loadOrThrow(slot);
+        filter.setState(x, P);
+        filter.setUpdateMode(loadedMode);
+        return loadedTime;
+    }
+
+    public double restore(int slot, MultivariateKalmanFilter filter){
+        checkDimension(filter.getDimension());
+        loadOrThrow(slot);
+        filter.setState(x, P);
+        filter.setUpdateMode(loadedMode);
+        return loadedTime;
+    }
+
+    //Restores filter i of the bank from slot i and writes its time to times[i]. The bank shares one update mode, it is
+    //taken from slot 0.
+    public void restore(KalmanFilterBank bank, double[] times){
+        checkBank(bank);
+        if(times.length != bank.getCount()){
+            throw new DimensionMismatchException(times.length, bank.getCount());
+        }
+        for(int i = 0; i < bank.getCount(); i++){
+            loadOrThrow(i);
+            bank.setState(i, x, P);
+            times[i] = loadedTime;
+            if(i == 0){
+                bank.setUpdateMode(loadedMode);
+            }
+        }
+    }
+
+    //Whether slot holds at least one intact snapshot
+    public boolean isValid(int slot){
+        checkSlot(slot);
+        return load(slot);
+    }
+
+    //Forces the copies written since the last flush to disk, one force() per run of adjacent dirty copies
+    public void flush(){
+        for(int word = 0; word < dirty.length(); word++){
+            long bits = dirty.getAndSet(word, 0);
+            while(bits != 0){
+                int first = Long.numberOfTrailingZeros(bits);
+                int run = Long.numberOfTrailingZeros(~(bits >>> first));
+                bits &= run == 64 ? 0 : ~(((1L << run) - 1) << first);
+                buffer.force(copyOffset(word * 64 + first), run * copySize);
+            }
+        }
+    }
+
+    public int getSlots(){
+        return slots;
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        buffer.force();
+        channel.close();
+    }
+
+    private void write(int slot, double time, UpdateMode mode){
+        checkSlot(slot);
+        long version = versions[slot] + 1;
+        int copy = 2 * slot + (int) (version & 1);
+
+        scratchBuffer.putInt(N_OFFSET, n);
+        scratchBuffer.putLong(VERSION_OFFSET, version);
+        scratchBuffer.putDouble(TIME_OFFSET, time);
+        scratchBuffer.putInt(MODE_OFFSET, modeCode(mode));
+        int offset = DATA_OFFSET;
+        for(int i = 0; i < n; i++, offset += 8){
+            scratchBuffer.putDouble(offset, x[i]);
+        }
+        for(int i = 0; i < n * n; i++, offset += 8){
+            scratchBuffer.putDouble(offset, P[i]);
+        }
+        crc.reset();
+        crc.update(scratch, N_OFFSET, copySize - N_OFFSET);
+        scratchBuffer.putInt(CRC_OFFSET, (int) crc.getValue());
+
+        buffer.put(copyOffset(copy), scratch, 0, copySize);
+        versions[slot] = version;
+        markDirty(copy);
+    }
+
+    private void markDirty(int copy){
+        int word = copy >>> 6;
+        long bit = 1L << copy;
+        //Only set the bit if flush() cleared it, a read is cheaper than an atomic update on every save
+        if((dirty.get(word) & bit) == 0){
+            dirty.getAndAccumulate(word, bit, (a, b) -> a | b);
+        }
+    }
+
+    //Reads the newest intact copy of slot into x, P, loadedTime and loadedMode. False if neither copy is intact.
+    private boolean load(int slot){
+        long first = readVersion(slot, 0);
+        long second = readVersion(slot, 1);
+        if(first == 0 && second == 0){
+            return false;
+        }
+        int copy = 2 * slot + (first > second ? 0 : 1);
+        buffer.get(copyOffset(copy), scratch, 0, copySize);
+
+        loadedTime = scratchBuffer.getDouble(TIME_OFFSET);
+        loadedMode = mode(scratchBuffer.getInt(MODE_OFFSET));
+        int offset = DATA_OFFSET;
+        for(int i = 0; i < n; i++, offset += 8){
+            x[i] = scratchBuffer.getDouble(offset);
+        }
+        for(int i = 0; i < n * n; i++, offset += 8){
+            P[i] = scratchBuffer.getDouble(offset);
+        }
+        return true;
+    }
+
+    private void loadOrThrow(int slot){
+        checkSlot(slot);
+        if(!load(slot)){
+            throw new IllegalStateException("Checkpoint slot " + slot + " holds no intact snapshot");
+        }
+    }
+
+    //Version of one copy of slot, or 0 if it was never written or fails its checksum
+    private long readVersion(int slot, int which){
+        int copy = 2 * slot + which;
+        buffer.get(copyOffset(copy), scratch, 0, copySize);
+        if(scratchBuffer.getInt(N_OFFSET) != n){
+            return 0;
+        }
+        if(mode(scratchBuffer.getInt(MODE_OFFSET)) == null){
+            return 0;
+        }
+        crc.reset();
+        crc.update(scratch, N_OFFSET, copySize - N_OFFSET);
+        if((int) crc.getValue() != scratchBuffer.getInt(CRC_OFFSET)){
+            return 0;
+        }
+        return scratchBuffer.getLong(VERSION_OFFSET);
+    }
+
+    //Fixed codes for the update modes on disk, so reordering or adding to the enum can't change what a file means
+    private static int modeCode(UpdateMode mode){
+        return switch(mode){
+            case INVERSE -> 1;
+            case JOSEPH -> 2;
+            case SEQUENTIAL -> 3;
+        };
+    }
+
+    //Null for a code no mode has
+    private static UpdateMode mode(int code){
+        return switch(code){
+            case 1 -> UpdateMode.INVERSE;
+            case 2 -> UpdateMode.JOSEPH;
+            case 3 -> UpdateMode.SEQUENTIAL;
+            default -> null;
+        };
+    }
+
+    private int copyOffset(int copy){
+        return HEADER_SIZE + copy * copySize;
+    }
+
+    private void checkSlot(int slot){
+        if(slot < 0 || slot >= slots){
+            throw new OutOfRangeException(slot, 0, slots - 1);
+        }
+    }
+
+    private void checkDimension(int dimension){
+        if(dimension != n){
+            throw new DimensionMismatchException(dimension, n);
+        }
+    }
+
+    private void checkBank(KalmanFilterBank bank){
+        checkDimension(bank.getDimension());
+        if(bank.getCount() > slots){
+            throw new NumberIsTooLargeException(bank.getCount(), slots, true);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+
+//Rauch-Tung-Striebel smoothing over a sliding window. Each step keeps its F, predicted and filtered x and P for the
+//last lag + 1 steps only. Once the window is full, every new step runs the RTS backward pass across it and hands
+//the oldest step's smoothed state to the consumer, so memory stays bounded by lag no matter how long the run is.
+public class FixedLagSmoother {
+
+    private final int n;
+    private final int window;
+    private final ArrayMultivariateKalmanFilter filter;
+    private final SmoothedStateConsumer consumer;
+
+    //Ring of steps, logical step i lives in physical slot (head + i) % window
+    private final double[] times;
+    private final double[][] Fs;
+    private final double[][] predictedX;
+    private final double[][] predictedP;
+    private final double[][] filteredX;
+    private final double[][] filteredP;
+    private int head;
+    private int size;
+
+    //Scratch for the backward pass
+    private double[] smoothX;
+    private double[] smoothP;
+    private double[] nextSmoothX;
+    private double[] nextSmoothP;
+    private final double[] L;
+    private final double[] C;
+    private final double[] diffX;
+    private final double[] diffP;
+    private final double[] CD;
+
+    public FixedLagSmoother(double[] initial, int m, int lag, SmoothedStateConsumer consumer){
+        if(lag <= 0){
+            throw new NotStrictlyPositiveException(lag);
+        }
+        this.n = initial.length;
+        this.window = lag + 1;
+        this.filter = new ArrayMultivariateKalmanFilter(initial, m);
+        this.consumer = consumer;
+
+        this.times = new double[window];
+        this.Fs = new double[window][n * n];
+        this.predictedX = new double[window][n];
+        this.predictedP = new double[window][n * n];
+        this.filteredX = new double[window][n];
+        this.filteredP = new double[window][n * n];
+
+        this.smoothX = new double[n];
+        this.smoothP = new double[n * n];
+        this.nextSmoothX = new double[n];
+        this.nextSmoothP = new double[n * n];
+        this.L = new double[n * n];
+        this.C = new double[n * n];
+        this.diffX = new double[n];
+        this.diffP = new double[n * n];
+        this.CD = new double[n * n];
+    }
+
+    //Starts a new step at time by moving the filter. The previous step is final from here on.
+    public void move(double time, double[] F, double[] Q){
+        if(F.length != n * n){
+            throw new DimensionMismatchException(F.length, n * n);
+        }
+        if(size == window){
+            //The backward pass has to run before the oldest step leaves, it needs every step in the window
+            smooth(size);
+            consumer.accept(times[head], smoothX, smoothP);
+            head = (head + 1) % window;
+            size--;
+        }
+
+        filter.move(F, Q);
+
+        int slot = physical(size);
+        size++;
+        times[slot] = time;
+        System.arraycopy(F, 0, Fs[slot], 0, n * n);
+        filter.getState(predictedX[slot]);
+        filter.getCovariance(predictedP[slot]);
+        filter.getState(filteredX[slot]);
+        filter.getCovariance(filteredP[slot]);
+    }
+
+    public void predict(double time, MotionModel model, double dt){
+        model.prepare(dt);
+        move(time, model.getF(), model.getQ());
+    }
+
+    //Measures within the current step
+    public void measure(double[] H, double[] R, double[] z){
+        if(size == 0){
+            throw new IllegalStateException("move() must start a step before it can be measured");
+        }
+        filter.measure(H, R, z);
+
+        int slot = physical(size - 1);
+        filter.getState(filteredX[slot]);
+        filter.getCovariance(filteredP[slot]);
+    }
+
+    //Emits every step still in the window, oldest first, smoothed against what's been seen so far
+    public void flush(){
+        while(size > 0){
+            smooth(size);
+            consumer.accept(times[head], smoothX, smoothP);
+            head = (head + 1) % window;
+            size--;
+        }
+    }
+
+    //Runs the backward pass over the first count steps, leaving the oldest one's smoothed state in smoothX/smoothP
+    private void smooth(int count){
+        int newest = physical(count - 1);
+        System.arraycopy(filteredX[newest], 0, smoothX, 0, n);
+        System.arraycopy(filteredP[newest], 0, smoothP, 0, n * n);
+
+        for(int i = count - 2; i >= 0; i--){
+            int slot = physical(i);
+            int next = physical(i + 1);
+
+            //C = P * F^T * inverse(P-). P- is symmetric so each row of C solves P- * C[i]^T = (P * F^T)[i]^T
+            DenseMath.multiplyTranspose(filteredP[slot], Fs[next], C, n, n, n);
+            System.arraycopy(predictedP[next], 0, L, 0, n * n);
+            DenseMath.cholesky(L, n);
+            for(int r = 0; r < n; r++){
+                DenseMath.choleskySolve(L, C, r * n, n);
+            }
+
+            //xs = x + C * (xs' - x-)
+            for(int j = 0; j < n; j++){
+                diffX[j] = smoothX[j] - predictedX[next][j];
+            }
+            System.arraycopy(filteredX[slot], 0, nextSmoothX, 0, n);
+            DenseMath.multiplyVectorAdd(C, diffX, nextSmoothX, n, n);
+
+            //Ps = P + C * (Ps' - P-) * C^T
+            for(int j = 0; j < n * n; j++){
+                diffP[j] = smoothP[j] - predictedP[next][j];
+            }
+            DenseMath.multiply(C, diffP, CD, n, n, n);
+            DenseMath.multiplyTranspose(CD, C, nextSmoothP, n, n, n);
+            DenseMath.add(nextSmoothP, filteredP[slot], n * n);
+            DenseMath.symmetrize(nextSmoothP, n);
+
+            double[] swap = smoothX;
+            smoothX = nextSmoothX;
+            nextSmoothX = swap;
+            swap = smoothP;
+            smoothP = nextSmoothP;
+            nextSmoothP = swap;
+        }
+    }
+
+    private int physical(int index){
+        return (head + index) % window;
+    }
+
+    public void setUpdateMode(UpdateMode updateMode){
+        filter.setUpdateMode(updateMode);
+    }
+
+    //Unsmoothed estimate of the newest step
+    public void getState(double[] out){
+        filter.getState(out);
+    }
+
+    public void getCovariance(double[] out){
+        filter.getCovariance(out);
+    }
+
+    public int getLag(){
+        return window - 1;
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+
+//The DenseMath kernels over float[], for FloatMultivariateKalmanFilter. Same layouts and argument order.
+final class FloatDenseMath {
+
+    private FloatDenseMath(){}
+
+    //out(rows x cols) = a(rows x inner) * b(inner x cols)
+    static void multiply(float[] a, float[] b, float[] out, int rows, int inner, int cols){
+        for(int i = 0; i < rows; i++){
+            int outRow = i * cols;
+            for(int j = 0; j < cols; j++){
+                out[outRow + j] = 0;
+            }
+            int aRow = i * inner;
+            for(int k = 0; k < inner; k++){
+                float aik = a[aRow + k];
+                int bRow = k * cols;
+                for(int j = 0; j < cols; j++){
+                    out[outRow + j] += aik * b[bRow + j];
+                }
+            }
+        }
+    }
+
+    //out(rows x cols) = a(rows x inner) * b(cols x inner)^T
+    static void multiplyTranspose(float[] a, float[] b, float[] out, int rows, int inner, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * inner;
+            for(int j = 0; j < cols; j++){
+                int bRow = j * inner;
+                float sum = 0;
+                for(int k = 0; k < inner; k++){
+                    sum += a[aRow + k] * b[bRow + k];
+                }
+                out[i * cols + j] = sum;
+            }
+        }
+    }
+
+    //out(rows) = a(rows x cols) * v(cols)
+    static void multiplyVector(float[] a, float[] v, float[] out, int rows, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * cols;
+            float sum = 0;
+            for(int j = 0; j < cols; j++){
+                sum += a[aRow + j] * v[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    //out(rows) += a(rows x cols) * v(cols)
+    static void multiplyVectorAdd(float[] a, float[] v, float[] out, int rows, int cols){
+        for(int i = 0; i < rows; i++){
+            int aRow = i * cols;
+            float sum = 0;
+            for(int j = 0; j < cols; j++){
+                sum += a[aRow + j] * v[j];
+            }
+            out[i] += sum;
+        }
+    }
+
+    static void add(float[] a, float[] b, int length){
+        for(int i = 0; i < length; i++){
+            a[i] += b[i];
+        }
+    }
+
+    //Overwrites the n x n symmetric matrix a with its lower Cholesky factor L (a = L * L^T). The upper triangle is zeroed.
+    static void cholesky(float[] a, int n){
+        for(int j = 0; j < n; j++){
+            int jRow = j * n;
+            float diagonal = a[jRow + j];
+            for(int k = 0; k < j; k++){
+                diagonal -= a[jRow + k] * a[jRow + k];
+            }
+            if(!(diagonal > 0)){
+                throw new NonPositiveDefiniteMatrixException(diagonal, j, 0);
+            }
+            float ljj = (float) Math.sqrt(diagonal);
+            a[jRow + j] = ljj;
+
+            for(int i = j + 1; i < n; i++){
+                int iRow = i * n;
+                float sum = a[iRow + j];
+                for(int k = 0; k < j; k++){
+                    sum -= a[iRow + k] * a[jRow + k];
+                }
+                a[iRow + j] = sum / ljj;
+            }
+            for(int i = j + 1; i < n; i++){
+                a[jRow + i] = 0;
+            }
+        }
+    }
+
+    //Solves L * L^T * v = b in place, where L is the n x n lower factor from cholesky() and b starts at offset in v
+    static void choleskySolve(float[] L, float[] v, int offset, int n){
+        for(int i = 0; i < n; i++){
+            int lRow = i * n;
+            float sum = v[offset + i];
+            for(int k = 0; k < i; k++){
+                sum -= L[lRow + k] * v[offset + k];
+            }
+            v[offset + i] = sum / L[lRow + i];
+        }
+        for(int i = n - 1; i >= 0; i--){
+            float sum = v[offset + i];
+            for(int k = i + 1; k < n; k++){
+                sum -= L[k * n + i] * v[offset + k];
+            }
+            v[offset + i] = sum / L[i * n + i];
+        }
+    }
+
+    static void symmetrize(float[] a, int n){
+        for(int i = 0; i < n; i++){
+            for(int j = i + 1; j < n; j++){
+                float average = 0.5f * (a[i * n + j] + a[j * n + i]);
+                a[i * n + j] = average;
+                a[j * n + i] = average;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+//ArrayMultivariateKalmanFilter in single precision, for banks of filters where memory bandwidth rather than
+//arithmetic sets the pace: x, P and every buffer take half the bytes, and twice as many lanes fit in a vector.
+//
+//float has about 7 significant digits, so the update always takes the guarded route: S is factored with Cholesky
+//rather than inverted, P is updated in Joseph form, which stays positive semidefinite under rounding, and P is
+//symmetrized after every move() and measure() so the rounding in the two triangles can't drift apart.
+//Nothing allocates after construction.
+public class FloatMultivariateKalmanFilter {
+
+    private final int n;
+    private final int m;
+
+    private final float[] x;
+    private final float[] P;
+
+    //Scratch for move()
+    private final float[] xNext;
+    private final float[] FP;
+    private final float[] modelF;
+    private final float[] modelQ;
+
+    //Scratch for measure()
+    private final float[] y;
+    private final float[] PHt;
+    private final float[] S;
+    private final float[] K;
+    private final float[] IKH;
+
+    public FloatMultivariateKalmanFilter(float[] initial, int m){
+        this.n = initial.length;
+        this.m = m;
+
+        this.x = initial.clone();
+        this.P = new float[n * n];
+        for(int i = 0; i < n; i++){
+            P[i * n + i] = 1;
+        }
+
+        this.xNext = new float[n];
+        this.FP = new float[n * n];
+        this.modelF = new float[n * n];
+        this.modelQ = new float[n * n];
+
+        this.y = new float[m];
+        this.PHt = new float[n * m];
+        this.S = new float[m * m];
+        this.K = new float[n * m];
+        this.IKH = new float[n * n];
+    }
+
+    public FloatMultivariateKalmanFilter(int n, int m){
+        this(new float[n], m);
+    }
+
+    //F is n x n, B is n x u.length, Q is n x n
+    public void move(float[] F, float[] B, float[] u, float[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        checkLength(B, n * u.length);
+
+        FloatDenseMath.multiplyVector(F, x, xNext, n, n);
+        FloatDenseMath.multiplyVectorAdd(B, u, xNext, n, u.length);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        propagateCovariance(F, Q);
+    }
+
+    public void move(float[] F, float[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+
+        FloatDenseMath.multiplyVector(F, x, xNext, n, n);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        propagateCovariance(F, Q);
+    }
+
+    //Moves forward by dt using F and Q from the model, narrowed to float
+    public void predict(MotionModel model, double dt){
+        if(model.getDimension() != n){
+            throw new DimensionMismatchException(model.getDimension(), n);
+        }
+        model.prepare(dt);
+        double[] F = model.getF();
+        double[] Q = model.getQ();
+        for(int i = 0; i < n * n; i++){
+            modelF[i] = (float) F[i];
+            modelQ[i] = (float) Q[i];
+        }
+        move(modelF, modelQ);
+    }
+
+    private void propagateCovariance(float[] F, float[] Q){
+        //P = F * P * F^T + Q
+        FloatDenseMath.multiply(F, P, FP, n, n, n);
+        FloatDenseMath.multiplyTranspose(FP, F, P, n, n, n);
+        FloatDenseMath.add(P, Q, n * n);
+        FloatDenseMath.symmetrize(P, n);
+    }
+
+    //H is k x n, R is k x k and z has k entries, where k <= m
+    public void measure(float[] H, float[] R, float[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        checkLength(H, k * n);
+        checkLength(R, k * k);
+
+        //y = z - H * x
+        FloatDenseMath.multiplyVector(H, x, y, k, n);
+        for(int i = 0; i < k; i++){
+            y[i] = z[i] - y[i];
+        }
+
+        //S = H * P * H^T + R
+        FloatDenseMath.multiplyTranspose(P, H, PHt, n, n, k);
+        FloatDenseMath.multiply(H, PHt, S, k, n, k);
+        FloatDenseMath.add(S, R, k * k);
+
+        //K * S = P * H^T. S is symmetric so each row of K solves S * K[i]^T = (P * H^T)[i]^T
+        FloatDenseMath.cholesky(S, k);
+        System.arraycopy(PHt, 0, K, 0, n * k);
+        for(int i = 0; i < n; i++){
+            FloatDenseMath.choleskySolve(S, K, i * k, k);
+        }
+
+        //x = x + K * y
+        FloatDenseMath.multiplyVectorAdd(K, y, x, n, k);
+
+        //P = (I - K * H) * P * (I - K * H)^T + K * R * K^T
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                float sum = 0;
+                for(int l = 0; l < k; l++){
+                    sum += K[i * k + l] * H[l * n + j];
+                }
+                IKH[i * n + j] = (i == j ? 1 : 0) - sum;
+            }
+        }
+        FloatDenseMath.multiply(IKH, P, FP, n, n, n);
+        FloatDenseMath.multiplyTranspose(FP, IKH, P, n, n, n);
+        FloatDenseMath.multiply(K, R, PHt, n, k, k);
+        FloatDenseMath.multiplyTranspose(PHt, K, FP, n, k, n);
+        FloatDenseMath.add(P, FP, n * n);
+        FloatDenseMath.symmetrize(P, n);
+    }
+
+    private static void checkLength(float[] array, int expected){
+        if(array.length != expected){
+            throw new DimensionMismatchException(array.length, expected);
+        }
+    }
+
+    //Replaces x and P. P is n x n.
+    public void setState(float[] state, float[] covariance){
+        checkLength(state, n);
+        checkLength(covariance, n * n);
+        System.arraycopy(state, 0, x, 0, n);
+        System.arraycopy(covariance, 0, P, 0, n * n);
+    }
+
+    public void getState(float[] out){
+        System.arraycopy(x, 0, out, 0, n);
+    }
+
+    public void getCovariance(float[] out){
+        System.arraycopy(P, 0, out, 0, n * n);
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+}
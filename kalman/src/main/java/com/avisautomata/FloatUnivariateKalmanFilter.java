@@ -0,0 +1,42 @@
+package com.avisautomata;
+
+//UnivariateKalmanFilter in single precision. The variance is updated in Joseph form,
+//(1 - K)^2 * variance + K^2 * measurementVar, a sum of non-negative terms, so float rounding can't drive it negative
+//the way variance * (1 - K) can once K rounds to 1.
+public class FloatUnivariateKalmanFilter {
+
+    private float mean;
+    private float variance;
+
+    public FloatUnivariateKalmanFilter(float mean, float variance){
+        this.mean = mean;
+        this.variance = variance;
+    }
+
+    public FloatUnivariateKalmanFilter(){
+        this(0, 1);
+    }
+
+    public void measure(float measurementMean, float measurementVar){
+        float residual = measurementMean - mean;
+        float kalmanGain = variance / (variance + measurementVar);
+        float keep = 1 - kalmanGain;
+
+        mean += kalmanGain * residual;
+        variance = keep * keep * variance + kalmanGain * kalmanGain * measurementVar;
+    }
+
+    public void move(float movementMean, float movementVar){
+        mean += movementMean;
+        variance += movementVar;
+    }
+
+    public float getVariance(){
+        return variance;
+    }
+
+    public float getMean(){
+        return mean;
+    }
+
+}
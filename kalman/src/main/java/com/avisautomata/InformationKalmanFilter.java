@@ -0,0 +1,281 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+//The information form: keeps Y = P^-1 and y = P^-1 * x instead of x and P. A measurement adds H^T * R^-1 * H to Y
+//and H^T * R^-1 * z to y, with no n x n solve and nothing that depends on the other sensors, so any number of sensors
+//reporting together cost one Contribution each (computed on whichever threads the caller likes) plus n^2 adds apiece.
+//x and P are only solved for when read, once per batch rather than once per sensor.
+//
+//The price is on the other side: move() has to go back to x and P, propagate them and invert P again, so this form
+//pays off when several sensors update between predictions. Everything is preallocated, nothing allocates per step.
+public class InformationKalmanFilter {
+
+    private final int n;
+    private final int m;
+
+    private final double[] Y;
+    private final double[] y;
+
+    //x and P solved from Y and y, valid until the next measurement
+    private boolean solved;
+    private final double[] x;
+    private final double[] P;
+
+    //Built on the first getEstimate() after the state changes
+    private MultivariateNormalDistribution estimate;
+
+    //Scratch
+    private final double[] work;
+    private final double[] xNext;
+    private final double[] FP;
+    private final Contribution single;
+
+    //The contribution of one sensor's measurement, H^T * R^-1 * H and H^T * R^-1 * z. Each sensor should own one, they
+    //are independent of the filter and of each other so compute() can run on any thread.
+    public static final class Contribution {
+
+        private final int n;
+        private final int m;
+        private final double[] information;
+        private final double[] informationState;
+
+        //Scratch: the factor of R, L^-1 * H and L^-1 * z
+        private final double[] L;
+        private final double[] whitenedH;
+        private final double[] whitenedZ;
+
+        //For measurements of up to m rows against n states
+        public Contribution(int n, int m){
+            this.n = n;
+            this.m = m;
+            this.information = new double[n * n];
+            this.informationState = new double[n];
+            this.L = new double[m * m];
+            this.whitenedH = new double[m * n];
+            this.whitenedZ = new double[m];
+        }
+
+        //H is k x n, R is k x k and z has k entries, where k <= m
+        public void compute(double[] H, double[] R, double[] z){
+            int k = z.length;
+            if(k > m){
+                throw new DimensionMismatchException(k, m);
+            }
+            checkLength(H, k * n);
+            checkLength(R, k * k);
+            compute(H, R, z, k);
+        }
+
+        //With R = L * L^T, H^T * R^-1 * H = (L^-1 * H)^T * (L^-1 * H), so the only solve is a k x k triangular one
+        private void compute(double[] H, double[] R, double[] z, int k){
+            System.arraycopy(R, 0, L, 0, k * k);
+            DenseMath.cholesky(L, k);
+
+            for(int i = 0; i < k; i++){
+                int lRow = i * k;
+                double diagonal = L[lRow + i];
+                for(int j = 0; j < n; j++){
+                    double sum = H[i * n + j];
+                    for(int l = 0; l < i; l++){
+                        sum -= L[lRow + l] * whitenedH[l * n + j];
+                    }
+                    whitenedH[i * n + j] = sum / diagonal;
+                }
+                double sum = z[i];
+                for(int l = 0; l < i; l++){
+                    sum -= L[lRow + l] * whitenedZ[l];
+                }
+                whitenedZ[i] = sum / diagonal;
+            }
+
+            for(int i = 0; i < n; i++){
+                for(int j = i; j < n; j++){
+                    double sum = 0;
+                    for(int l = 0; l < k; l++){
+                        sum += whitenedH[l * n + i] * whitenedH[l * n + j];
+                    }
+                    information[i * n + j] = sum;
+                    information[j * n + i] = sum;
+                }
+                double sum = 0;
+                for(int l = 0; l < k; l++){
+                    sum += whitenedH[l * n + i] * whitenedZ[l];
+                }
+                informationState[i] = sum;
+            }
+        }
+
+        public int getDimension(){
+            return n;
+        }
+
+    }
+
+    //m is the largest measurement measure() takes, contributions built elsewhere can be any size
+    public InformationKalmanFilter(double[] initial, int m){
+        this.n = initial.length;
+        this.m = m;
+
+        //P = I, so Y = I and y = x
+        this.Y = new double[n * n];
+        for(int i = 0; i < n; i++){
+            Y[i * n + i] = 1;
+        }
+        this.y = initial.clone();
+        this.x = initial.clone();
+        this.P = Y.clone();
+        this.solved = true;
+
+        this.work = new double[n * n];
+        this.xNext = new double[n];
+        this.FP = new double[n * n];
+        this.single = new Contribution(n, m);
+    }
+
+    public InformationKalmanFilter(int n, int m){
+        this(new double[n], m);
+    }
+
+    //F is n x n and Q is n x n
+    public void move(double[] F, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        solve();
+
+        estimate = null;
+        DenseMath.multiplyVector(F, x, xNext, n, n);
+        System.arraycopy(xNext, 0, x, 0, n);
+        //P = F * P * F^T + Q
+        DenseMath.multiply(F, P, FP, n, n, n);
+        DenseMath.multiplyTranspose(FP, F, P, n, n, n);
+        DenseMath.add(P, Q, n * n);
+        DenseMath.symmetrize(P, n);
+
+        informationFromMoments();
+    }
+
+    public void predict(MotionModel model, double dt){
+        if(model.getDimension() != n){
+            throw new DimensionMismatchException(model.getDimension(), n);
+        }
+        model.prepare(dt);
+        move(model.getF(), model.getQ());
+    }
+
+    //H is k x n, R is k x k and z has k entries, where k <= m
+    public void measure(double[] H, double[] R, double[] z){
+        single.compute(H, R, z);
+        add(single);
+    }
+
+    //Folds in one sensor's contribution, Y += H^T * R^-1 * H and y += H^T * R^-1 * z
+    public void add(Contribution contribution){
+        if(contribution.n != n){
+            throw new DimensionMismatchException(contribution.n, n);
+        }
+        estimate = null;
+        solved = false;
+        DenseMath.add(Y, contribution.information, n * n);
+        DenseMath.add(y, contribution.informationState, n);
+    }
+
+    //Folds in every contribution, in array order so the sum is the same however they were computed
+    public void add(Contribution... contributions){
+        for(Contribution contribution : contributions){
+            add(contribution);
+        }
+    }
+
+    //P = Y^-1 and x = P * y, once per batch of measurements
+    private void solve(){
+        if(solved){
+            return;
+        }
+        System.arraycopy(Y, 0, work, 0, n * n);
+        DenseMath.cholesky(work, n);
+        DenseMath.choleskyInverse(work, P, n);
+        DenseMath.symmetrize(P, n);
+        System.arraycopy(y, 0, x, 0, n);
+        DenseMath.choleskySolve(work, x, 0, n);
+        solved = true;
+    }
+
+    //Y = P^-1 and y = Y * x from the solved x and P
+    private void informationFromMoments(){
+        System.arraycopy(P, 0, work, 0, n * n);
+        DenseMath.cholesky(work, n);
+        DenseMath.choleskyInverse(work, Y, n);
+        DenseMath.symmetrize(Y, n);
+        DenseMath.multiplyVector(Y, x, y, n, n);
+    }
+
+    private static void checkLength(double[] array, int expected){
+        if(array.length != expected){
+            throw new DimensionMismatchException(array.length, expected);
+        }
+    }
+
+    //Replaces x and P. P must be positive definite.
+    public void setState(double[] state, double[] covariance){
+        checkLength(state, n);
+        checkLength(covariance, n * n);
+        estimate = null;
+        System.arraycopy(state, 0, x, 0, n);
+        System.arraycopy(covariance, 0, P, 0, n * n);
+        solved = true;
+        informationFromMoments();
+    }
+
+    //Replaces Y and y directly. Y may be singular, e.g. all zero for no prior at all, as long as measurements make it
+    //positive definite before the state is read or the filter moved.
+    public void setInformation(double[] information, double[] informationState){
+        checkLength(information, n * n);
+        checkLength(informationState, n);
+        estimate = null;
+        solved = false;
+        System.arraycopy(information, 0, Y, 0, n * n);
+        System.arraycopy(informationState, 0, y, 0, n);
+    }
+
+    public void getInformation(double[] out){
+        System.arraycopy(Y, 0, out, 0, n * n);
+    }
+
+    public void getInformationState(double[] out){
+        System.arraycopy(y, 0, out, 0, n);
+    }
+
+    public void getState(double[] out){
+        solve();
+        System.arraycopy(x, 0, out, 0, n);
+    }
+
+    public void getCovariance(double[] out){
+        solve();
+        System.arraycopy(P, 0, out, 0, n * n);
+    }
+
+    //Built once per change of state and shared until the next change
+    public MultivariateNormalDistribution getEstimate(){
+        if(estimate == null){
+            solve();
+            double[][] covariance = new double[n][n];
+            for(int i = 0; i < n; i++){
+                System.arraycopy(P, i * n, covariance[i], 0, n);
+            }
+            estimate = new MultivariateNormalDistribution(x.clone(), covariance);
+        }
+        return estimate;
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+}
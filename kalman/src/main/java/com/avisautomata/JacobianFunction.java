@@ -0,0 +1,7 @@
+package com.avisautomata;
+
+//Jacobian of a VectorFunction at in, written row-major into jacobian as (output size) x (input size)
+@FunctionalInterface
+public interface JacobianFunction {
+    void apply(double[] in, double[] jacobian);
+}
@@ -0,0 +1,140 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+//Runs a KalmanFilterBank's predict and update across a ForkJoinPool. Filters never share data and every filter
+//does exactly the arithmetic it would on one thread, so results match the sequential bank bit for bit.
+public class KalmanBankExecutor {
+
+    //8 doubles is one 64 byte cache line. Chunks cover whole groups of 8 filters, but heap arrays are not 64 byte
+    //aligned, so neighbouring chunks can still share the one line straddling their edge in each row of x and P. With
+    //at least MIN_CHUNK filters per chunk that is at most one line in eight at each edge.
+    private static final int LINE = 8;
+    //Below this many filters per chunk the fork/join overhead outweighs the work
+    private static final int MIN_CHUNK = 64;
+    //More chunks than threads lets work stealing even out uneven cores
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final KalmanFilterBank bank;
+    private final ForkJoinPool pool;
+    private final int slots;
+
+    public KalmanBankExecutor(KalmanFilterBank bank, ForkJoinPool pool){
+        this.bank = bank;
+        this.pool = pool;
+        this.slots = Math.max(1, pool.getParallelism() * CHUNKS_PER_THREAD);
+    }
+
+    public KalmanBankExecutor(KalmanFilterBank bank){
+        this(bank, ForkJoinPool.commonPool());
+    }
+
+    public void predictAll(double[] F, double[] Q){
+        int n = bank.getDimension();
+        if(F.length != n * n){
+            throw new DimensionMismatchException(F.length, n * n);
+        }
+        if(Q.length != n * n){
+            throw new DimensionMismatchException(Q.length, n * n);
+        }
+
+        int count = bank.getCount();
+        int chunk = chunkSize(count);
+        int chunks = (count + chunk - 1) / chunk;
+        if(chunks <= 1){
+            bank.predict(F, Q, 0, count);
+            return;
+        }
+
+        RecursiveAction[] tasks = new RecursiveAction[chunks];
+        for(int c = 0; c < chunks; c++){
+            int from = c * chunk;
+            int to = Math.min(count, from + chunk);
+            tasks[c] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    bank.predict(F, Q, from, to);
+                }
+            };
+        }
+        invoke(tasks);
+    }
+
+    //Same contract as KalmanFilterBank.updateAll(). indices must not repeat a filter, since repeated updates of one
+    //filter would otherwise race and lose their order.
+    public void updateAll(double[] H, double[] R, int[] indices, double[] z){
+        int k = bank.prepareUpdate(H, R, indices, z);
+        update(indices, z, k, indices.length);
+    }
+
+    public void updateAll(double[] H, double[] R, double[] z){
+        int k = bank.prepareUpdate(H, R, null, z);
+        update(null, z, k, bank.getCount());
+    }
+
+    private void update(int[] indices, double[] z, int k, int length){
+        int chunk = chunkSize(length);
+        int chunks = (length + chunk - 1) / chunk;
+        if(chunks <= 1){
+            bank.update(indices, z, k, 0, length);
+            return;
+        }
+
+        //Indexed chunks end where the index moves into a new group of 8 filters, so with ascending indices they
+        //don't split a group between threads either
+        int[] bounds = new int[chunks + 1];
+        int tasks = 0;
+        for(int c = 1; c < chunks; c++){
+            int bound = Math.max(c * chunk, bounds[tasks]);
+            if(indices != null){
+                while(bound < length && indices[bound] / LINE == indices[bound - 1] / LINE){
+                    bound++;
+                }
+            }
+            if(bound > bounds[tasks] && bound < length){
+                bounds[++tasks] = bound;
+            }
+        }
+        bounds[++tasks] = length;
+
+        RecursiveAction[] actions = new RecursiveAction[tasks];
+        for(int c = 0; c < tasks; c++){
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            actions[c] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    bank.update(indices, z, k, from, to);
+                }
+            };
+        }
+        invoke(actions);
+    }
+
+    private void invoke(RecursiveAction[] tasks){
+        if(tasks.length == 1){
+            tasks[0].invoke();
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+    }
+
+    private int chunkSize(int count){
+        int chunk = Math.max(MIN_CHUNK, (count + slots - 1) / slots);
+        return (chunk + LINE - 1) / LINE * LINE;
+    }
+
+    public KalmanFilterBank getBank(){
+        return bank;
+    }
+
+}
@@ -0,0 +1,398 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.exception.OutOfRangeException;
+
+//Many independent filters with the same dimensions, stored structure-of-arrays. Entry i of every filter's state
+//sits in one contiguous run x[i * count .. (i + 1) * count), and entry (i, j) of every covariance likewise sits in
+//P[(i * n + j) * count ..]. The predict and update loops run innermost over filters with a scalar coefficient from F
+//or H, which is the shape the JIT auto-vectorizes.
+public class KalmanFilterBank {
+
+    private final int count;
+    private final int n;
+
+    private final double[] x;
+    private final double[] P;
+
+    //Scratch for predict
+    private final double[] xNext;
+    private final double[] FP;
+
+    //Scratch for update, indexed by filter like x, so disjoint sets of filters can update on different threads
+    private final double[] Ph;
+    private final double[] K;
+    private final double[] s;
+    private final double[] y;
+    private final double[] zWhite;
+
+    //H and R of the current update, set by prepareUpdate(). A correlated R = L * L^T is whitened once per call: the
+    //rows of L^-1 * H are measured one at a time against unit variance, with z whitened per filter to match.
+    private final int m;
+    private final double[] rowH;
+    private final double[] rowVariance;
+    private final double[] factor;
+    private boolean correlated;
+
+    private UpdateMode updateMode = UpdateMode.INVERSE;
+
+    public KalmanFilterBank(int count, int n, int m){
+        this.count = count;
+        this.n = n;
+
+        this.x = new double[n * count];
+        this.P = new double[n * n * count];
+        for(int i = 0; i < n; i++){
+            int base = (i * n + i) * count;
+            for(int f = 0; f < count; f++){
+                P[base + f] = 1;
+            }
+        }
+
+        this.xNext = new double[n * count];
+        this.FP = new double[n * n * count];
+
+        this.Ph = new double[n * count];
+        this.K = new double[n * count];
+        this.s = new double[count];
+        this.y = new double[count];
+        this.zWhite = new double[m * count];
+
+        this.m = m;
+        this.rowH = new double[m * n];
+        this.rowVariance = new double[m];
+        this.factor = new double[m * m];
+    }
+
+    //Every filter moves with the same F and Q, each n x n row-major
+    public void predictAll(double[] F, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        predict(F, Q, 0, count);
+    }
+
+    //Predicts filters [from, to). Filters never share data, so disjoint ranges can run on different threads.
+    void predict(double[] F, double[] Q, int from, int to){
+        //x = F * x
+        for(int i = 0; i < n; i++){
+            int out = i * count;
+            for(int f = from; f < to; f++){
+                xNext[out + f] = 0;
+            }
+            for(int k = 0; k < n; k++){
+                double a = F[i * n + k];
+                if(a == 0){
+                    continue;
+                }
+                int in = k * count;
+                for(int f = from; f < to; f++){
+                    xNext[out + f] += a * x[in + f];
+                }
+            }
+        }
+        for(int i = 0; i < n; i++){
+            System.arraycopy(xNext, i * count + from, x, i * count + from, to - from);
+        }
+
+        //FP = F * P
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                int out = (i * n + j) * count;
+                for(int f = from; f < to; f++){
+                    FP[out + f] = 0;
+                }
+                for(int k = 0; k < n; k++){
+                    double a = F[i * n + k];
+                    if(a == 0){
+                        continue;
+                    }
+                    int in = (k * n + j) * count;
+                    for(int f = from; f < to; f++){
+                        FP[out + f] += a * P[in + f];
+                    }
+                }
+            }
+        }
+
+        //P = FP * F^T + Q
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                int out = (i * n + j) * count;
+                double q = Q[i * n + j];
+                for(int f = from; f < to; f++){
+                    P[out + f] = q;
+                }
+                for(int k = 0; k < n; k++){
+                    double a = F[j * n + k];
+                    if(a == 0){
+                        continue;
+                    }
+                    int in = (i * n + k) * count;
+                    for(int f = from; f < to; f++){
+                        P[out + f] += a * FP[in + f];
+                    }
+                }
+            }
+        }
+    }
+
+    //Measures the filters in indices with a shared H (k x n) and R (k x k). z holds indices.length measurements of
+    //k entries each, back to back. indices must not repeat a filter.
+    public void updateAll(double[] H, double[] R, int[] indices, double[] z){
+        int k = prepareUpdate(H, R, indices, z);
+        update(indices, z, k, 0, indices.length);
+    }
+
+    //Measures every filter, z holds count measurements of k entries each. With no index list the filter loops run
+    //over contiguous runs of x and P, as in predictAll().
+    public void updateAll(double[] H, double[] R, double[] z){
+        int k = prepareUpdate(H, R, null, z);
+        update(null, z, k, 0, count);
+    }
+
+    //Checks the arguments of an update and sets up its rows. Returns k.
+    int prepareUpdate(double[] H, double[] R, int[] indices, double[] z){
+        int k = H.length / n;
+        if(k < 1){
+            throw new NotStrictlyPositiveException(k);
+        }
+        checkLength(H, k * n);
+        checkLength(R, k * k);
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        if(indices == null){
+            checkLength(z, count * k);
+        }else{
+            checkLength(z, indices.length * k);
+            for(int filter : indices){
+                checkIndex(filter);
+            }
+        }
+
+        correlated = false;
+        for(int i = 0; i < k; i++){
+            for(int j = 0; j < k; j++){
+                if(i != j && R[i * k + j] != 0){
+                    correlated = true;
+                }
+            }
+        }
+
+        System.arraycopy(H, 0, rowH, 0, k * n);
+        if(!correlated){
+            for(int r = 0; r < k; r++){
+                rowVariance[r] = R[r * k + r];
+            }
+            return k;
+        }
+
+        //rowH = L^-1 * H by forward substitution, each row then has unit variance
+        System.arraycopy(R, 0, factor, 0, k * k);
+        DenseMath.cholesky(factor, k);
+        for(int r = 0; r < k; r++){
+            for(int c = 0; c < r; c++){
+                double l = factor[r * k + c];
+                for(int j = 0; j < n; j++){
+                    rowH[r * n + j] -= l * rowH[c * n + j];
+                }
+            }
+            double diagonal = factor[r * k + r];
+            for(int j = 0; j < n; j++){
+                rowH[r * n + j] /= diagonal;
+            }
+            rowVariance[r] = 1;
+        }
+        return k;
+    }
+
+    //Measures the filters at positions [from, to) of indices, or filters [from, to) when indices is null, with the
+    //rows set up by prepareUpdate(). Each row is a scalar update run across all the filters before the next row.
+    void update(int[] indices, double[] z, int k, int from, int to){
+        for(int r = 0; r < k; r++){
+            int zRow = r * count;
+            for(int t = from; t < to; t++){
+                zWhite[zRow + filter(indices, t)] = z[t * k + r];
+            }
+            if(correlated){
+                for(int c = 0; c < r; c++){
+                    double l = factor[r * k + c];
+                    if(l == 0){
+                        continue;
+                    }
+                    int cRow = c * count;
+                    for(int t = from; t < to; t++){
+                        int f = filter(indices, t);
+                        zWhite[zRow + f] -= l * zWhite[cRow + f];
+                    }
+                }
+                double diagonal = factor[r * k + r];
+                for(int t = from; t < to; t++){
+                    zWhite[zRow + filter(indices, t)] /= diagonal;
+                }
+            }
+            updateRow(r * n, rowVariance[r], zRow, indices, from, to);
+        }
+    }
+
+    //One scalar measurement with row h of rowH and variance v for every filter in the range
+    private void updateRow(int h, double v, int zRow, int[] indices, int from, int to){
+        //Ph = P * h
+        for(int i = 0; i < n; i++){
+            int out = i * count;
+            for(int t = from; t < to; t++){
+                Ph[out + filter(indices, t)] = 0;
+            }
+            for(int j = 0; j < n; j++){
+                double a = rowH[h + j];
+                if(a == 0){
+                    continue;
+                }
+                int in = (i * n + j) * count;
+                for(int t = from; t < to; t++){
+                    int f = filter(indices, t);
+                    Ph[out + f] += a * P[in + f];
+                }
+            }
+        }
+
+        //s = h^T * P * h + v and y = z - h^T * x
+        for(int t = from; t < to; t++){
+            int f = filter(indices, t);
+            s[f] = v;
+            y[f] = zWhite[zRow + f];
+        }
+        for(int i = 0; i < n; i++){
+            double a = rowH[h + i];
+            if(a == 0){
+                continue;
+            }
+            int in = i * count;
+            for(int t = from; t < to; t++){
+                int f = filter(indices, t);
+                s[f] += a * Ph[in + f];
+                y[f] -= a * x[in + f];
+            }
+        }
+
+        //K = Ph / s and x += K * y
+        for(int i = 0; i < n; i++){
+            int row = i * count;
+            for(int t = from; t < to; t++){
+                int f = filter(indices, t);
+                double gain = Ph[row + f] / s[f];
+                K[row + f] = gain;
+                x[row + f] += gain * y[f];
+            }
+        }
+
+        //P -= Ph * Ph^T / s, or in Joseph form (I - K * h^T) * P * (I - K * h^T)^T + K * v * K^T, which for a single
+        //row expands to P - (K * Ph^T + Ph * K^T) + s * K * K^T. Both are written so entries (i, j) and (j, i) come
+        //out bit for bit equal.
+        boolean joseph = updateMode == UpdateMode.JOSEPH;
+        for(int i = 0; i < n; i++){
+            int iRow = i * count;
+            for(int j = 0; j < n; j++){
+                int jRow = j * count;
+                int out = (i * n + j) * count;
+                if(joseph){
+                    for(int t = from; t < to; t++){
+                        int f = filter(indices, t);
+                        double ki = K[iRow + f];
+                        double kj = K[jRow + f];
+                        P[out + f] = P[out + f] - (ki * Ph[jRow + f] + Ph[iRow + f] * kj) + s[f] * (ki * kj);
+                    }
+                }else{
+                    for(int t = from; t < to; t++){
+                        int f = filter(indices, t);
+                        P[out + f] -= Ph[iRow + f] * Ph[jRow + f] / s[f];
+                    }
+                }
+            }
+        }
+    }
+
+    private static int filter(int[] indices, int t){
+        return indices == null ? t : indices[t];
+    }
+
+    private void scatter(int filter, double[] state, double[] covariance){
+        for(int i = 0; i < n; i++){
+            x[i * count + filter] = state[i];
+        }
+        for(int i = 0; i < n * n; i++){
+            P[i * count + filter] = covariance[i];
+        }
+    }
+
+    public void setState(int filter, double[] state, double[] covariance){
+        checkIndex(filter);
+        checkLength(state, n);
+        checkLength(covariance, n * n);
+        scatter(filter, state, covariance);
+    }
+
+    public void getState(int filter, double[] out){
+        checkIndex(filter);
+        for(int i = 0; i < n; i++){
+            out[i] = x[i * count + filter];
+        }
+    }
+
+    public void getCovariance(int filter, double[] out){
+        checkIndex(filter);
+        for(int i = 0; i < n * n; i++){
+            out[i] = P[i * count + filter];
+        }
+    }
+
+    public MultivariateNormalDistribution getEstimate(int filter){
+        checkIndex(filter);
+        double[] means = new double[n];
+        double[][] covariance = new double[n][n];
+        for(int i = 0; i < n; i++){
+            means[i] = x[i * count + filter];
+            for(int j = 0; j < n; j++){
+                covariance[i][j] = P[(i * n + j) * count + filter];
+            }
+        }
+        return new MultivariateNormalDistribution(means, covariance);
+    }
+
+    //JOSEPH updates P in Joseph form, every other mode with the plain P -= Ph * Ph^T / s. Rows are always processed
+    //one at a time.
+    public void setUpdateMode(UpdateMode updateMode){
+        this.updateMode = updateMode;
+    }
+
+    public UpdateMode getUpdateMode(){
+        return updateMode;
+    }
+
+    public int getCount(){
+        return count;
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+    private void checkIndex(int filter){
+        if(filter < 0 || filter >= count){
+            throw new OutOfRangeException(filter, 0, count - 1);
+        }
+    }
+
+    private static void checkLength(double[] array, int expected){
+        if(array.length != expected){
+            throw new DimensionMismatchException(array.length, expected);
+        }
+    }
+
+}
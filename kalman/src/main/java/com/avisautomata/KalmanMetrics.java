@@ -0,0 +1,239 @@
+package com.avisautomata;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+//Per-filter instrumentation: predict and update latency histograms, innovation magnitude |y|, NIS = y^T * S^-1 * y,
+//the condition number of S and counts of failed and outlying updates. A filter only records into this once it is
+//handed one with setMetrics(), until then the hot path pays a null check and nothing else.
+//
+//The filter's thread records without synchronization, so the getters, JMX and report() can lag a few steps
+//behind when read from another thread. For the same reason reset() only asks for a reset, the filter's thread clears
+//everything before its next record.
+public class KalmanMetrics implements KalmanMetricsMXBean {
+
+    private final LatencyHistogram predictLatency = new LatencyHistogram();
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+
+    private long failedUpdates;
+    private long outliers;
+    //NIS above this counts as an outlier, e.g. a chi-squared quantile for the measurement size
+    private double outlierThreshold = Double.POSITIVE_INFINITY;
+
+    private long innovations;
+    private double innovationSum;
+    private double innovationMax;
+
+    private long nisCount;
+    private double nisSum;
+    private double nisSquaredSum;
+
+    private double lastCondition = Double.NaN;
+    private double maxCondition = Double.NaN;
+
+    private volatile boolean resetRequested;
+
+    public void setOutlierThreshold(double threshold){
+        this.outlierThreshold = threshold;
+    }
+
+    void recordPredict(long nanos){
+        applyReset();
+        predictLatency.record(nanos);
+    }
+
+    void recordUpdate(long nanos){
+        applyReset();
+        updateLatency.record(nanos);
+    }
+
+    void recordFailure(){
+        applyReset();
+        failedUpdates++;
+    }
+
+    void recordInnovation(double magnitude){
+        applyReset();
+        innovations++;
+        innovationSum += magnitude;
+        if(magnitude > innovationMax){
+            innovationMax = magnitude;
+        }
+    }
+
+    void recordNis(double nis){
+        applyReset();
+        nisCount++;
+        nisSum += nis;
+        nisSquaredSum += nis * nis;
+        if(nis > outlierThreshold){
+            outliers++;
+        }
+    }
+
+    void recordCondition(double condition){
+        applyReset();
+        lastCondition = condition;
+        if(!(condition <= maxCondition)){
+            maxCondition = condition;
+        }
+    }
+
+    public LatencyHistogram getPredictLatency(){
+        return predictLatency;
+    }
+
+    public LatencyHistogram getUpdateLatency(){
+        return updateLatency;
+    }
+
+    @Override
+    public long getPredictCount(){
+        return predictLatency.getCount();
+    }
+
+    @Override
+    public double getPredictMeanNanos(){
+        return predictLatency.getMean();
+    }
+
+    @Override
+    public long getPredictP50Nanos(){
+        return predictLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getPredictP99Nanos(){
+        return predictLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getPredictMaxNanos(){
+        return predictLatency.getMax();
+    }
+
+    @Override
+    public long getUpdateCount(){
+        return updateLatency.getCount();
+    }
+
+    @Override
+    public double getUpdateMeanNanos(){
+        return updateLatency.getMean();
+    }
+
+    @Override
+    public long getUpdateP50Nanos(){
+        return updateLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getUpdateP99Nanos(){
+        return updateLatency.getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getUpdateMaxNanos(){
+        return updateLatency.getMax();
+    }
+
+    @Override
+    public long getFailedUpdates(){
+        return failedUpdates;
+    }
+
+    @Override
+    public long getOutliers(){
+        return outliers;
+    }
+
+    @Override
+    public double getMeanInnovation(){
+        return innovations == 0 ? 0 : innovationSum / innovations;
+    }
+
+    @Override
+    public double getMaxInnovation(){
+        return innovationMax;
+    }
+
+    //Averages the measurement size for a consistent filter
+    @Override
+    public double getMeanNis(){
+        return nisCount == 0 ? 0 : nisSum / nisCount;
+    }
+
+    @Override
+    public double getNisVariance(){
+        double mean = getMeanNis();
+        return nisCount == 0 ? 0 : nisSquaredSum / nisCount - mean * mean;
+    }
+
+    //NaN until an update that builds a full S has been recorded
+    @Override
+    public double getLastConditionNumber(){
+        return lastCondition;
+    }
+
+    @Override
+    public double getMaxConditionNumber(){
+        return maxCondition;
+    }
+
+    //Takes effect at the next record, until then the getters still show the old values
+    @Override
+    public void reset(){
+        resetRequested = true;
+    }
+
+    //Recording thread only. A reset() that lands after the flag is cleared is still covered by the clearing below.
+    private void applyReset(){
+        if(!resetRequested){
+            return;
+        }
+        resetRequested = false;
+        predictLatency.reset();
+        updateLatency.reset();
+        failedUpdates = 0;
+        outliers = 0;
+        innovations = 0;
+        innovationSum = 0;
+        innovationMax = 0;
+        nisCount = 0;
+        nisSum = 0;
+        nisSquaredSum = 0;
+        lastCondition = Double.NaN;
+        maxCondition = Double.NaN;
+    }
+
+    //Registers with the platform MBean server as com.avisautomata:type=KalmanMetrics,name="<name>"
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.avisautomata:type=KalmanMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    //Pushes every value to the sink under names like "update.p99Nanos"
+    public void report(MetricsSink sink){
+        sink.record("predict.count", getPredictCount());
+        sink.record("predict.meanNanos", getPredictMeanNanos());
+        sink.record("predict.p50Nanos", getPredictP50Nanos());
+        sink.record("predict.p99Nanos", getPredictP99Nanos());
+        sink.record("predict.maxNanos", getPredictMaxNanos());
+        sink.record("update.count", getUpdateCount());
+        sink.record("update.meanNanos", getUpdateMeanNanos());
+        sink.record("update.p50Nanos", getUpdateP50Nanos());
+        sink.record("update.p99Nanos", getUpdateP99Nanos());
+        sink.record("update.maxNanos", getUpdateMaxNanos());
+        sink.record("update.failed", getFailedUpdates());
+        sink.record("update.outliers", getOutliers());
+        sink.record("innovation.mean", getMeanInnovation());
+        sink.record("innovation.max", getMaxInnovation());
+        sink.record("nis.mean", getMeanNis());
+        sink.record("nis.variance", getNisVariance());
+        sink.record("condition.last", getLastConditionNumber());
+        sink.record("condition.max", getMaxConditionNumber());
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.avisautomata;
+
+//What KalmanMetrics exposes over JMX. Latencies are in nanoseconds.
+public interface KalmanMetricsMXBean {
+
+    long getPredictCount();
+
+    double getPredictMeanNanos();
+
+    long getPredictP50Nanos();
+
+    long getPredictP99Nanos();
+
+    long getPredictMaxNanos();
+
+    long getUpdateCount();
+
+    double getUpdateMeanNanos();
+
+    long getUpdateP50Nanos();
+
+    long getUpdateP99Nanos();
+
+    long getUpdateMaxNanos();
+
+    long getFailedUpdates();
+
+    long getOutliers();
+
+    double getMeanInnovation();
+
+    double getMaxInnovation();
+
+    double getMeanNis();
+
+    double getNisVariance();
+
+    double getLastConditionNumber();
+
+    double getMaxConditionNumber();
+
+    void reset();
+
+}
@@ -0,0 +1,104 @@
+package com.avisautomata;
+
+//Log-linear histogram of non-negative longs, in the style of HdrHistogram. Values below SUB_BUCKETS get a bucket
+//each. Above that every power of two is split into SUB_BUCKETS / 2 equal buckets, so a value is only ever off by
+//less than 1 / 64 of itself. The buckets are allocated up front and record() is a shift and an increment.
+//
+//Recording is not synchronized. One thread records, other threads can read while it does and see counts a few
+//records behind.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    //About 18 minutes in nanoseconds, anything longer is recorded as this
+    public static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long max;
+    private double sum;
+
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        } else if(value > MAX_VALUE){
+            value = MAX_VALUE;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        if(value > max){
+            max = value;
+        }
+    }
+
+    private static int index(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        //value >>> shift lands in [HALF, SUB_BUCKETS)
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    //Largest value that lands in the bucket
+    private static long highestInBucket(int index){
+        if(index < SUB_BUCKETS){
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        return Math.min(((sub + 1) << shift) - 1, MAX_VALUE);
+    }
+
+    //Smallest recorded bucket value v such that at least percentile % of the values are <= v, 0 when empty
+    public long getValueAtPercentile(double percentile){
+        if(count == 0){
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= target){
+                return Math.min(highestInBucket(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getCount(){
+        return count;
+    }
+
+    public long getMax(){
+        return max;
+    }
+
+    public double getMean(){
+        return count == 0 ? 0 : sum / count;
+    }
+
+    //Adds other's values into this one
+    public void add(LatencyHistogram other){
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public void reset(){
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.avisautomata;
+
+//Weighted mean of the first length entries of points, written into out. Angles need a circular mean: the mean of
+//3.1 and -3.1 is pi, not 0.
+@FunctionalInterface
+public interface MeanFunction {
+
+    void apply(double[][] points, double[] weights, int length, double[] out);
+
+    MeanFunction WEIGHTED = (points, weights, length, out) -> {
+        for(int j = 0; j < length; j++){
+            double sum = 0;
+            for(int i = 0; i < points.length; i++){
+                sum += weights[i] * points[i][j];
+            }
+            out[j] = sum;
+        }
+    };
+
+    //Weighted mean, except the given entries are averaged as unit vectors and come out in [-pi, pi]
+    static MeanFunction angles(int... indices){
+        int[] circular = indices.clone();
+        return (points, weights, length, out) -> {
+            WEIGHTED.apply(points, weights, length, out);
+            for(int j : circular){
+                if(j >= length){
+                    continue;
+                }
+                double sin = 0;
+                double cos = 0;
+                for(int i = 0; i < points.length; i++){
+                    sin += weights[i] * Math.sin(points[i][j]);
+                    cos += weights[i] * Math.cos(points[i][j]);
+                }
+                out[j] = Math.atan2(sin, cos);
+            }
+        };
+    }
+
+}
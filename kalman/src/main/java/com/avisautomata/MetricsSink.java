@@ -0,0 +1,9 @@
+package com.avisautomata;
+
+//Receives KalmanMetrics values by name, e.g. to forward them to a metrics registry or a log
+@FunctionalInterface
+public interface MetricsSink {
+
+    void record(String name, double value);
+
+}
@@ -0,0 +1,93 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+
+//Builds F and Q for a time step, filled in place into preallocated buffers. Irregular sensor timestamps mean a new
+//dt almost every step, so dt is rounded to a multiple of quantum and the matrices for recent values are kept in a
+//small direct-mapped cache. After construction prepare() never allocates.
+//Not thread safe, give each filter its own model.
+public abstract class MotionModel {
+
+    public static final double DEFAULT_QUANTUM = 1e-6;
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int n;
+    private final double quantum;
+    private final int mask;
+
+    private final long[] keys;
+    private final boolean[] filled;
+    private final double[][] transitions;
+    private final double[][] noises;
+
+    private int current = -1;
+
+    protected MotionModel(int n, double quantum, int capacity){
+        if(quantum <= 0){
+            throw new NotStrictlyPositiveException(quantum);
+        }
+        if(capacity <= 0){
+            throw new NotStrictlyPositiveException(capacity);
+        }
+        //Round the capacity up to a power of two so a slot is just the low bits of the key
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity){
+            size <<= 1;
+        }
+
+        this.n = n;
+        this.quantum = quantum;
+        this.mask = size - 1;
+        this.keys = new long[size];
+        this.filled = new boolean[size];
+        this.transitions = new double[size][n * n];
+        this.noises = new double[size][n * n];
+    }
+
+    //Fill the n x n row-major F and Q for a step of dt. Every entry must be written, the buffers are reused.
+    protected abstract void fill(double dt, double[] F, double[] Q);
+
+    //Makes getF() and getQ() return the matrices for dt, rounded to the nearest quantum
+    public void prepare(double dt){
+        long key = Math.round(dt / quantum);
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        if(!filled[slot] || keys[slot] != key){
+            fill(key * quantum, transitions[slot], noises[slot]);
+            keys[slot] = key;
+            filled[slot] = true;
+        }
+        current = slot;
+    }
+
+    public double[] getF(){
+        checkPrepared();
+        return transitions[current];
+    }
+
+    public double[] getQ(){
+        checkPrepared();
+        return noises[current];
+    }
+
+    //fill() may read subclass fields, so the constructor can't prepare a default step
+    private void checkPrepared(){
+        if(current < 0){
+            throw new IllegalStateException("prepare() must be called before the matrices can be read");
+        }
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    //F and Q are block diagonal with square blocks of this size, e.g. one block per independent axis, which lets
+    //filters skip the zero blocks. n, a single dense block, unless a subclass knows better.
+    public int getBlockSize(){
+        return n;
+    }
+
+    public double getQuantum(){
+        return quantum;
+    }
+
+}
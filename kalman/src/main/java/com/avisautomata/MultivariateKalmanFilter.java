@@ -1,12 +1,20 @@
 package com.avisautomata;
 
 import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.DecompositionSolver;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 
 public class MultivariateKalmanFilter {
 
+    //S is only symmetric up to rounding, so don't let the factorization reject it over that
+    private static final double SYMMETRY_THRESHOLD = 1e-10;
+    //A pivot of S fails when it is not above this times S's largest diagonal entry, so tiny variances still factor
+    private static final double POSITIVITY_THRESHOLD = 1e-10;
+
     private RealVector x;
     private RealMatrix P;
 
@@ -14,6 +22,19 @@ public class MultivariateKalmanFilter {
     private RealMatrix defaultB;
     private RealVector defaultU;
 
+    private UpdateMode updateMode = UpdateMode.INVERSE;
+
+    //Built on the first getEstimate() after x or P changes
+    private MultivariateNormalDistribution estimate;
+
+    //When P changes by less than this between two measurements the gain is frozen. 0 never freezes.
+    private double steadyStateTolerance;
+    private RealMatrix lastP;
+    private RealMatrix steadyGain;
+
+    //Null unless setMetrics() was called
+    private KalmanMetrics metrics;
+
     private MultivariateKalmanFilter(MultivariateNormalDistribution initial){
         this.x = MatrixUtils.createRealVector(initial.getMeans());
         this.P = initial.getCovariances();
@@ -43,8 +64,15 @@ public class MultivariateKalmanFilter {
     public void move(RealMatrix F, RealMatrix B, RealVector u, RealMatrix Q){
         //#4 - Go through the equations in Chapter 6 to fill this out.
 
-        x = F.preMultiply(x).add(B.preMultiply(u));
-        P = F.multiply(P).multiply(F.transpose()).add(Q);
+        long start = metrics == null ? 0 : System.nanoTime();
+        estimate = null;
+        x = F.operate(x).add(B.operate(u));
+        if(steadyGain == null){
+            P = F.multiply(P).multiply(F.transpose()).add(Q);
+        }
+        if(metrics != null){
+            metrics.recordPredict(System.nanoTime() - start);
+        }
     }
 
     public void move(RealMatrix F, RealMatrix Q){
@@ -52,20 +80,215 @@ public class MultivariateKalmanFilter {
     }
 
     public void measure(RealMatrix H, RealMatrix R, RealVector z){
+        if(metrics == null){
+            update(H, R, z);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            update(H, R, z);
+        } catch (RuntimeException e) {
+            metrics.recordFailure();
+            throw e;
+        }
+        metrics.recordUpdate(System.nanoTime() - start);
+    }
+
+    private void update(RealMatrix H, RealMatrix R, RealVector z){
+        estimate = null;
+        if(steadyGain != null){
+            RealVector y = z.subtract(H.operate(x));
+            if(metrics != null){
+                metrics.recordInnovation(y.getNorm());
+            }
+            x = x.add(steadyGain.operate(y));
+            return;
+        }
+
+        if(updateMode == UpdateMode.SEQUENTIAL && isDiagonal(R)){
+            measureSequential(H, R, z);
+        } else if(updateMode != UpdateMode.INVERSE){
+            measureJoseph(H, R, z);
+        } else {
+            measureInverse(H, R, z);
+        }
+
+        if(steadyStateTolerance > 0){
+            detectSteadyState(H, R);
+        }
+    }
+
+    private void measureInverse(RealMatrix H, RealMatrix R, RealVector z){
         //#5 - Go through the equations in Chapter 6 to fill this out.
 
-        RealMatrix I = MatrixUtils.createRealIdentityMatrix(2);
+        RealMatrix I = MatrixUtils.createRealIdentityMatrix(x.getDimension());
 
         RealMatrix S = H.multiply(P).multiply(H.transpose()).add(R);
+        RealMatrix SInverse = MatrixUtils.inverse(S);
         //Kalman gain
-        RealMatrix K = P.multiply(H.transpose()).multiply(MatrixUtils.inverse(S));
-        RealVector y = z.subtract(H.preMultiply(x));
-        x = x.add(K.preMultiply(y));
+        RealMatrix K = P.multiply(H.transpose()).multiply(SInverse);
+        RealVector y = z.subtract(H.operate(x));
+        if(metrics != null){
+            recordInnovation(y, S, SInverse);
+        }
+        x = x.add(K.operate(y));
         P = I.subtract(K.multiply(H)).multiply(P);
     }
 
+    private void measureJoseph(RealMatrix H, RealMatrix R, RealVector z){
+        RealMatrix I = MatrixUtils.createRealIdentityMatrix(x.getDimension());
+
+        RealMatrix PHt = P.multiply(H.transpose());
+        RealMatrix S = H.multiply(PHt).add(R);
+        //K = P * H^T * S^-1, found by solving S * K^T = H * P rather than inverting S
+        double largest = 0;
+        for(int i = 0; i < S.getRowDimension(); i++){
+            largest = Math.max(largest, S.getEntry(i, i));
+        }
+        DecompositionSolver solver = new CholeskyDecomposition(S, SYMMETRY_THRESHOLD, POSITIVITY_THRESHOLD * largest).getSolver();
+        RealMatrix K = solver.solve(PHt.transpose()).transpose();
+        RealVector y = z.subtract(H.operate(x));
+        if(metrics != null){
+            recordInnovation(y, S, solver.getInverse());
+        }
+        x = x.add(K.operate(y));
+
+        RealMatrix IKH = I.subtract(K.multiply(H));
+        RealMatrix joseph = IKH.multiply(P).multiply(IKH.transpose()).add(K.multiply(R).multiply(K.transpose()));
+        P = joseph.add(joseph.transpose()).scalarMultiply(0.5);
+    }
+
+    private void measureSequential(RealMatrix H, RealMatrix R, RealVector z){
+        if(metrics != null){
+            metrics.recordInnovation(z.subtract(H.operate(x)).getNorm());
+        }
+        //With diagonal R the per-row y^2 / s add up to the full NIS. S is never formed, so no condition number.
+        double nis = 0;
+        for(int row = 0; row < z.getDimension(); row++){
+            RealVector h = H.getRowVector(row);
+            RealVector Ph = P.operate(h);
+            double s = h.dotProduct(Ph) + R.getEntry(row, row);
+            double y = z.getEntry(row) - h.dotProduct(x);
+            nis += y * y / s;
+
+            x = x.add(Ph.mapMultiply(y / s));
+            P = P.subtract(Ph.outerProduct(Ph).scalarMultiply(1 / s));
+        }
+        if(metrics != null){
+            metrics.recordNis(nis);
+        }
+    }
+
+    //S is symmetric so its 1-norm and infinity norm agree, and ||S|| * ||S^-1|| is its condition number in that norm
+    private void recordInnovation(RealVector y, RealMatrix S, RealMatrix SInverse){
+        metrics.recordInnovation(y.getNorm());
+        metrics.recordNis(y.dotProduct(SInverse.operate(y)));
+        metrics.recordCondition(S.getNorm() * SInverse.getNorm());
+    }
+
+    //Freezes K once the posterior P stops moving. K = P * H^T * R^-1 holds for the posterior P, whichever update made it.
+    private void detectSteadyState(RealMatrix H, RealMatrix R){
+        if(lastP != null && P.subtract(lastP).getNorm() <= steadyStateTolerance * Math.max(1, P.getNorm())){
+            steadyGain = P.multiply(H.transpose()).multiply(MatrixUtils.inverse(R));
+            lastP = null;
+            return;
+        }
+        lastP = P;
+    }
+
+    //For time-invariant F, H, Q and R, P converges. With a tolerance above 0, once P changes by less than that
+    //(relative to its size) between two measurements, K is frozen and from then on move() and measure() only update
+    //x, skipping S, its inverse and P. Q and R are no longer read. 0 turns detection off.
+    public void setSteadyStateTolerance(double tolerance){
+        this.steadyStateTolerance = tolerance;
+    }
+
+    //Goes back to the full update, starting from the frozen P
+    public void clearSteadyState(){
+        steadyGain = null;
+        lastP = null;
+    }
+
+    public boolean isSteadyState(){
+        return steadyGain != null;
+    }
+
+    private static boolean isDiagonal(RealMatrix R){
+        for(int i = 0; i < R.getRowDimension(); i++){
+            for(int j = 0; j < R.getColumnDimension(); j++){
+                if(i != j && R.getEntry(i, j) != 0){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    //Starts recording timings and innovation statistics into metrics, null stops. The NIS and condition number need
+    //S^-1, which the JOSEPH update otherwise never forms, so recording makes that update a little dearer.
+    public void setMetrics(KalmanMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    public KalmanMetrics getMetrics(){
+        return metrics;
+    }
+
+    public void setUpdateMode(UpdateMode updateMode){
+        this.updateMode = updateMode;
+    }
+
+    public UpdateMode getUpdateMode(){
+        return updateMode;
+    }
+
+    //Replaces x and P, e.g. when restoring a checkpoint. P is n x n row-major. A frozen steady state gain is dropped.
+    public void setState(double[] state, double[] covariance){
+        int n = x.getDimension();
+        if(state.length != n){
+            throw new DimensionMismatchException(state.length, n);
+        }
+        if(covariance.length != n * n){
+            throw new DimensionMismatchException(covariance.length, n * n);
+        }
+        double[][] rows = new double[n][n];
+        for(int i = 0; i < n; i++){
+            System.arraycopy(covariance, i * n, rows[i], 0, n);
+        }
+        estimate = null;
+        x = MatrixUtils.createRealVector(state);
+        P = MatrixUtils.createRealMatrix(rows);
+        clearSteadyState();
+    }
+
+    //Copies x into out without building a distribution
+    public void getState(double[] out){
+        for(int i = 0; i < x.getDimension(); i++){
+            out[i] = x.getEntry(i);
+        }
+    }
+
+    //Copies P into out, row-major
+    public void getCovariance(double[] out){
+        int n = x.getDimension();
+        for(int i = 0; i < n; i++){
+            for(int j = 0; j < n; j++){
+                out[i * n + j] = P.getEntry(i, j);
+            }
+        }
+    }
+
+    public int getDimension(){
+        return x.getDimension();
+    }
+
+    //The distribution is built once per change of state and shared between callers until the next move() or
+    //measure(). Sampling from it advances its generator. Use getState() and getCovariance() when polling every step.
     public MultivariateNormalDistribution getEstimate(){
-        return new MultivariateNormalDistribution(x.toArray(), P.getData());
+        if(estimate == null){
+            estimate = new MultivariateNormalDistribution(x.toArray(), P.getData());
+        }
+        return estimate;
     }
 
 }
@@ -0,0 +1,283 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleFunction;
+
+//Picks the process variance q and measurement variance r that make a recorded run of measurements most likely.
+//A candidate (q, r) is scored by running the filter with Q from the motion model built for q and R = r * I, and
+//summing -log N(y; 0, S) over the innovations. Every candidate reads the same preloaded times and measurements.
+//
+//A candidate is dropped as soon as it can no longer win. S = H * P * H^T + R >= R, so every remaining step adds
+//at least 0.5 * k * (log(2 * pi) + log(r)) and the partial sum plus that bound is a true lower bound on the total.
+public class NoiseTuner {
+
+    private static final double LOG_2PI = Math.log(2 * Math.PI);
+
+    //Nelder-Mead settings, in log space
+    private static final double REFLECTION = 1;
+    private static final double EXPANSION = 2;
+    private static final double CONTRACTION = 0.5;
+    private static final double SHRINK = 0.5;
+    private static final double INITIAL_STEP = Math.log(10);
+    private static final double TOLERANCE = 1e-4;
+    private static final int MAX_ITERATIONS = 200;
+
+    private final double[] initial;
+    private final double startTime;
+    private final double[] times;
+    private final double[] measurements;
+    private final double[] H;
+    private final int n;
+    private final int k;
+    private final DoubleFunction<MotionModel> model;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    public record Result(double processVariance, double measurementVariance, double negativeLogLikelihood) {}
+
+    //times has one entry per step and measurements holds each step's k values back to back. H is k x n.
+    //model builds a motion model whose Q has the given variance, e.g. q -> new ConstantVelocityModel(1, q).
+    public NoiseTuner(double[] initial, double startTime, double[] times, double[] measurements, double[] H,
+                      DoubleFunction<MotionModel> model){
+        this.n = initial.length;
+        if(H.length % n != 0){
+            throw new DimensionMismatchException(H.length, n);
+        }
+        this.k = H.length / n;
+        if(measurements.length != times.length * k){
+            throw new DimensionMismatchException(measurements.length, times.length * k);
+        }
+
+        this.initial = initial.clone();
+        this.startTime = startTime;
+        this.times = times.clone();
+        this.measurements = measurements.clone();
+        this.H = H.clone();
+        this.model = model;
+    }
+
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    //Negative log likelihood of the whole run under (q, r)
+    public double score(double processVariance, double measurementVariance){
+        return score(processVariance, measurementVariance, Double.POSITIVE_INFINITY);
+    }
+
+    //Same as score(), but gives up and returns infinity once the total is certain to exceed cutoff
+    public double score(double processVariance, double measurementVariance, double cutoff){
+        if(processVariance <= 0){
+            throw new NotStrictlyPositiveException(processVariance);
+        }
+        if(measurementVariance <= 0){
+            throw new NotStrictlyPositiveException(measurementVariance);
+        }
+
+        MotionModel motion = model.apply(processVariance);
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(initial, k);
+        filter.setUpdateMode(UpdateMode.JOSEPH);
+        filter.setInnovationStatistics(true);
+
+        double[] R = new double[k * k];
+        for(int i = 0; i < k; i++){
+            R[i * k + i] = measurementVariance;
+        }
+        double[] z = new double[k];
+        double floor = 0.5 * k * (LOG_2PI + Math.log(measurementVariance));
+
+        double total = 0;
+        double lastTime = startTime;
+        for(int step = 0; step < times.length; step++){
+            System.arraycopy(measurements, step * k, z, 0, k);
+            filter.predict(motion, times[step] - lastTime);
+            filter.measure(H, R, z);
+            lastTime = times[step];
+
+            total -= filter.getLogLikelihood();
+            if(total + (times.length - step - 1) * floor > cutoff){
+                return Double.POSITIVE_INFINITY;
+            }
+        }
+        return total;
+    }
+
+    //Scores every pair of the two grids on the pool and returns the best. Ties go to the earlier pair in row-major order.
+    public Result grid(double[] processVariances, double[] measurementVariances){
+        int count = processVariances.length * measurementVariances.length;
+        if(count == 0){
+            throw new NotStrictlyPositiveException(count);
+        }
+
+        double[] scores = new double[count];
+        AtomicLong best = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        pool.invoke(new Candidates(processVariances, measurementVariances, scores, best, 0, count));
+
+        int winner = 0;
+        for(int i = 1; i < count; i++){
+            if(scores[i] < scores[winner]){
+                winner = i;
+            }
+        }
+        return new Result(processVariances[winner / measurementVariances.length],
+                measurementVariances[winner % measurementVariances.length], scores[winner]);
+    }
+
+    private class Candidates extends RecursiveAction {
+
+        private final double[] processVariances;
+        private final double[] measurementVariances;
+        private final double[] scores;
+        //Best total seen so far by any thread, as double bits
+        private final AtomicLong best;
+        private final int from;
+        private final int to;
+
+        private Candidates(double[] processVariances, double[] measurementVariances, double[] scores, AtomicLong best, int from, int to){
+            this.processVariances = processVariances;
+            this.measurementVariances = measurementVariances;
+            this.scores = scores;
+            this.best = best;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1){
+                double q = processVariances[from / measurementVariances.length];
+                double r = measurementVariances[from % measurementVariances.length];
+                double score = score(q, r, Double.longBitsToDouble(best.get()));
+                scores[from] = score;
+                lower(best, score);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(new Candidates(processVariances, measurementVariances, scores, best, from, middle),
+                    new Candidates(processVariances, measurementVariances, scores, best, middle, to));
+        }
+    }
+
+    private static void lower(AtomicLong best, double score){
+        long current = best.get();
+        while(score < Double.longBitsToDouble(current) && !best.compareAndSet(current, Double.doubleToLongBits(score))){
+            current = best.get();
+        }
+    }
+
+    //Nelder-Mead over (log q, log r) starting from the given guess. The starting simplex is scored on the pool.
+    //Trial points are scored with the worst vertex as the cutoff, since beating it is all that decides a move.
+    public Result optimize(double processVariance, double measurementVariance){
+        double[][] simplex = {
+                {Math.log(processVariance), Math.log(measurementVariance)},
+                {Math.log(processVariance) + INITIAL_STEP, Math.log(measurementVariance)},
+                {Math.log(processVariance), Math.log(measurementVariance) + INITIAL_STEP}
+        };
+        double[] values = new double[3];
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(vertex(simplex, values, 0), vertex(simplex, values, 1), vertex(simplex, values, 2));
+            }
+        });
+
+        double[] centroid = new double[2];
+        double[] reflected = new double[2];
+        double[] trial = new double[2];
+        for(int iteration = 0; iteration < MAX_ITERATIONS; iteration++){
+            order(simplex, values);
+            if(values[2] - values[0] < TOLERANCE * (Math.abs(values[0]) + TOLERANCE)){
+                break;
+            }
+
+            for(int d = 0; d < 2; d++){
+                centroid[d] = 0.5 * (simplex[0][d] + simplex[1][d]);
+            }
+
+            double reflectedValue = evaluate(move(centroid, simplex[2], -REFLECTION, reflected), values[2]);
+            if(reflectedValue < values[0]){
+                double expandedValue = evaluate(move(centroid, simplex[2], -EXPANSION, trial), reflectedValue);
+                if(expandedValue < reflectedValue){
+                    replace(simplex, values, trial, expandedValue);
+                } else {
+                    replace(simplex, values, reflected, reflectedValue);
+                }
+                continue;
+            }
+            if(reflectedValue < values[1]){
+                replace(simplex, values, reflected, reflectedValue);
+                continue;
+            }
+
+            //Worse than all but the worst, pull the worst vertex towards the centroid
+            double contractedValue = evaluate(move(centroid, simplex[2], CONTRACTION, trial), values[2]);
+            if(contractedValue < values[2]){
+                replace(simplex, values, trial, contractedValue);
+                continue;
+            }
+
+            for(int v = 1; v < 3; v++){
+                for(int d = 0; d < 2; d++){
+                    simplex[v][d] = simplex[0][d] + SHRINK * (simplex[v][d] - simplex[0][d]);
+                }
+                values[v] = evaluate(simplex[v], Double.POSITIVE_INFINITY);
+            }
+        }
+
+        order(simplex, values);
+        return new Result(Math.exp(simplex[0][0]), Math.exp(simplex[0][1]), values[0]);
+    }
+
+    private RecursiveAction vertex(double[][] simplex, double[] values, int v){
+        return new RecursiveAction() {
+            @Override
+            protected void compute() {
+                values[v] = evaluate(simplex[v], Double.POSITIVE_INFINITY);
+            }
+        };
+    }
+
+    //The search can wander to variances so small S stops being positive definite, those points just lose
+    private double evaluate(double[] point, double cutoff){
+        try {
+            return score(Math.exp(point[0]), Math.exp(point[1]), cutoff);
+        } catch (NonPositiveDefiniteMatrixException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    //out = centroid + coefficient * (worst - centroid)
+    private static double[] move(double[] centroid, double[] worst, double coefficient, double[] out){
+        for(int d = 0; d < 2; d++){
+            out[d] = centroid[d] + coefficient * (worst[d] - centroid[d]);
+        }
+        return out;
+    }
+
+    private static void replace(double[][] simplex, double[] values, double[] point, double value){
+        System.arraycopy(point, 0, simplex[2], 0, 2);
+        values[2] = value;
+    }
+
+    //Sorts the three vertices best first
+    private static void order(double[][] simplex, double[] values){
+        for(int i = 1; i < 3; i++){
+            for(int j = i; j > 0 && values[j] < values[j - 1]; j--){
+                double value = values[j];
+                values[j] = values[j - 1];
+                values[j - 1] = value;
+                double[] point = simplex[j];
+                simplex[j] = simplex[j - 1];
+                simplex[j - 1] = point;
+            }
+        }
+    }
+
+}
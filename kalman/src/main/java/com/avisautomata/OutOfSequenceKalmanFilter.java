@@ -0,0 +1,230 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+
+//Accepts measurements out of time order. Every measurement is kept in a fixed ring of (time, H, R, z) along with a
+//snapshot of x and P right after it was applied. A late measurement is slotted in at its timestamp, the filter
+//rewinds to the snapshot just before it and only the measurements after it are replayed.
+//Measurements older than anything left in the ring are rejected. All buffers are allocated up front.
+public class OutOfSequenceKalmanFilter {
+
+    private final int n;
+    private final int m;
+    private final int capacity;
+    private final MotionModel model;
+    private final ArrayMultivariateKalmanFilter filter;
+
+    //Ring of entries, logical entry i lives in physical slot (head + i) % capacity
+    private final double[] times;
+    private final int[] rows;
+    private final double[][] Hs;
+    private final double[][] Rs;
+    private final double[][] zs;
+    private final double[][] xs;
+    private final double[][] Ps;
+    private int head;
+    private int size;
+
+    //State just before the oldest entry, where a replay of the whole ring starts from
+    private double baseTime;
+    private final double[] baseX;
+    private final double[] baseP;
+
+    //Time the filter's current state is for
+    private double time;
+
+    public OutOfSequenceKalmanFilter(double[] initial, double startTime, int m, MotionModel model, int capacity){
+        if(capacity <= 0){
+            throw new NotStrictlyPositiveException(capacity);
+        }
+        if(model.getDimension() != initial.length){
+            throw new DimensionMismatchException(model.getDimension(), initial.length);
+        }
+
+        this.n = initial.length;
+        this.m = m;
+        this.capacity = capacity;
+        this.model = model;
+        this.filter = new ArrayMultivariateKalmanFilter(initial, m);
+
+        this.times = new double[capacity];
+        this.rows = new int[capacity];
+        this.Hs = new double[capacity][m * n];
+        this.Rs = new double[capacity][m * m];
+        this.zs = new double[capacity][m];
+        this.xs = new double[capacity][n];
+        this.Ps = new double[capacity][n * n];
+
+        this.baseTime = startTime;
+        this.baseX = new double[n];
+        this.baseP = new double[n * n];
+        filter.getState(baseX);
+        filter.getCovariance(baseP);
+
+        this.time = startTime;
+    }
+
+    //Applies a measurement taken at the given time, H is k x n, R is k x k and z has k entries where k <= m.
+    //Returns false if the measurement is older than the ring can rewind to.
+    public boolean measure(double measurementTime, double[] H, double[] R, double[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        if(H.length != k * n){
+            throw new DimensionMismatchException(H.length, k * n);
+        }
+        if(R.length != k * k){
+            throw new DimensionMismatchException(R.length, k * k);
+        }
+
+        //In order, the common case
+        if(measurementTime >= time){
+            if(size == capacity){
+                evictOldest();
+            }
+            int slot = physical(size);
+            store(slot, measurementTime, H, R, z, k);
+            size++;
+            apply(slot);
+            return true;
+        }
+
+        if(measurementTime < baseTime){
+            return false;
+        }
+
+        //First entry strictly after the measurement, it goes in front of that one
+        int insert = size;
+        while(insert > 0 && times[physical(insert - 1)] > measurementTime){
+            insert--;
+        }
+
+        rewindTo(insert);
+
+        if(size == capacity){
+            if(insert == 0){
+                //It would be the oldest entry and evicted straight away, so fold it into the base state instead
+                filter.predict(model, measurementTime - time);
+                filter.measure(H, R, z, k);
+                time = measurementTime;
+                baseTime = measurementTime;
+                filter.getState(baseX);
+                filter.getCovariance(baseP);
+                for(int i = 0; i < size; i++){
+                    apply(physical(i));
+                }
+                return true;
+            }
+            evictOldest();
+            insert--;
+        }
+
+        //Shift the later entries up one place by swapping buffers, nothing is copied or allocated
+        int free = physical(size);
+        double[] freeH = Hs[free];
+        double[] freeR = Rs[free];
+        double[] freeZ = zs[free];
+        double[] freeX = xs[free];
+        double[] freeP = Ps[free];
+        for(int i = size; i > insert; i--){
+            int to = physical(i);
+            int from = physical(i - 1);
+            times[to] = times[from];
+            rows[to] = rows[from];
+            Hs[to] = Hs[from];
+            Rs[to] = Rs[from];
+            zs[to] = zs[from];
+            xs[to] = xs[from];
+            Ps[to] = Ps[from];
+        }
+        int slot = physical(insert);
+        Hs[slot] = freeH;
+        Rs[slot] = freeR;
+        zs[slot] = freeZ;
+        xs[slot] = freeX;
+        Ps[slot] = freeP;
+        store(slot, measurementTime, H, R, z, k);
+        size++;
+
+        for(int i = insert; i < size; i++){
+            apply(physical(i));
+        }
+        return true;
+    }
+
+    //Restores the filter to the state just before logical entry index
+    private void rewindTo(int index){
+        if(index == 0){
+            filter.setState(baseX, baseP);
+            time = baseTime;
+        } else {
+            int slot = physical(index - 1);
+            filter.setState(xs[slot], Ps[slot]);
+            time = times[slot];
+        }
+    }
+
+    private void evictOldest(){
+        int slot = physical(0);
+        baseTime = times[slot];
+        System.arraycopy(xs[slot], 0, baseX, 0, n);
+        System.arraycopy(Ps[slot], 0, baseP, 0, n * n);
+        head = (head + 1) % capacity;
+        size--;
+    }
+
+    private void store(int slot, double measurementTime, double[] H, double[] R, double[] z, int k){
+        times[slot] = measurementTime;
+        rows[slot] = k;
+        System.arraycopy(H, 0, Hs[slot], 0, k * n);
+        System.arraycopy(R, 0, Rs[slot], 0, k * k);
+        System.arraycopy(z, 0, zs[slot], 0, k);
+    }
+
+    //Predicts up to the entry's time, measures, and snapshots the result into the entry
+    private void apply(int slot){
+        filter.predict(model, times[slot] - time);
+        filter.measure(Hs[slot], Rs[slot], zs[slot], rows[slot]);
+        time = times[slot];
+        filter.getState(xs[slot]);
+        filter.getCovariance(Ps[slot]);
+    }
+
+    private int physical(int index){
+        return (head + index) % capacity;
+    }
+
+    public void setUpdateMode(UpdateMode updateMode){
+        filter.setUpdateMode(updateMode);
+    }
+
+    public void getState(double[] out){
+        filter.getState(out);
+    }
+
+    public void getCovariance(double[] out){
+        filter.getCovariance(out);
+    }
+
+    public MultivariateNormalDistribution getEstimate(){
+        return filter.getEstimate();
+    }
+
+    //Time of the newest measurement applied
+    public double getTime(){
+        return time;
+    }
+
+    //Measurements older than this will be rejected
+    public double getOldestTime(){
+        return baseTime;
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.avisautomata;
+
+//a - b over the first length entries, written into out, e.g. z - h(x) or a sigma point less the mean. Angles need
+//wrapping so that a heading of 3.1 against -3.1 comes out as -0.08 rather than 6.2.
+@FunctionalInterface
+public interface ResidualFunction {
+
+    void apply(double[] a, double[] b, int length, double[] out);
+
+    ResidualFunction SUBTRACT = (a, b, length, out) -> {
+        for(int i = 0; i < length; i++){
+            out[i] = a[i] - b[i];
+        }
+    };
+
+    //Plain subtraction, except the given entries are wrapped into [-pi, pi)
+    static ResidualFunction angles(int... indices){
+        int[] wrapped = indices.clone();
+        return (a, b, length, out) -> {
+            SUBTRACT.apply(a, b, length, out);
+            for(int i : wrapped){
+                if(i < length){
+                    out[i] = wrap(out[i]);
+                }
+            }
+        };
+    }
+
+    //angle moved into [-pi, pi) by a whole number of turns
+    static double wrap(double angle){
+        return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+    }
+
+}
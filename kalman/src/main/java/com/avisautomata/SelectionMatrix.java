@@ -0,0 +1,52 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.OutOfRangeException;
+
+//A k x n H whose row i is 1 at column getColumn(i) and 0 elsewhere, i.e. a measurement of k of the states directly.
+//H * x is a gather and H * P * H^T is a k x k sub-block of P, so nothing needs multiplying.
+public class SelectionMatrix {
+
+    private final int n;
+    private final int[] columns;
+
+    public SelectionMatrix(int n, int... columns){
+        for(int column : columns){
+            if(column < 0 || column >= n){
+                throw new OutOfRangeException(column, 0, n - 1);
+            }
+        }
+        this.n = n;
+        this.columns = columns.clone();
+    }
+
+    public int getRowDimension(){
+        return columns.length;
+    }
+
+    public int getColumnDimension(){
+        return n;
+    }
+
+    //The state row i picks
+    public int getColumn(int row){
+        return columns[row];
+    }
+
+    //Writes the dense k x n matrix into the leading entries of out
+    public void copyTo(double[] out){
+        int k = columns.length;
+        for(int i = 0; i < k * n; i++){
+            out[i] = 0;
+        }
+        for(int i = 0; i < k; i++){
+            out[i * n + columns[i]] = 1;
+        }
+    }
+
+    public double[] toArray(){
+        double[] out = new double[columns.length * n];
+        copyTo(out);
+        return out;
+    }
+
+}
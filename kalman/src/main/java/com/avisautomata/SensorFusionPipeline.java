@@ -0,0 +1,311 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.apache.commons.math3.exception.NumberIsTooLargeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//Feeds measurements from several sensors, each on its own producer thread (platform or virtual), into one filter
+//on one consumer thread. Every sensor gets a bounded single-producer single-consumer ring of (time, z) so producers
+//never take a lock and never wait on the filter unless their policy says to. The consumer merges the heads of all
+//rings in time order and stacks every head that shares a timestamp into one update: the sensors' H rows are stacked,
+//z is concatenated and R is block diagonal, so independent sensors that fire together cost one measure().
+//
+//Each sensor must offer its measurements in time order. process() only applies measurements up to the watermark,
+//the oldest of the sensors' latest times, since until then a slower sensor may still deliver something earlier.
+//A sensor that has gone quiet, or never reported, would hold that back forever, so setMaxLag() lets the watermark run
+//at most that far behind the newest sensor. Measurements that arrive older than the filter's time anyway are counted
+//as late and dropped.
+public class SensorFusionPipeline {
+
+    //What a producer does when its sensor's ring is full
+    public enum OverflowPolicy {
+        //Wait for the consumer to make room, which unmounts a virtual thread rather than pinning it
+        BLOCK,
+        //Return false and leave the measurement with the producer
+        REJECT
+    }
+
+    private static final long BLOCK_PARK_NANOS = 10_000;
+
+    private final ArrayMultivariateKalmanFilter filter;
+    private final MotionModel model;
+    private final int n;
+    private final List<Sensor> sensors = new ArrayList<>();
+    private Sensor[] sensorArray = new Sensor[0];
+    private int totalRows;
+    private double maxLag = Double.POSITIVE_INFINITY;
+
+    //Consumer side
+    private double time;
+    private final double[] stackedH;
+    private final double[] stackedR;
+    private final double[] stackedZ;
+    private boolean[] batch = new boolean[0];
+
+    //filter must take measurements as wide as all sensors' rows together
+    public SensorFusionPipeline(ArrayMultivariateKalmanFilter filter, MotionModel model, double startTime){
+        if(model.getDimension() != filter.getDimension()){
+            throw new DimensionMismatchException(model.getDimension(), filter.getDimension());
+        }
+        this.filter = filter;
+        this.model = model;
+        this.n = filter.getDimension();
+        this.time = startTime;
+
+        int m = filter.getMeasurementDimension();
+        this.stackedH = new double[m * n];
+        this.stackedR = new double[m * m];
+        this.stackedZ = new double[m];
+    }
+
+    //Registers a sensor that measures H (k x n) with noise R (k x k). Sensors must all be added before processing starts.
+    public Sensor addSensor(double[] H, double[] R, int capacity, OverflowPolicy policy){
+        if(capacity <= 0){
+            throw new NotStrictlyPositiveException(capacity);
+        }
+        if(H.length % n != 0){
+            throw new DimensionMismatchException(H.length, n);
+        }
+        int rows = H.length / n;
+        if(R.length != rows * rows){
+            throw new DimensionMismatchException(R.length, rows * rows);
+        }
+        if(totalRows + rows > filter.getMeasurementDimension()){
+            throw new NumberIsTooLargeException(totalRows + rows, filter.getMeasurementDimension(), true);
+        }
+
+        Sensor sensor = new Sensor(H.clone(), R.clone(), rows, capacity, policy);
+        sensors.add(sensor);
+        sensorArray = sensors.toArray(new Sensor[0]);
+        batch = new boolean[sensorArray.length];
+        totalRows += rows;
+        return sensor;
+    }
+
+    //Applies everything up to the watermark. Consumer thread only. Returns the number of updates made.
+    public int process(){
+        return process(getWatermark());
+    }
+
+    //Applies everything queued at or before upTo, in time order. Consumer thread only.
+    public int process(double upTo){
+        int updates = 0;
+        while(true){
+            double earliest = Double.POSITIVE_INFINITY;
+            for(Sensor sensor : sensorArray){
+                double head = sensor.peekTime();
+                if(head < earliest){
+                    earliest = head;
+                }
+            }
+            if(earliest > upTo || earliest == Double.POSITIVE_INFINITY){
+                return updates;
+            }
+
+            if(earliest < time){
+                for(Sensor sensor : sensorArray){
+                    if(sensor.peekTime() == earliest){
+                        sensor.late.setRelease(sensor.late.getPlain() + 1);
+                        sensor.consume();
+                    }
+                }
+                continue;
+            }
+
+            //Everything at the earliest time goes into one stacked update
+            int k = 0;
+            for(int s = 0; s < sensorArray.length; s++){
+                batch[s] = sensorArray[s].peekTime() == earliest;
+                if(batch[s]){
+                    k += sensorArray[s].rows;
+                }
+            }
+            for(int i = 0; i < k * k; i++){
+                stackedR[i] = 0;
+            }
+            int row = 0;
+            for(int s = 0; s < sensorArray.length; s++){
+                if(!batch[s]){
+                    continue;
+                }
+                Sensor sensor = sensorArray[s];
+                System.arraycopy(sensor.H, 0, stackedH, row * n, sensor.rows * n);
+                for(int i = 0; i < sensor.rows; i++){
+                    System.arraycopy(sensor.R, i * sensor.rows, stackedR, (row + i) * k + row, sensor.rows);
+                }
+                sensor.readHead(stackedZ, row);
+                sensor.consume();
+                row += sensor.rows;
+            }
+
+            filter.predict(model, earliest - time);
+            filter.measure(stackedH, stackedR, stackedZ, k);
+            time = earliest;
+            updates++;
+        }
+    }
+
+    //Applies everything queued regardless of the watermark, e.g. once all producers have finished
+    public int flush(){
+        return process(Double.POSITIVE_INFINITY);
+    }
+
+    //Oldest of the sensors' latest offered times, but no more than maxLag behind the newest. Nothing at or before it
+    //can still arrive from an in-order sensor that is keeping up.
+    public double getWatermark(){
+        double oldest = Double.POSITIVE_INFINITY;
+        double newest = Double.NEGATIVE_INFINITY;
+        for(Sensor sensor : sensorArray){
+            double latest = sensor.getLatestTime();
+            oldest = Math.min(oldest, latest);
+            newest = Math.max(newest, latest);
+        }
+        return Math.max(oldest, newest - maxLag);
+    }
+
+    //How far, in measurement time, a sensor may fall behind the newest one before it stops holding the watermark back.
+    //Whatever it sends later from behind the filter's time is counted as late. Infinite by default.
+    public void setMaxLag(double maxLag){
+        if(!(maxLag > 0)){
+            throw new NotStrictlyPositiveException(maxLag);
+        }
+        this.maxLag = maxLag;
+    }
+
+    public double getMaxLag(){
+        return maxLag;
+    }
+
+    //Time of the last update applied
+    public double getTime(){
+        return time;
+    }
+
+    //The filter being fed. Only safe to use from the consumer thread.
+    public ArrayMultivariateKalmanFilter getFilter(){
+        return filter;
+    }
+
+    //Producer handle for one sensor. offer() may only be called from one thread at a time.
+    public static final class Sensor {
+
+        private final double[] H;
+        private final double[] R;
+        private final int rows;
+        private final OverflowPolicy policy;
+
+        private final int capacity;
+        private final int mask;
+        private final double[] times;
+        private final double[] values;
+
+        //Next slot to read, written by the consumer
+        private final AtomicLong head = new AtomicLong();
+        //Next slot to write, written by the producer
+        private final AtomicLong tail = new AtomicLong();
+        //Each side's last look at the other's index, so the shared ones are only read when the ring looks full or empty
+        private long producerHead;
+        private long consumerTail;
+
+        private volatile double latestTime = Double.NEGATIVE_INFINITY;
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong late = new AtomicLong();
+
+        private Sensor(double[] H, double[] R, int rows, int capacity, OverflowPolicy policy){
+            this.H = H;
+            this.R = R;
+            this.rows = rows;
+            this.policy = policy;
+
+            int size = Integer.highestOneBit(capacity);
+            if(size < capacity){
+                size <<= 1;
+            }
+            this.capacity = size;
+            this.mask = size - 1;
+            this.times = new double[size];
+            this.values = new double[size * rows];
+        }
+
+        //Queues a measurement with k = rows entries. Returns false if the ring was full and the policy gave up.
+        public boolean offer(double measurementTime, double[] z){
+            if(z.length != rows){
+                throw new DimensionMismatchException(z.length, rows);
+            }
+
+            long t = tail.getPlain();
+            while(t - producerHead == capacity){
+                producerHead = head.getAcquire();
+                if(t - producerHead < capacity){
+                    break;
+                }
+                switch(policy){
+                    case BLOCK -> LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    case REJECT -> {
+                        rejected.setRelease(rejected.getPlain() + 1);
+                        return false;
+                    }
+                }
+            }
+
+            int slot = (int) (t & mask);
+            times[slot] = measurementTime;
+            System.arraycopy(z, 0, values, slot * rows, rows);
+            tail.setRelease(t + 1);
+            latestTime = measurementTime;
+            return true;
+        }
+
+        //Time at the head of the ring, or infinity when empty. Consumer only.
+        private double peekTime(){
+            long h = head.getPlain();
+            if(h == consumerTail){
+                consumerTail = tail.getAcquire();
+                if(h == consumerTail){
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+            return times[(int) (h & mask)];
+        }
+
+        private void readHead(double[] out, int offset){
+            int slot = (int) (head.getPlain() & mask);
+            System.arraycopy(values, slot * rows, out, offset, rows);
+        }
+
+        private void consume(){
+            head.setRelease(head.getPlain() + 1);
+        }
+
+        public double getLatestTime(){
+            return latestTime;
+        }
+
+        //Measurements queued and not yet processed. head is read first, and only grows towards tail, so the difference
+        //can't go negative when the consumer moves in between. It can overshoot if both move, so it is capped.
+        public int size(){
+            long h = head.getAcquire();
+            long t = tail.getAcquire();
+            return (int) Math.min(capacity, t - h);
+        }
+
+        public int getRows(){
+            return rows;
+        }
+
+        public long getRejected(){
+            return rejected.getAcquire();
+        }
+
+        public long getLate(){
+            return late.getAcquire();
+        }
+
+    }
+
+}
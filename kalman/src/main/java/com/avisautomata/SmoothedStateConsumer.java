@@ -0,0 +1,7 @@
+package com.avisautomata;
+
+//Receives smoothed states. x and P are reused buffers, copy anything you want to keep.
+@FunctionalInterface
+public interface SmoothedStateConsumer {
+    void accept(double time, double[] x, double[] P);
+}
@@ -0,0 +1,246 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+//Keeps a lower triangular factor S of the covariance, P = S * S^T, instead of P itself. Both steps rebuild S with
+//Householder reflections of a stacked pre-array, so P is symmetric and positive semidefinite by construction and
+//never needs symmetrizing or resetting, however small R gets. S holds half the dynamic range of P, which is where
+//the extra precision comes from. Everything is preallocated, move() and measure() never allocate.
+public class SquareRootKalmanFilter {
+
+    private final int n;
+    private final int m;
+
+    private final double[] x;
+    private final double[] S;
+
+    //Scratch for move(): the n x 2n pre-array [F * S, sqrt(Q)]
+    private final double[] xNext;
+    private final double[] predictArray;
+    private final double[] sqrtQ;
+    private final double[] lastQ;
+    private boolean hasQ;
+
+    //Scratch for measure(): the (k + n) x (k + n) pre-array [[sqrt(R), H * S], [0, S]]
+    private final double[] updateArray;
+    private final double[] sqrtR;
+    private final double[] lastR;
+    private int lastRows;
+    private final double[] y;
+    private final double[] reflection;
+
+    public SquareRootKalmanFilter(double[] initial, int m){
+        this.n = initial.length;
+        this.m = m;
+
+        this.x = initial.clone();
+        this.S = new double[n * n];
+        for(int i = 0; i < n; i++){
+            S[i * n + i] = 1;
+        }
+
+        this.xNext = new double[n];
+        this.predictArray = new double[n * 2 * n];
+        this.sqrtQ = new double[n * n];
+        this.lastQ = new double[n * n];
+
+        this.updateArray = new double[(m + n) * (m + n)];
+        this.sqrtR = new double[m * m];
+        this.lastR = new double[m * m];
+        this.y = new double[m];
+        this.reflection = new double[2 * n + m];
+    }
+
+    public SquareRootKalmanFilter(int n, int m){
+        this(new double[n], m);
+    }
+
+    //F is n x n, B is n x u.length, Q is n x n
+    public void move(double[] F, double[] B, double[] u, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+        checkLength(B, n * u.length);
+
+        DenseMath.multiplyVector(F, x, xNext, n, n);
+        DenseMath.multiplyVectorAdd(B, u, xNext, n, u.length);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        propagateFactor(F, Q);
+    }
+
+    public void move(double[] F, double[] Q){
+        checkLength(F, n * n);
+        checkLength(Q, n * n);
+
+        DenseMath.multiplyVector(F, x, xNext, n, n);
+        System.arraycopy(xNext, 0, x, 0, n);
+
+        propagateFactor(F, Q);
+    }
+
+    public void predict(MotionModel model, double dt){
+        if(model.getDimension() != n){
+            throw new DimensionMismatchException(model.getDimension(), n);
+        }
+        model.prepare(dt);
+        move(model.getF(), model.getQ());
+    }
+
+    //F * P * F^T + Q = [F * S, sqrt(Q)] * [F * S, sqrt(Q)]^T, so triangularizing that pre-array gives the new S
+    private void propagateFactor(double[] F, double[] Q){
+        factorQ(Q);
+
+        int cols = 2 * n;
+        for(int i = 0; i < n; i++){
+            int row = i * cols;
+            for(int j = 0; j < n; j++){
+                //Only the lower triangle of S is non-zero
+                double sum = 0;
+                for(int k = j; k < n; k++){
+                    sum += F[i * n + k] * S[k * n + j];
+                }
+                predictArray[row + j] = sum;
+            }
+            System.arraycopy(sqrtQ, i * n, predictArray, row + n, n);
+        }
+
+        DenseMath.lowerTriangularize(predictArray, n, cols, reflection);
+        for(int i = 0; i < n; i++){
+            System.arraycopy(predictArray, i * cols, S, i * n, n);
+        }
+    }
+
+    //H is k x n, R is k x k and z has k entries, where k <= m
+    public void measure(double[] H, double[] R, double[] z){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        checkLength(H, k * n);
+        checkLength(R, k * k);
+
+        factorR(R, k);
+
+        //Triangularizing [[sqrt(R), H * S], [0, S]] gives [[sqrt(HPH^T + R), 0], [K', S+]] where K = K' * sqrt(HPH^T + R)^-1
+        int size = k + n;
+        for(int i = 0; i < size * size; i++){
+            updateArray[i] = 0;
+        }
+        for(int i = 0; i < k; i++){
+            int row = i * size;
+            for(int j = 0; j <= i; j++){
+                updateArray[row + j] = sqrtR[i * k + j];
+            }
+            for(int j = 0; j < n; j++){
+                double sum = 0;
+                for(int l = j; l < n; l++){
+                    sum += H[i * n + l] * S[l * n + j];
+                }
+                updateArray[row + k + j] = sum;
+            }
+        }
+        for(int i = 0; i < n; i++){
+            int row = (k + i) * size + k;
+            for(int j = 0; j <= i; j++){
+                updateArray[row + j] = S[i * n + j];
+            }
+        }
+
+        DenseMath.lowerTriangularize(updateArray, size, size, reflection);
+
+        //w = sqrt(HPH^T + R)^-1 * (z - H * x), then x = x + K' * w
+        DenseMath.multiplyVector(H, x, y, k, n);
+        for(int i = 0; i < k; i++){
+            double sum = z[i] - y[i];
+            for(int j = 0; j < i; j++){
+                sum -= updateArray[i * size + j] * y[j];
+            }
+            y[i] = sum / updateArray[i * size + i];
+        }
+        for(int i = 0; i < n; i++){
+            int row = (k + i) * size;
+            double sum = 0;
+            for(int j = 0; j < k; j++){
+                sum += updateArray[row + j] * y[j];
+            }
+            x[i] += sum;
+            System.arraycopy(updateArray, row + k, S, i * n, n);
+        }
+    }
+
+    //Q is usually only semidefinite, e.g. a motion model driven by one noise term per axis. The factor is kept until Q changes.
+    private void factorQ(double[] Q){
+        if(hasQ && same(Q, lastQ, n * n)){
+            return;
+        }
+        System.arraycopy(Q, 0, lastQ, 0, n * n);
+        hasQ = true;
+        DenseMath.choleskySemidefinite(Q, sqrtQ, n);
+    }
+
+    private void factorR(double[] R, int k){
+        if(k == lastRows && same(R, lastR, k * k)){
+            return;
+        }
+        System.arraycopy(R, 0, lastR, 0, k * k);
+        lastRows = k;
+        DenseMath.choleskySemidefinite(R, sqrtR, k);
+    }
+
+    private static boolean same(double[] a, double[] b, int length){
+        for(int i = 0; i < length; i++){
+            if(a[i] != b[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void checkLength(double[] array, int expected){
+        if(array.length != expected){
+            throw new DimensionMismatchException(array.length, expected);
+        }
+    }
+
+    //Replaces x and P. P must be positive semidefinite, it is factored here, so a state known exactly is fine.
+    public void setState(double[] state, double[] covariance){
+        checkLength(state, n);
+        checkLength(covariance, n * n);
+        System.arraycopy(state, 0, x, 0, n);
+        DenseMath.choleskySemidefinite(covariance, S, n);
+    }
+
+    public void getState(double[] out){
+        System.arraycopy(x, 0, out, 0, n);
+    }
+
+    //P = S * S^T, which is exactly symmetric
+    public void getCovariance(double[] out){
+        DenseMath.multiplyTranspose(S, S, out, n, n, n);
+    }
+
+    //The lower triangular factor S itself, n x n
+    public void getCovarianceFactor(double[] out){
+        System.arraycopy(S, 0, out, 0, n * n);
+    }
+
+    public MultivariateNormalDistribution getEstimate(){
+        double[] covariance = new double[n * n];
+        getCovariance(covariance);
+        double[][] rows = new double[n][n];
+        for(int i = 0; i < n; i++){
+            System.arraycopy(covariance, i * n, rows[i], 0, n);
+        }
+        return new MultivariateNormalDistribution(x.clone(), rows);
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+}
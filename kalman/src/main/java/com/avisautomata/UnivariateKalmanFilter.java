@@ -4,55 +4,124 @@ import org.apache.commons.math3.distribution.NormalDistribution;
 
 public class UnivariateKalmanFilter {
 
-    private NormalDistribution estimate;
+    //State is kept as primitives so the hot path doesn't allocate a NormalDistribution per step
+    private double mean;
+    private double variance;
+
+    //Frozen gain, set by setSteadyState()
+    private boolean steadyState;
+    private double steadyGain;
+    private double steadyInnovationVariance;
+    //The variance alternates between these, so getVariance() reports the predicted one after move() and the
+    //posterior one after measure(), as it does outside steady state
+    private double steadyPredicted;
+    private double steadyPosterior;
+
+    //Null unless setMetrics() was called
+    private KalmanMetrics metrics;
+
+    public UnivariateKalmanFilter(double mean, double variance){
+        this.mean = mean;
+        this.variance = variance;
+    }
 
     public UnivariateKalmanFilter(NormalDistribution initial){
-        this.estimate = initial;
+        this(initial.getMean(), initial.getNumericalVariance());
     }
 
     public UnivariateKalmanFilter(){
-        this(new NormalDistribution());
+        this(0, 1);
+    }
+
+    public void measure(double measurementMean, double measurementVar){
+        long start = metrics == null ? 0 : System.nanoTime();
+        double residual = measurementMean - mean;
+        double innovationVariance;
+        if(steadyState){
+            innovationVariance = steadyInnovationVariance;
+            mean += steadyGain * residual;
+            variance = steadyPosterior;
+        } else {
+            innovationVariance = variance + measurementVar;
+            double kalmanGain = variance / innovationVariance;
+
+            mean += (kalmanGain * residual);
+            variance = variance * (1 - kalmanGain);
+        }
+        if(metrics != null){
+            metrics.recordInnovation(Math.abs(residual));
+            metrics.recordNis(residual * residual / innovationVariance);
+            metrics.recordUpdate(System.nanoTime() - start);
+        }
     }
 
     public void measure(NormalDistribution measurement){
-        double estimateMean = estimate.getMean();
-        double estimateVar = estimate.getNumericalVariance();
+        measure(measurement.getMean(), measurement.getNumericalVariance());
+    }
 
-        double measurementMean = measurement.getMean();
-        double measurementVar = measurement.getNumericalVariance();
+    public void move(double movementMean, double movementVar){
+        long start = metrics == null ? 0 : System.nanoTime();
+        mean += movementMean;
+        if(steadyState){
+            variance = steadyPredicted;
+        } else {
+            variance += movementVar;
+        }
+        if(metrics != null){
+            metrics.recordPredict(System.nanoTime() - start);
+        }
+    }
 
-        double residual = measurementMean - estimateMean;
-        double kalmanGain = estimateVar / (estimateVar + measurementVar);
+    public void move(NormalDistribution movement){
+        move(movement.getMean(), movement.getNumericalVariance());
+    }
 
-        estimateMean += (kalmanGain * residual);
-        estimateVar = estimateVar * (1 - kalmanGain);
+    //With the same variances every step the predicted variance p settles where p = p * r / (p + r) + q, which is
+    //p = (q + sqrt(q^2 + 4 * q * r)) / 2. From here on the gain is frozen at p / (p + r), the variance steps between
+    //p after move() and p * r / (p + r) after measure(), and the variances passed to them are ignored until
+    //clearSteadyState().
+    public void setSteadyState(double movementVar, double measurementVar){
+        double predicted = 0.5 * (movementVar + Math.sqrt(movementVar * movementVar + 4 * movementVar * measurementVar));
+        steadyGain = predicted / (predicted + measurementVar);
+        steadyInnovationVariance = predicted + measurementVar;
+        steadyPredicted = predicted;
+        steadyPosterior = predicted * (1 - steadyGain);
+        variance = steadyPosterior;
+        steadyState = true;
+    }
 
-        estimate = new NormalDistribution(estimateMean, Math.sqrt(estimateVar));
+    //Starts recording timings, innovations and NIS into metrics, null stops. S is a scalar here, so no condition number.
+    public void setMetrics(KalmanMetrics metrics){
+        this.metrics = metrics;
     }
 
-    public void move(NormalDistribution movement){
-        double estimateMean = estimate.getMean();
-        double estimateVar = estimate.getNumericalVariance();
+    public KalmanMetrics getMetrics(){
+        return metrics;
+    }
 
-        double movementMean = movement.getMean();
-        double movementVar = movement.getNumericalVariance();
+    public void clearSteadyState(){
+        steadyState = false;
+    }
 
-        double mean = estimateMean + movementMean;
-        double variance = estimateVar + movementVar;
+    public boolean isSteadyState(){
+        return steadyState;
+    }
 
-        estimate = new NormalDistribution(mean, Math.sqrt(variance));
+    public double getSteadyStateGain(){
+        return steadyGain;
     }
 
+    //Only built on request, callers polling every step should use getMean() and getVariance()
     public NormalDistribution getEstimate(){
-        return estimate;
+        return new NormalDistribution(mean, Math.sqrt(variance));
     }
 
     public double getVariance(){
-        return estimate.getNumericalVariance();
+        return variance;
     }
 
     public double getMean() {
-        return estimate.getNumericalMean();
+        return mean;
     }
 
 
@@ -0,0 +1,281 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+//Passes 2n + 1 sigma points (Van der Merwe's scaled set) through f and h instead of linearizing them. Sigma points,
+//their images and every intermediate are preallocated. With a pool set, the points are pushed through f and h in
+//parallel, in which case f and h must be safe to call from several threads at once.
+public class UnscentedKalmanFilter {
+
+    private final int n;
+    private final int m;
+    private final int points;
+
+    private final double[] x;
+    private final double[] P;
+
+    private final double lambda;
+    private final double[] Wm;
+    private final double[] Wc;
+
+    private final double[][] sigma;
+    private final double[][] transformed;
+    private final double[][] measured;
+
+    private final double[] L;
+    private final double[] zMean;
+    private final double[] S;
+    private final double[] Pxz;
+    private final double[] K;
+    private final double[] KS;
+    private final double[] dx;
+    private final double[] dz;
+    private final double[] innovation;
+
+    //How sigma points of the state are averaged and differenced, plain unless the state holds angles
+    private MeanFunction stateMean = MeanFunction.WEIGHTED;
+    private ResidualFunction stateResidual = ResidualFunction.SUBTRACT;
+
+    private ForkJoinPool pool;
+    private final RecursiveAction[] tasks;
+    private final RecursiveAction all;
+    private VectorFunction function;
+    private double[][] outputs;
+
+    public UnscentedKalmanFilter(double[] initial, int m, double alpha, double beta, double kappa){
+        this.n = initial.length;
+        this.m = m;
+        this.points = 2 * n + 1;
+
+        this.x = initial.clone();
+        this.P = new double[n * n];
+        for(int i = 0; i < n; i++){
+            P[i * n + i] = 1;
+        }
+
+        this.lambda = alpha * alpha * (n + kappa) - n;
+        this.Wm = new double[points];
+        this.Wc = new double[points];
+        Wm[0] = lambda / (n + lambda);
+        Wc[0] = Wm[0] + 1 - alpha * alpha + beta;
+        for(int i = 1; i < points; i++){
+            Wm[i] = 1 / (2 * (n + lambda));
+            Wc[i] = Wm[i];
+        }
+
+        this.sigma = new double[points][n];
+        this.transformed = new double[points][n];
+        this.measured = new double[points][m];
+
+        this.L = new double[n * n];
+        this.zMean = new double[m];
+        this.S = new double[m * m];
+        this.Pxz = new double[n * m];
+        this.K = new double[n * m];
+        this.KS = new double[n * m];
+        this.dx = new double[n];
+        this.dz = new double[m];
+        this.innovation = new double[m];
+
+        this.tasks = new RecursiveAction[points];
+        for(int i = 0; i < points; i++){
+            int point = i;
+            tasks[i] = new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    function.apply(sigma[point], outputs[point]);
+                }
+            };
+        }
+        this.all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        };
+    }
+
+    public UnscentedKalmanFilter(double[] initial, int m){
+        this(initial, m, 1e-3, 2, 0);
+    }
+
+    public UnscentedKalmanFilter(int n, int m){
+        this(new double[n], m);
+    }
+
+    //x and P become the weighted mean and covariance of f over the sigma points, plus Q
+    public void predict(VectorFunction f, double[] Q){
+        if(Q.length != n * n){
+            throw new DimensionMismatchException(Q.length, n * n);
+        }
+
+        generateSigmaPoints();
+        transform(f, transformed);
+        stateMean.apply(transformed, Wm, n, x);
+
+        System.arraycopy(Q, 0, P, 0, n * n);
+        for(int i = 0; i < points; i++){
+            stateResidual.apply(transformed[i], x, n, dx);
+            for(int r = 0; r < n; r++){
+                double dr = Wc[i] * dx[r];
+                for(int c = 0; c < n; c++){
+                    P[r * n + c] += dr * dx[c];
+                }
+            }
+        }
+        DenseMath.symmetrize(P, n);
+    }
+
+    //Measures z against h, R is k x k and z has k entries
+    public void measure(VectorFunction h, double[] R, double[] z){
+        measure(h, R, z, MeanFunction.WEIGHTED, ResidualFunction.SUBTRACT);
+    }
+
+    //As above with the predicted measurement averaged by mean and z - zMean and the sigma point spreads taken by
+    //residual, e.g. MeanFunction.angles() and ResidualFunction.angles() for a heading or bearing
+    public void measure(VectorFunction h, double[] R, double[] z, MeanFunction mean, ResidualFunction residual){
+        int k = z.length;
+        if(k > m){
+            throw new DimensionMismatchException(k, m);
+        }
+        if(R.length != k * k){
+            throw new DimensionMismatchException(R.length, k * k);
+        }
+
+        generateSigmaPoints();
+        transform(h, measured);
+        mean.apply(measured, Wm, k, zMean);
+
+        //S = sum Wc * (Z - z) * (Z - z)^T + R, Pxz = sum Wc * (X - x) * (Z - z)^T
+        System.arraycopy(R, 0, S, 0, k * k);
+        for(int i = 0; i < n * k; i++){
+            Pxz[i] = 0;
+        }
+        for(int i = 0; i < points; i++){
+            residual.apply(measured[i], zMean, k, dz);
+            stateResidual.apply(sigma[i], x, n, dx);
+            for(int r = 0; r < k; r++){
+                double dr = Wc[i] * dz[r];
+                for(int c = 0; c < k; c++){
+                    S[r * k + c] += dr * dz[c];
+                }
+            }
+            for(int r = 0; r < n; r++){
+                double dr = Wc[i] * dx[r];
+                for(int c = 0; c < k; c++){
+                    Pxz[r * k + c] += dr * dz[c];
+                }
+            }
+        }
+        DenseMath.symmetrize(S, k);
+
+        //K * S = Pxz, solved a row at a time against a Cholesky factor of S. KS keeps K * S for the P update.
+        System.arraycopy(Pxz, 0, KS, 0, n * k);
+        System.arraycopy(Pxz, 0, K, 0, n * k);
+        DenseMath.cholesky(S, k);
+        for(int r = 0; r < n; r++){
+            DenseMath.choleskySolve(S, K, r * k, k);
+        }
+
+        //x = x + K * (z - zMean), P = P - K * S * K^T = P - K * Pxz^T
+        residual.apply(z, zMean, k, innovation);
+        for(int r = 0; r < n; r++){
+            double sum = 0;
+            for(int c = 0; c < k; c++){
+                sum += K[r * k + c] * innovation[c];
+            }
+            x[r] += sum;
+        }
+        for(int r = 0; r < n; r++){
+            for(int c = 0; c < n; c++){
+                double sum = 0;
+                for(int j = 0; j < k; j++){
+                    sum += K[r * k + j] * KS[c * k + j];
+                }
+                P[r * n + c] -= sum;
+            }
+        }
+        DenseMath.symmetrize(P, n);
+    }
+
+    //Sigma points are x and x +/- the columns of the lower Cholesky factor of (n + lambda) * P
+    private void generateSigmaPoints(){
+        //Factor P itself and scale after, n + lambda is tiny for small alpha and would trip the positivity check
+        double scale = Math.sqrt(n + lambda);
+        System.arraycopy(P, 0, L, 0, n * n);
+        DenseMath.cholesky(L, n);
+
+        System.arraycopy(x, 0, sigma[0], 0, n);
+        for(int i = 0; i < n; i++){
+            double[] plus = sigma[1 + i];
+            double[] minus = sigma[1 + n + i];
+            for(int j = 0; j < n; j++){
+                //Column i of the lower factor
+                double offset = scale * L[j * n + i];
+                plus[j] = x[j] + offset;
+                minus[j] = x[j] - offset;
+            }
+        }
+    }
+
+    private void transform(VectorFunction f, double[][] out){
+        if(pool == null){
+            for(int i = 0; i < points; i++){
+                f.apply(sigma[i], out[i]);
+            }
+            return;
+        }
+
+        function = f;
+        outputs = out;
+        for(RecursiveAction task : tasks){
+            task.reinitialize();
+        }
+        all.reinitialize();
+        pool.invoke(all);
+        function = null;
+        outputs = null;
+    }
+
+    //How predict() averages the sigma points of the state and how both steps difference them against x, e.g.
+    //MeanFunction.angles() and ResidualFunction.angles() when f wraps a heading
+    public void setStateFunctions(MeanFunction mean, ResidualFunction residual){
+        this.stateMean = mean;
+        this.stateResidual = residual;
+    }
+
+    //Evaluates sigma points on the pool, or on the calling thread when null
+    public void setPool(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    public void getState(double[] out){
+        System.arraycopy(x, 0, out, 0, n);
+    }
+
+    public void getCovariance(double[] out){
+        System.arraycopy(P, 0, out, 0, n * n);
+    }
+
+    public MultivariateNormalDistribution getEstimate(){
+        double[][] covariance = new double[n][n];
+        for(int i = 0; i < n; i++){
+            System.arraycopy(P, i * n, covariance[i], 0, n);
+        }
+        return new MultivariateNormalDistribution(x.clone(), covariance);
+    }
+
+    public int getDimension(){
+        return n;
+    }
+
+    public int getMeasurementDimension(){
+        return m;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.avisautomata;
+
+public enum UpdateMode {
+    //Textbook update, K = P * H^T * inverse(S) and P = (I - K * H) * P
+    INVERSE,
+    //Solves against a Cholesky factor of S instead of inverting it, then applies the Joseph form
+    //P = (I - K * H) * P * (I - K * H)^T + K * R * K^T and writes back a symmetric P
+    JOSEPH,
+    //When R is diagonal the rows of z are independent, so they are folded in one scalar at a time. Each row costs one
+    //division and O(n^2) work instead of an m x m solve. Falls back to JOSEPH when R has off-diagonal terms.
+    SEQUENTIAL
+}
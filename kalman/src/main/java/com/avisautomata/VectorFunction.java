@@ -0,0 +1,7 @@
+package com.avisautomata;
+
+//A nonlinear f(x) or h(x). Writes the result into out rather than returning it so callers can reuse buffers.
+@FunctionalInterface
+public interface VectorFunction {
+    void apply(double[] in, double[] out);
+}
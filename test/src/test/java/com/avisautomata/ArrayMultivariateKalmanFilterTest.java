@@ -0,0 +1,388 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArrayMultivariateKalmanFilterTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    private static double[] createF(double deltaT){
+        return new double[]{1, deltaT, 0, 1};
+    }
+
+    @Test
+    public void testMatchesTextbookEquations(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0}, {0, movementVariance}});
+        RealMatrix H = MatrixUtils.createRowRealMatrix(new double[]{1, 0});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{measureVariance}});
+
+        RealVector x = MatrixUtils.createRealVector(new double[2]);
+        RealMatrix P = MatrixUtils.createRealIdentityMatrix(2);
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(2, 1);
+
+        double[] state = new double[2];
+        double[] covariance = new double[4];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            RealMatrix F = MatrixUtils.createRealMatrix(new double[][]{{1, truth.time() - lastTime}, {0, 1}});
+            RealVector z = MatrixUtils.createRealVector(new double[]{new NormalDistribution(random, truth.value(), measureVariance).sample()});
+
+            //Reference step written out with commons-math
+            x = F.operate(x);
+            P = F.multiply(P).multiply(F.transpose()).add(Q);
+            RealMatrix S = H.multiply(P).multiply(H.transpose()).add(R);
+            RealMatrix K = P.multiply(H.transpose()).multiply(MatrixUtils.inverse(S));
+            x = x.add(K.operate(z.subtract(H.operate(x))));
+            P = MatrixUtils.createRealIdentityMatrix(2).subtract(K.multiply(H)).multiply(P);
+
+            filter.move(F, Q);
+            filter.measure(H, R, z);
+
+            filter.getState(state);
+            filter.getCovariance(covariance);
+
+            for(int i = 0; i < 2; i++){
+                assertTrue(Math.abs(x.getEntry(i) - state[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+                for(int j = 0; j < 2; j++){
+                    assertTrue(Math.abs(P.getEntry(i, j) - covariance[i * 2 + j]) < 1e-9, "Covariance " + i + "," + j + " differs at " + truth.time());
+                }
+            }
+            assertTrue(Math.abs(filter.getEstimate().getMeans()[0] - truth.value()) < 0.25, "Position was off at " + truth.time());
+
+            lastTime = truth.time();
+        }
+    }
+
+    @Test
+    public void testSmallerMeasurementsReuseBuffers(){
+        //Three states, but each sensor only reports one of them
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(3, 3);
+
+        double[] F = {1, 0.01, 0.00005, 0, 1, 0.01, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] Hposition = {1, 0, 0};
+        double[] R = {measureVariance};
+        double[] z = new double[1];
+
+        for(int i = 0; i < 1000; i++){
+            filter.move(F, Q);
+            z[0] = 2.0;
+            filter.measure(Hposition, R, z);
+        }
+
+        double[] state = new double[3];
+        filter.getState(state);
+        assertTrue(Math.abs(state[0] - 2.0) < 1e-3, "Position did not converge: " + state[0]);
+    }
+
+    @Test
+    public void testJosephMatchesInverse(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        ArrayMultivariateKalmanFilter inverse = new ArrayMultivariateKalmanFilter(3, 2);
+        ArrayMultivariateKalmanFilter joseph = new ArrayMultivariateKalmanFilter(3, 2);
+        joseph.setUpdateMode(UpdateMode.JOSEPH);
+
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0, 0, 0, 1};
+        double[] R = {measureVariance, 0, 0, measureVariance};
+        double[] z = new double[2];
+
+        double[] inverseState = new double[3];
+        double[] josephState = new double[3];
+        double[] josephCovariance = new double[9];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            double dt = truth.time() - lastTime;
+            double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+            z[0] = new NormalDistribution(random, truth.value(), measureVariance).sample();
+            z[1] = new NormalDistribution(random, truth.acceleration(), measureVariance).sample();
+
+            inverse.move(F, Q);
+            inverse.measure(H, R, z);
+            joseph.move(F, Q);
+            joseph.measure(H, R, z);
+
+            inverse.getState(inverseState);
+            joseph.getState(josephState);
+            joseph.getCovariance(josephCovariance);
+
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(inverseState[i] - josephState[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+                for(int j = 0; j < 3; j++){
+                    assertTrue(josephCovariance[i * 3 + j] == josephCovariance[j * 3 + i], "Covariance is not symmetric at " + truth.time());
+                }
+            }
+
+            lastTime = truth.time();
+        }
+
+        assertTrue(Math.abs(josephState[1] - truths.getLast().velocity()) < 0.25, "Velocity was off by " + Math.abs(josephState[1] - truths.getLast().velocity()));
+    }
+
+    @Test
+    public void testSequentialMatchesBatch(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        ArrayMultivariateKalmanFilter batch = new ArrayMultivariateKalmanFilter(3, 3);
+        batch.setUpdateMode(UpdateMode.JOSEPH);
+        ArrayMultivariateKalmanFilter sequential = new ArrayMultivariateKalmanFilter(3, 3);
+        sequential.setUpdateMode(UpdateMode.SEQUENTIAL);
+        ArrayMultivariateKalmanFilter diagonal = new ArrayMultivariateKalmanFilter(3, 3);
+
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0, 0, 1, 0, 0, 0, 1};
+        double[] R = {measureVariance, 0, 0, 0, 2 * measureVariance, 0, 0, 0, 3 * measureVariance};
+        double[] r = {measureVariance, 2 * measureVariance, 3 * measureVariance};
+        double[] z = new double[3];
+
+        double[] batchState = new double[3];
+        double[] batchCovariance = new double[9];
+        double[] other = new double[9];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            double dt = truth.time() - lastTime;
+            double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+            z[0] = new NormalDistribution(random, truth.value(), measureVariance).sample();
+            z[1] = new NormalDistribution(random, truth.velocity(), measureVariance).sample();
+            z[2] = new NormalDistribution(random, truth.acceleration(), measureVariance).sample();
+
+            batch.move(F, Q);
+            batch.measure(H, R, z);
+            sequential.move(F, Q);
+            sequential.measure(H, R, z);
+            diagonal.move(F, Q);
+            diagonal.measureDiagonal(H, r, z);
+
+            batch.getState(batchState);
+            batch.getCovariance(batchCovariance);
+            for(ArrayMultivariateKalmanFilter filter : List.of(sequential, diagonal)){
+                filter.getState(other);
+                for(int i = 0; i < 3; i++){
+                    assertTrue(Math.abs(batchState[i] - other[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+                }
+                filter.getCovariance(other);
+                for(int i = 0; i < 9; i++){
+                    assertTrue(Math.abs(batchCovariance[i] - other[i]) < 1e-9, "Covariance " + i + " differs at " + truth.time());
+                }
+            }
+
+            lastTime = truth.time();
+        }
+    }
+
+    @Test
+    public void testInnovationStatisticsMatchAcrossModes(){
+        ArrayMultivariateKalmanFilter inverse = new ArrayMultivariateKalmanFilter(3, 2);
+        ArrayMultivariateKalmanFilter joseph = new ArrayMultivariateKalmanFilter(3, 2);
+        ArrayMultivariateKalmanFilter sequential = new ArrayMultivariateKalmanFilter(3, 2);
+        joseph.setUpdateMode(UpdateMode.JOSEPH);
+        sequential.setUpdateMode(UpdateMode.SEQUENTIAL);
+        for(ArrayMultivariateKalmanFilter filter : List.of(inverse, joseph, sequential)){
+            filter.setInnovationStatistics(true);
+        }
+
+        double dt = 0.01;
+        double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0, 0, 0, 1};
+        double[] R = {measureVariance, 0, 0, 4 * measureVariance};
+        double[] z = new double[2];
+
+        for(int step = 0; step < 200; step++){
+            z[0] = step * dt + random.nextGaussian() * Math.sqrt(measureVariance);
+            z[1] = random.nextGaussian() * Math.sqrt(4 * measureVariance);
+            for(ArrayMultivariateKalmanFilter filter : List.of(inverse, joseph, sequential)){
+                filter.move(F, Q);
+                filter.measure(H, R, z);
+            }
+
+            double nis = inverse.getNormalizedInnovationSquared();
+            double logLikelihood = inverse.getLogLikelihood();
+            assertTrue(Math.abs(nis - joseph.getNormalizedInnovationSquared()) < 1e-9, "Joseph NIS differs at " + step);
+            assertTrue(Math.abs(nis - sequential.getNormalizedInnovationSquared()) < 1e-9, "Sequential NIS differs at " + step);
+            assertTrue(Math.abs(logLikelihood - joseph.getLogLikelihood()) < 1e-9, "Joseph log likelihood differs at " + step);
+            assertTrue(Math.abs(logLikelihood - sequential.getLogLikelihood()) < 1e-9, "Sequential log likelihood differs at " + step);
+        }
+    }
+
+    @Test
+    public void testNoAllocationPerStep(){
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(2, 1);
+        double[] F = createF(0.01);
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+        double[] H = {1, 0};
+        double[] R = {measureVariance};
+        double[] z = {0};
+
+        //Warm up so the JIT has settled before we start counting
+        for(int i = 0; i < 20_000; i++){
+            filter.move(F, Q);
+            z[0] = i * 0.01;
+            filter.measure(H, R, z);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for(int i = 0; i < 100_000; i++){
+            filter.move(F, Q);
+            z[0] = i * 0.01;
+            filter.measure(H, R, z);
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(allocated < 4096, "Allocated " + allocated + " bytes over 100000 steps");
+    }
+
+    @Test
+    public void testSteadyStateMatchesConvergedFilter(){
+        ArrayMultivariateKalmanFilter full = new ArrayMultivariateKalmanFilter(2, 1);
+        ArrayMultivariateKalmanFilter steady = new ArrayMultivariateKalmanFilter(2, 1);
+        double[] F = createF(0.01);
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+        double[] H = {1, 0};
+        double[] R = {measureVariance};
+        double[] z = new double[1];
+
+        steady.setSteadyState(F, H, Q, R);
+        assertTrue(steady.isSteadyState());
+
+        double[] fullState = new double[2];
+        double[] steadyState = new double[2];
+        double[] fullCovariance = new double[4];
+        double[] steadyCovariance = new double[4];
+        for(int i = 0; i < 6000; i++){
+            z[0] = i * 0.01 + random.nextGaussian() * Math.sqrt(measureVariance);
+            full.move(F, Q);
+            full.measure(H, R, z);
+            //Start the steady filter from the same estimate once the full one has had time to converge
+            if(i == 5000){
+                full.getState(fullState);
+                full.getCovariance(fullCovariance);
+                steady.getCovariance(steadyCovariance);
+                for(int j = 0; j < 4; j++){
+                    assertTrue(Math.abs(fullCovariance[j] - steadyCovariance[j]) < 1e-10, "Covariance " + j + " has not converged to the Riccati solution");
+                }
+                //setState() drops the frozen gain, so freeze it again from the restored P
+                steady.setState(fullState, steadyCovariance);
+                assertFalse(steady.isSteadyState());
+                steady.setSteadyState(F, H, Q, R);
+            }
+            if(i > 5000){
+                steady.move(F, Q);
+                steady.measure(H, R, z);
+                full.getState(fullState);
+                steady.getState(steadyState);
+                for(int j = 0; j < 2; j++){
+                    assertTrue(Math.abs(fullState[j] - steadyState[j]) < 1e-9, "State " + j + " differs at step " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEstimateIsCachedUntilStateChanges(){
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(2, 1);
+        double[] F = createF(0.01);
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+
+        MultivariateNormalDistribution first = filter.getEstimate();
+        assertTrue(first == filter.getEstimate(), "Estimate was rebuilt without a change of state");
+
+        filter.move(F, Q);
+        MultivariateNormalDistribution moved = filter.getEstimate();
+        assertTrue(first != moved, "Estimate was not rebuilt after move()");
+
+        filter.measure(new double[]{1, 0}, new double[]{measureVariance}, new double[]{0.5});
+        assertTrue(moved != filter.getEstimate(), "Estimate was not rebuilt after measure()");
+
+        MultivariateNormalDistribution measured = filter.getEstimate();
+        filter.setState(new double[]{1, 2}, new double[]{1, 0, 0, 1});
+        assertTrue(measured != filter.getEstimate(), "Estimate was not rebuilt after setState()");
+        assertTrue(filter.getEstimate().getMeans()[1] == 2);
+    }
+
+    @Test
+    public void testInnovationStatisticsAreOptIn(){
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(2, 1);
+        double[] F = {1, 0.1, 0, 1};
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+        double[] H = {1, 0};
+        double[] R = {measureVariance};
+
+        filter.move(F, Q);
+        filter.measure(H, R, new double[]{0.5});
+        assertTrue(Double.isNaN(filter.getNormalizedInnovationSquared()), "NIS kept without being asked for");
+
+        filter.setInnovationStatistics(true);
+        filter.move(F, Q);
+        filter.measure(H, R, new double[]{0.5});
+        assertTrue(Double.isFinite(filter.getLogLikelihood()), "Log likelihood missing once asked for");
+
+        filter.setInnovationStatistics(false);
+        assertTrue(Double.isNaN(filter.getLogLikelihood()), "Log likelihood kept after turning statistics off");
+    }
+
+    //The first state doubles every step and is never measured, so P never settles. The failed call must leave x, P
+    //and the statistics of the last measurement as they were.
+    @Test
+    public void testFailedSteadyStateLeavesFilterAlone(){
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(new double[]{1, 2}, 1);
+        filter.setInnovationStatistics(true);
+        double[] F = {2, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+        double[] H = {0, 1};
+        double[] R = {measureVariance};
+        filter.move(F, Q);
+        filter.measure(H, R, new double[]{1.5});
+
+        double[] state = new double[2];
+        double[] covariance = new double[4];
+        filter.getState(state);
+        filter.getCovariance(covariance);
+        double nis = filter.getNormalizedInnovationSquared();
+
+        assertThrows(MaxCountExceededException.class, () -> filter.setSteadyState(F, H, Q, R));
+        assertFalse(filter.isSteadyState());
+
+        double[] stateAfter = new double[2];
+        double[] covarianceAfter = new double[4];
+        filter.getState(stateAfter);
+        filter.getCovariance(covarianceAfter);
+        assertArrayEquals(state, stateAfter, 0);
+        assertArrayEquals(covariance, covarianceAfter, 0);
+        assertEquals(nis, filter.getNormalizedInnovationSquared(), 0);
+    }
+
+}
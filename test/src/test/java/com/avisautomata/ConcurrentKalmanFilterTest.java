@@ -0,0 +1,101 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentKalmanFilterTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    //The writer publishes states where every entry of x and P equals the time, so any torn read shows up as a mismatch
+    @Test
+    public void testReadersNeverSeeTornState() throws Exception {
+        int n = 6;
+        ConcurrentKalmanFilter filter = new ConcurrentKalmanFilter(new ArrayMultivariateKalmanFilter(n, 1), 0);
+        AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService readers = Executors.newFixedThreadPool(3);
+        List<Future<Long>> results = new ArrayList<>();
+        for(int r = 0; r < 3; r++){
+            results.add(readers.submit(() -> {
+                double[] x = new double[n];
+                double[] P = new double[n * n];
+                long reads = 0;
+                long lastVersion = 0;
+                while(!done.get()){
+                    double time = filter.read(x, P);
+                    if(time > 0){
+                        for(double value : x){
+                            assertTrue(value == time, "State " + value + " torn against time " + time);
+                        }
+                        for(double value : P){
+                            assertTrue(value == time, "Covariance " + value + " torn against time " + time);
+                        }
+                    }
+                    ConcurrentKalmanFilter.Snapshot snapshot = filter.snapshot();
+                    assertTrue(snapshot.version() >= lastVersion, "Version went backwards");
+                    lastVersion = snapshot.version();
+                    if(snapshot.time() > 0){
+                        assertTrue(snapshot.x()[n - 1] == snapshot.time() && snapshot.P()[n * n - 1] == snapshot.time(), "Snapshot torn");
+                    }
+                    reads++;
+                }
+                return reads;
+            }));
+        }
+
+        double[] state = new double[n];
+        double[] covariance = new double[n * n];
+        for(int step = 1; step <= 200_000; step++){
+            Arrays.fill(state, step);
+            Arrays.fill(covariance, step);
+            filter.setState(step, state, covariance);
+        }
+        done.set(true);
+
+        for(Future<Long> result : results){
+            assertTrue(result.get() > 0, "Reader never completed a read");
+        }
+        readers.shutdown();
+        assertTrue(filter.getVersion() == 200_001, "Expected every step to publish, got " + filter.getVersion());
+    }
+
+    @Test
+    public void testMatchesWrappedFilter(){
+        MotionModel model = new ConstantVelocityModel(1, movementVariance);
+        MotionModel referenceModel = new ConstantVelocityModel(1, movementVariance);
+        ConcurrentKalmanFilter filter = new ConcurrentKalmanFilter(new ArrayMultivariateKalmanFilter(2, 1), 0);
+        ArrayMultivariateKalmanFilter reference = new ArrayMultivariateKalmanFilter(2, 1);
+
+        double[] H = {1, 0};
+        double[] R = {measureVariance};
+        double[] z = new double[1];
+        double[] expected = new double[4];
+        double[] actual = new double[4];
+        for(int step = 1; step <= 100; step++){
+            double time = step * 0.01;
+            z[0] = time;
+            filter.predict(time, model);
+            filter.measure(H, R, z);
+            reference.predict(referenceModel, 0.01);
+            reference.measure(H, R, z);
+
+            assertTrue(filter.read(new double[2], actual) == time);
+            reference.getCovariance(expected);
+            for(int i = 0; i < 4; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-12, "Covariance " + i + " differs at step " + step);
+            }
+        }
+    }
+
+}
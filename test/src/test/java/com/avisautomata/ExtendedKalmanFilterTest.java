@@ -0,0 +1,192 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.MathUnsupportedOperationException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExtendedKalmanFilterTest {
+
+    private static final int seed = 0;
+    private static final double rangeVariance = 0.01;
+    private static final double bearingVariance = 0.0001;
+    //The robot brakes at 1 m/s^2, constant velocity needs that much acceleration noise to keep up
+    private static final double movementVariance = 1.0;
+    private static ApacheRandom random;
+
+    //Range and bearing to the robot from a fixed beacon, state is [x, vx, y, vy]
+    private static final double beaconX = -3;
+    private static final double beaconY = -4;
+
+    private static final VectorFunction rangeBearing = (state, out) -> {
+        double dx = state[0] - beaconX;
+        double dy = state[2] - beaconY;
+        out[0] = Math.sqrt(dx * dx + dy * dy);
+        out[1] = Math.atan2(dy, dx);
+    };
+
+    private static final JacobianFunction rangeBearingJacobian = (state, H) -> {
+        double dx = state[0] - beaconX;
+        double dy = state[2] - beaconY;
+        double r2 = dx * dx + dy * dy;
+        double r = Math.sqrt(r2);
+        H[0] = dx / r;
+        H[1] = 0;
+        H[2] = dy / r;
+        H[3] = 0;
+        H[4] = -dy / r2;
+        H[5] = 0;
+        H[6] = dx / r2;
+        H[7] = 0;
+    };
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    private static double[] measureRangeBearing(GroundTruthGenerator.RobotMoment truth, double[] z){
+        rangeBearing.apply(new double[]{truth.x().value(), 0, truth.y().value(), 0}, z);
+        z[0] += random.nextGaussian() * Math.sqrt(rangeVariance);
+        z[1] += random.nextGaussian() * Math.sqrt(bearingVariance);
+        return z;
+    }
+
+    @Test
+    public void testLinearModelMatchesLinearFilter(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+        double dt = 0.01;
+        double[] F = {1, dt, 0, 1};
+        double[] Q = {movementVariance, 0, 0, movementVariance};
+        double[] H = {1, 0};
+        double[] R = {rangeVariance};
+        double[] z = new double[1];
+
+        ExtendedKalmanFilter ekf = new ExtendedKalmanFilter(2, 1);
+        ArrayMultivariateKalmanFilter linear = new ArrayMultivariateKalmanFilter(2, 1);
+
+        VectorFunction f = (in, out) -> DenseMath.multiplyVector(F, in, out, 2, 2);
+        JacobianFunction fJacobian = (in, out) -> System.arraycopy(F, 0, out, 0, 4);
+        VectorFunction h = (in, out) -> out[0] = in[0];
+        JacobianFunction hJacobian = (in, out) -> System.arraycopy(H, 0, out, 0, 2);
+
+        double[] expected = new double[2];
+        double[] actual = new double[2];
+        for(GroundTruthGenerator.Moment truth : truths){
+            z[0] = truth.value() + random.nextGaussian() * Math.sqrt(rangeVariance);
+
+            ekf.predict(f, fJacobian, Q);
+            ekf.measure(h, hJacobian, R, z);
+            linear.move(F, Q);
+            linear.measure(H, R, z);
+
+            ekf.getState(actual);
+            linear.getState(expected);
+            for(int i = 0; i < 2; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-12, "State " + i + " differs at " + truth.time());
+            }
+        }
+    }
+
+    @Test
+    public void testRangeBearingTracking(){
+        double warmup = 1.0;
+        double threshold = 0.25;
+
+        List<GroundTruthGenerator.RobotMoment> truths = GroundTruthGenerator.allBackAndForth();
+        ConstantVelocityModel model = new ConstantVelocityModel(2, movementVariance);
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(4, 2);
+        filter.setUpdateMode(UpdateMode.JOSEPH);
+
+        double[] R = {rangeVariance, 0, 0, bearingVariance};
+        double[] z = new double[2];
+        double[] state = new double[4];
+        double[] F = new double[16];
+
+        VectorFunction f = (in, out) -> DenseMath.multiplyVector(F, in, out, 4, 4);
+        JacobianFunction fJacobian = (in, out) -> System.arraycopy(F, 0, out, 0, 16);
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.RobotMoment truth : truths){
+            model.prepare(truth.time() - lastTime);
+            System.arraycopy(model.getF(), 0, F, 0, 16);
+
+            filter.predict(f, fJacobian, model.getQ());
+            filter.measure(rangeBearing, rangeBearingJacobian, R, measureRangeBearing(truth, z));
+
+            filter.getState(state);
+            if(truth.time() > warmup){
+                assertTrue(Math.abs(state[0] - truth.x().value()) < threshold, "X was off by more than " + threshold + " at " + truth.time());
+                assertTrue(Math.abs(state[2] - truth.y().value()) < threshold, "Y was off by more than " + threshold + " at " + truth.time());
+            }
+            lastTime = truth.time();
+        }
+    }
+
+    //Heading h turning at a steady 0.8 rad/s from 2.6, so it crosses from pi to -pi a little after 0.6s. State is
+    //[h, vh] and both f and the sensor wrap h.
+    private double headingError(ResidualFunction residual){
+        double headingVariance = 0.0025;
+        double dt = 0.02;
+        double warmup = 0.3;
+        ConstantVelocityModel model = new ConstantVelocityModel(1, 0.01);
+        model.prepare(dt);
+        double[] F = model.getF();
+        VectorFunction f = (in, out) -> {
+            DenseMath.multiplyVector(F, in, out, 2, 2);
+            out[0] = ResidualFunction.wrap(out[0]);
+        };
+        JacobianFunction fJacobian = (in, jacobian) -> System.arraycopy(F, 0, jacobian, 0, 4);
+        VectorFunction h = (in, out) -> out[0] = ResidualFunction.wrap(in[0]);
+        JacobianFunction hJacobian = (in, jacobian) -> {
+            jacobian[0] = 1;
+            jacobian[1] = 0;
+        };
+
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(new double[]{2.6, 0.8}, 1);
+        double[] R = {headingVariance};
+        double[] z = new double[1];
+        double[] state = new double[2];
+        double worst = 0;
+        for(int step = 1; step <= 150; step++){
+            double time = step * dt;
+            double truth = 2.6 + 0.8 * time;
+            z[0] = ResidualFunction.wrap(truth + random.nextGaussian() * Math.sqrt(headingVariance));
+
+            filter.predict(f, fJacobian, model.getQ());
+            filter.measure(h, hJacobian, R, z, residual);
+
+            filter.getState(state);
+            if(time > warmup){
+                worst = Math.max(worst, Math.abs(ResidualFunction.wrap(state[0] - truth)));
+            }
+        }
+        return worst;
+    }
+
+    @Test
+    public void testHeadingWrapsAcrossPi(){
+        double wrapped = headingError(ResidualFunction.angles(0));
+        assertTrue(wrapped < 0.15, "Heading was off by " + wrapped);
+
+        //Subtracting plainly sees a jump of nearly 2pi the first time the measurement wraps
+        resetRandom();
+        double plain = headingError(ResidualFunction.SUBTRACT);
+        assertTrue(plain > 1, "Plain subtraction should lose the heading at the wrap, worst error was " + plain);
+    }
+
+    @Test
+    public void testRejectsSteadyState(){
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(2, 1);
+        assertThrows(MathUnsupportedOperationException.class, () -> filter.setSteadyState(new double[]{1, 0, 0, 1},
+                new double[]{1, 0}, new double[]{1, 0, 0, 1}, new double[]{1}));
+        assertFalse(filter.isSteadyState());
+    }
+
+}
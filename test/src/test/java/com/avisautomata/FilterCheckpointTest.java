@@ -0,0 +1,260 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FilterCheckpointTest {
+
+    private static final double dt = 0.05;
+    private static final double variance = 0.01;
+
+    @TempDir
+    Path directory;
+
+    //Stop part way, checkpoint, reopen the file as a fresh process would and carry on: the restored filter must end up
+    //exactly where the one that never stopped does
+    @Test
+    public void testWarmRestart() throws IOException {
+        Path path = directory.resolve("filters.ckpt");
+        MotionModel model = new ConstantVelocityModel(2, variance);
+        double[] H = {1, 0, 0, 0, 0, 0, 1, 0};
+        double[] R = {variance, 0, 0, variance};
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(6);
+
+        ArrayMultivariateKalmanFilter running = new ArrayMultivariateKalmanFilter(4, 2);
+        running.setUpdateMode(UpdateMode.JOSEPH);
+        double time = 0;
+        double[][] z = new double[200][2];
+        for(double[] row : z){
+            row[0] = random.nextGaussian();
+            row[1] = random.nextGaussian();
+        }
+        for(int step = 0; step < 100; step++){
+            time += dt;
+            running.predict(model, dt);
+            running.measure(H, R, z[step]);
+        }
+
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 4, 8)){
+            checkpoint.save(3, time, running);
+        }
+
+        //Restore into a filter that already froze a gain of its own
+        ArrayMultivariateKalmanFilter restored = new ArrayMultivariateKalmanFilter(4, 2);
+        double[] F = {1, dt, 0, 0, 0, 1, 0, 0, 0, 0, 1, dt, 0, 0, 0, 1};
+        double[] Q = {variance, 0, 0, 0, 0, variance, 0, 0, 0, 0, variance, 0, 0, 0, 0, variance};
+        restored.setSteadyState(F, H, Q, R);
+        assertTrue(restored.isSteadyState());
+        double restoredTime;
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 4, 8)){
+            assertTrue(checkpoint.isValid(3));
+            assertFalse(checkpoint.isValid(2));
+            restoredTime = checkpoint.restore(3, restored);
+        }
+        assertEquals(time, restoredTime, 0);
+        assertEquals(UpdateMode.JOSEPH, restored.getUpdateMode());
+        //Steady state is configuration, not saved, and the target's own gain went with its old P
+        assertFalse(restored.isSteadyState());
+
+        for(int step = 100; step < 200; step++){
+            running.predict(model, dt);
+            running.measure(H, R, z[step]);
+            restored.predict(model, dt);
+            restored.measure(H, R, z[step]);
+        }
+        assertSameState(running, restored, 4);
+    }
+
+    @Test
+    public void testMatrixFilterRoundTrip() throws IOException {
+        RealVector initial = MatrixUtils.createRealVector(new double[]{1, 2});
+        MultivariateKalmanFilter filter = new MultivariateKalmanFilter(initial);
+        filter.setUpdateMode(UpdateMode.SEQUENTIAL);
+        RealMatrix F = MatrixUtils.createRealMatrix(new double[][]{{1, dt}, {0, 1}});
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{variance, 0}, {0, variance}});
+        RealMatrix H = MatrixUtils.createRealMatrix(new double[][]{{1, 0}});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{variance}});
+        for(int step = 0; step < 10; step++){
+            filter.move(F, Q);
+            filter.measure(H, R, MatrixUtils.createRealVector(new double[]{step * 0.1}));
+        }
+
+        //Restore into a filter that has already detected its steady state
+        MultivariateKalmanFilter restored = new MultivariateKalmanFilter(2);
+        restored.setSteadyStateTolerance(1e-9);
+        for(int step = 0; step < 10_000 && !restored.isSteadyState(); step++){
+            restored.move(F, Q);
+            restored.measure(H, R, MatrixUtils.createRealVector(new double[]{0}));
+        }
+        assertTrue(restored.isSteadyState());
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(directory.resolve("matrix.ckpt"), 2, 1)){
+            checkpoint.save(0, 0.5, filter);
+            assertEquals(0.5, checkpoint.restore(0, restored), 0);
+            assertThrows(DimensionMismatchException.class, () -> checkpoint.save(0, 0, new MultivariateKalmanFilter(3)));
+        }
+        assertEquals(UpdateMode.SEQUENTIAL, restored.getUpdateMode());
+        assertFalse(restored.isSteadyState());
+
+        double[] expected = new double[4];
+        double[] actual = new double[4];
+        filter.getCovariance(expected);
+        restored.getCovariance(actual);
+        assertArrayEquals(expected, actual, 0);
+        filter.getState(expected);
+        restored.getState(actual);
+        assertArrayEquals(expected, actual, 0);
+        assertArrayEquals(filter.getEstimate().getMeans(), restored.getEstimate().getMeans(), 0);
+    }
+
+    @Test
+    public void testBankRoundTrip() throws IOException {
+        int count = 1000;
+        KalmanFilterBank bank = new KalmanFilterBank(count, 4, 2);
+        double[] state = new double[4];
+        double[] covariance = new double[16];
+        for(int i = 0; i < count; i++){
+            for(int j = 0; j < 4; j++){
+                state[j] = i + j;
+                covariance[j * 4 + j] = 1 + i * 0.001 + j;
+            }
+            bank.setState(i, state, covariance);
+        }
+        bank.setUpdateMode(UpdateMode.JOSEPH);
+
+        Path path = directory.resolve("bank.ckpt");
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 4, count)){
+            checkpoint.save(12.5, bank);
+            checkpoint.flush();
+        }
+
+        KalmanFilterBank restored = new KalmanFilterBank(count, 4, 2);
+        double[] times = new double[count];
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 4, count)){
+            checkpoint.restore(restored, times);
+        }
+        assertEquals(UpdateMode.JOSEPH, restored.getUpdateMode());
+        double[] expected = new double[16];
+        double[] actual = new double[16];
+        for(int i = 0; i < count; i++){
+            assertEquals(12.5, times[i], 0);
+            bank.getState(i, expected);
+            restored.getState(i, actual);
+            assertArrayEquals(expected, actual, 0);
+            bank.getCovariance(i, expected);
+            restored.getCovariance(i, actual);
+            assertArrayEquals(expected, actual, 0);
+        }
+
+        //A checkpoint sized for fewer filters than the bank, or a different n, can't hold it
+        try(FilterCheckpoint small = FilterCheckpoint.open(directory.resolve("small.ckpt"), 4, count - 1)){
+            assertThrows(RuntimeException.class, () -> small.save(0, bank));
+        }
+        assertThrows(IOException.class, () -> FilterCheckpoint.open(path, 6, count));
+    }
+
+    //Garbage over the newer copy, as a crash part way through a save would leave, falls back to the previous save
+    @Test
+    public void testTornCopyFallsBack() throws IOException {
+        Path path = directory.resolve("torn.ckpt");
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(new double[]{1, 2, 3}, 1);
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 3, 2)){
+            checkpoint.save(1, 1.0, filter);
+            filter.setState(new double[]{4, 5, 6}, new double[]{2, 0, 0, 0, 2, 0, 0, 0, 2});
+            checkpoint.save(1, 2.0, filter);
+        }
+
+        //Version 2 of slot 1 went to its first copy
+        int size = FilterCheckpoint.copySize(3);
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")){
+            file.seek(FilterCheckpoint.HEADER_SIZE + 2L * size + 40);
+            file.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        }
+
+        ArrayMultivariateKalmanFilter restored = new ArrayMultivariateKalmanFilter(3, 1);
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 3, 2)){
+            assertEquals(1.0, checkpoint.restore(1, restored), 0);
+            double[] state = new double[3];
+            restored.getState(state);
+            assertArrayEquals(new double[]{1, 2, 3}, state, 0);
+
+            //The next save overwrites the torn copy rather than the intact one
+            checkpoint.save(1, 3.0, filter);
+            assertEquals(3.0, checkpoint.restore(1, restored), 0);
+            assertThrows(IllegalStateException.class, () -> checkpoint.restore(0, restored));
+        }
+    }
+
+    //The mode is stored as a fixed code rather than its ordinal, and a file from the ordinal format is refused
+    @Test
+    public void testStableModeCode() throws IOException {
+        Path path = directory.resolve("mode.ckpt");
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(2, 1);
+        filter.setUpdateMode(UpdateMode.SEQUENTIAL);
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(path, 2, 1)){
+            checkpoint.save(0, 1.0, filter);
+        }
+
+        //Version 1 of slot 0 went to its second copy, the mode sits 24 bytes in
+        int size = FilterCheckpoint.copySize(2);
+        try(RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")){
+            file.seek(FilterCheckpoint.HEADER_SIZE + size + 24);
+            assertEquals(3, Integer.reverseBytes(file.readInt()));
+            file.seek(4);
+            file.writeInt(Integer.reverseBytes(1));
+        }
+        assertThrows(IOException.class, () -> FilterCheckpoint.open(path, 2, 1));
+    }
+
+    //Saves and flushes racing on two threads must never leave a slot without an intact snapshot
+    @Test
+    public void testFlushFromAnotherThread() throws Exception {
+        int count = 64;
+        KalmanFilterBank bank = new KalmanFilterBank(count, 2, 1);
+        try(FilterCheckpoint checkpoint = FilterCheckpoint.open(directory.resolve("race.ckpt"), 2, count)){
+            Thread flusher = Thread.ofVirtual().start(() -> {
+                for(int i = 0; i < 200; i++){
+                    checkpoint.flush();
+                }
+            });
+            for(int round = 0; round < 200; round++){
+                checkpoint.save(round, bank);
+            }
+            flusher.join();
+
+            double[] times = new double[count];
+            checkpoint.restore(new KalmanFilterBank(count, 2, 1), times);
+            for(double time : times){
+                assertEquals(199, time, 0);
+            }
+        }
+    }
+
+    private static void assertSameState(ArrayMultivariateKalmanFilter expected, ArrayMultivariateKalmanFilter actual, int n){
+        double[] expectedX = new double[n];
+        double[] actualX = new double[n];
+        expected.getState(expectedX);
+        actual.getState(actualX);
+        assertArrayEquals(expectedX, actualX, 0);
+        double[] expectedP = new double[n * n];
+        double[] actualP = new double[n * n];
+        expected.getCovariance(expectedP);
+        actual.getCovariance(actualP);
+        assertArrayEquals(expectedP, actualP, 0);
+    }
+
+}
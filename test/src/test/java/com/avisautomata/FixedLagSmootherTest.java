@@ -0,0 +1,137 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FixedLagSmootherTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    private static final double[] H = {1, 0, 0};
+    private static final double[] R = {measureVariance};
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    private static double[] createF(double dt){
+        return new double[]{1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+    }
+
+    private static double[] createQ(){
+        return new double[]{movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+    }
+
+    private static RealMatrix matrix(double[] flat){
+        return MatrixUtils.createRealMatrix(new double[][]{
+                {flat[0], flat[1], flat[2]}, {flat[3], flat[4], flat[5]}, {flat[6], flat[7], flat[8]}
+        });
+    }
+
+    @Test
+    public void testFlushMatchesFullRts(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList().subList(0, 300);
+
+        List<double[]> smoothed = new ArrayList<>();
+        FixedLagSmoother smoother = new FixedLagSmoother(new double[3], 1, truths.size(), (time, x, P) -> smoothed.add(x.clone()));
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(3, 1);
+
+        //Forward pass kept in full for the reference smoother
+        List<RealMatrix> Fs = new ArrayList<>();
+        List<RealVector> predictedX = new ArrayList<>();
+        List<RealMatrix> predictedP = new ArrayList<>();
+        List<RealVector> filteredX = new ArrayList<>();
+        List<RealMatrix> filteredP = new ArrayList<>();
+        double[] x = new double[3];
+        double[] P = new double[9];
+        double[] z = new double[1];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            double[] F = createF(truth.time() - lastTime);
+            z[0] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+
+            smoother.move(truth.time(), F, createQ());
+            smoother.measure(H, R, z);
+
+            filter.move(F, createQ());
+            Fs.add(matrix(F));
+            filter.getState(x);
+            filter.getCovariance(P);
+            predictedX.add(MatrixUtils.createRealVector(x.clone()));
+            predictedP.add(matrix(P.clone()));
+            filter.measure(H, R, z);
+            filter.getState(x);
+            filter.getCovariance(P);
+            filteredX.add(MatrixUtils.createRealVector(x.clone()));
+            filteredP.add(matrix(P.clone()));
+
+            lastTime = truth.time();
+        }
+        smoother.flush();
+
+        //Textbook RTS backward pass
+        int steps = truths.size();
+        RealVector[] expected = new RealVector[steps];
+        RealMatrix smoothP = filteredP.get(steps - 1);
+        expected[steps - 1] = filteredX.get(steps - 1);
+        for(int k = steps - 2; k >= 0; k--){
+            RealMatrix C = filteredP.get(k).multiply(Fs.get(k + 1).transpose()).multiply(MatrixUtils.inverse(predictedP.get(k + 1)));
+            expected[k] = filteredX.get(k).add(C.operate(expected[k + 1].subtract(predictedX.get(k + 1))));
+            smoothP = filteredP.get(k).add(C.multiply(smoothP.subtract(predictedP.get(k + 1))).multiply(C.transpose()));
+        }
+
+        assertTrue(smoothed.size() == steps, "Expected " + steps + " smoothed states, got " + smoothed.size());
+        for(int k = 0; k < steps; k++){
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[k].getEntry(i) - smoothed.get(k)[i]) < 1e-6, "State " + i + " differs at step " + k);
+            }
+        }
+    }
+
+    @Test
+    public void testFixedLagBeatsFiltering(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        List<Double> smoothedPositions = new ArrayList<>();
+        FixedLagSmoother smoother = new FixedLagSmoother(new double[3], 1, 25, (time, x, P) -> smoothedPositions.add(x[0]));
+
+        double filteredError = 0;
+        double[] x = new double[3];
+        double[] z = new double[1];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            z[0] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+            smoother.move(truth.time(), createF(truth.time() - lastTime), createQ());
+            smoother.measure(H, R, z);
+
+            smoother.getState(x);
+            filteredError += Math.pow(x[0] - truth.value(), 2);
+            lastTime = truth.time();
+        }
+        smoother.flush();
+
+        double smoothedError = 0;
+        for(int k = 0; k < truths.size(); k++){
+            smoothedError += Math.pow(smoothedPositions.get(k) - truths.get(k).value(), 2);
+        }
+
+        assertTrue(smoothedPositions.size() == truths.size(), "Every step should be emitted once");
+        assertTrue(smoothedError < filteredError, "Smoothing did not help, " + smoothedError + " >= " + filteredError);
+    }
+
+}
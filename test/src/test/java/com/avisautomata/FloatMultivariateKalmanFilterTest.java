@@ -0,0 +1,100 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FloatMultivariateKalmanFilterTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    //Position only, constant acceleration model, on every axis of the back and forth scenario
+    @Test
+    public void testMatchesDoubleFilterOnEveryAxis(){
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.allBackAndForth();
+        for(GroundTruthGenerator.Axis axis : GroundTruthGenerator.Axis.values()){
+            ApacheRandom random = new ApacheRandom();
+            random.setSeed(axis.ordinal());
+
+            ArrayMultivariateKalmanFilter reference = new ArrayMultivariateKalmanFilter(3, 1);
+            reference.setUpdateMode(UpdateMode.JOSEPH);
+            FloatMultivariateKalmanFilter filter = new FloatMultivariateKalmanFilter(3, 1);
+            MotionModel referenceModel = new ConstantAccelerationModel(1, movementVariance);
+            MotionModel model = new ConstantAccelerationModel(1, movementVariance);
+
+            double[] H = {1, 0, 0};
+            double[] R = {measureVariance};
+            float[] floatH = {1, 0, 0};
+            float[] floatR = {(float) measureVariance};
+            double[] z = new double[1];
+            float[] floatZ = new float[1];
+            double[] state = new double[3];
+            float[] floatState = new float[3];
+            float[] covariance = new float[9];
+
+            double worst = 0;
+            double referenceError = 0;
+            double floatError = 0;
+            double lastTime = 0;
+            for(GroundTruthGenerator.RobotMoment moment : moments){
+                GroundTruthGenerator.Moment truth = switch(axis){
+                    case X -> moment.x();
+                    case Y -> moment.y();
+                    case H -> moment.h();
+                };
+                z[0] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+                floatZ[0] = (float) z[0];
+
+                reference.predict(referenceModel, moment.time() - lastTime);
+                reference.measure(H, R, z);
+                filter.predict(model, moment.time() - lastTime);
+                filter.measure(floatH, floatR, floatZ);
+                lastTime = moment.time();
+
+                reference.getState(state);
+                filter.getState(floatState);
+                worst = Math.max(worst, Math.abs(state[0] - floatState[0]));
+                referenceError += Math.pow(state[0] - truth.value(), 2);
+                floatError += Math.pow(floatState[0] - truth.value(), 2);
+
+                filter.getCovariance(covariance);
+                for(int i = 0; i < 3; i++){
+                    assertTrue(covariance[i * 3 + i] > 0, axis + " variance " + i + " went to " + covariance[i * 3 + i]);
+                    for(int j = 0; j < 3; j++){
+                        assertEquals(covariance[i * 3 + j], covariance[j * 3 + i], 0);
+                    }
+                }
+            }
+
+            System.out.println(axis + " largest float/double difference " + worst);
+            assertTrue(worst < 1e-3, axis + " drifted " + worst + " from double");
+            assertEquals(Math.sqrt(referenceError), Math.sqrt(floatError), 1e-2 * Math.sqrt(referenceError));
+        }
+    }
+
+    //Precise measurements of every state for a long run, where the plain (I - K * H) * P update loses definiteness
+    @Test
+    public void testCovarianceStaysPositiveDefinite(){
+        FloatMultivariateKalmanFilter filter = new FloatMultivariateKalmanFilter(2, 2);
+        float[] F = {1, 0.01f, 0, 1};
+        float[] Q = {1e-8f, 0, 0, 1e-8f};
+        float[] H = {1, 0, 0, 1};
+        float[] R = {1e-6f, 0, 0, 1e-6f};
+        float[] z = new float[2];
+        float[] covariance = new float[4];
+        for(int step = 0; step < 100_000; step++){
+            z[0] = step * 0.01f;
+            z[1] = 1;
+            filter.move(F, Q);
+            filter.measure(H, R, z);
+        }
+        filter.getCovariance(covariance);
+        assertTrue(covariance[0] > 0 && covariance[3] > 0);
+        assertTrue(covariance[0] * covariance[3] - covariance[1] * covariance[2] > 0);
+    }
+
+}
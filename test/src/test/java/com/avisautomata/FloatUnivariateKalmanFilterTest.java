@@ -0,0 +1,59 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FloatUnivariateKalmanFilterTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    //Same noisy run through both precisions, the float filter has to stay within float rounding of the double one
+    @Test
+    public void testMatchesDoubleFilter(){
+        List<GroundTruthGenerator.Moment> truth = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(0);
+
+        UnivariateKalmanFilter reference = new UnivariateKalmanFilter(0, 1);
+        FloatUnivariateKalmanFilter filter = new FloatUnivariateKalmanFilter(0, 1);
+        double worst = 0;
+        double referenceError = 0;
+        double floatError = 0;
+        for(int i = 1; i < truth.size(); i++){
+            double distance = truth.get(i).value() - truth.get(i - 1).value() + random.nextGaussian() * Math.sqrt(movementVariance);
+            double position = truth.get(i).value() + random.nextGaussian() * Math.sqrt(measureVariance);
+
+            reference.move(distance, movementVariance);
+            reference.measure(position, measureVariance);
+            filter.move((float) distance, (float) movementVariance);
+            filter.measure((float) position, (float) measureVariance);
+
+            worst = Math.max(worst, Math.abs(reference.getMean() - filter.getMean()));
+            referenceError += Math.pow(reference.getMean() - truth.get(i).value(), 2);
+            floatError += Math.pow(filter.getMean() - truth.get(i).value(), 2);
+        }
+
+        System.out.println("Largest float/double difference " + worst);
+        assertTrue(worst < 1e-4, "Float drifted " + worst + " from double");
+        assertEquals(Math.sqrt(referenceError), Math.sqrt(floatError), 1e-3 * Math.sqrt(referenceError));
+        assertEquals(reference.getVariance(), filter.getVariance(), 1e-6);
+    }
+
+    //A measurement so precise that K rounds to 1 must leave a small positive variance, not zero or negative
+    @Test
+    public void testVarianceStaysPositive(){
+        FloatUnivariateKalmanFilter filter = new FloatUnivariateKalmanFilter(0, 1e6f);
+        for(int i = 0; i < 1000; i++){
+            filter.move(0, 1e6f);
+            filter.measure(1, 1e-6f);
+            assertTrue(filter.getVariance() > 0, "Variance " + filter.getVariance() + " at step " + i);
+        }
+        assertEquals(1, filter.getMean(), 1e-6);
+    }
+
+}
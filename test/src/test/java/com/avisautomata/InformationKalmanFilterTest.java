@@ -0,0 +1,138 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class InformationKalmanFilterTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    //Position and velocity as two separate contributions must track the same as one stacked covariance-form update
+    @Test
+    public void testMatchesCovarianceForm(){
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.xBackAndForth();
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(11);
+
+        MotionModel informationModel = new ConstantAccelerationModel(1, movementVariance);
+        MotionModel covarianceModel = new ConstantAccelerationModel(1, movementVariance);
+        InformationKalmanFilter information = new InformationKalmanFilter(3, 1);
+        ArrayMultivariateKalmanFilter covariance = new ArrayMultivariateKalmanFilter(3, 2);
+        covariance.setUpdateMode(UpdateMode.JOSEPH);
+
+        double[] positionH = {1, 0, 0};
+        double[] velocityH = {0, 1, 0};
+        double[] stackedH = {1, 0, 0, 0, 1, 0};
+        double[] R = {measureVariance};
+        double[] stackedR = {measureVariance, 0, 0, measureVariance};
+        InformationKalmanFilter.Contribution position = new InformationKalmanFilter.Contribution(3, 1);
+        InformationKalmanFilter.Contribution velocity = new InformationKalmanFilter.Contribution(3, 1);
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.RobotMoment moment : moments){
+            double[] z = {moment.x().value() + random.nextGaussian() * 0.1, moment.x().velocity() + random.nextGaussian() * 0.1};
+            information.predict(informationModel, moment.time() - lastTime);
+            covariance.predict(covarianceModel, moment.time() - lastTime);
+            lastTime = moment.time();
+
+            position.compute(positionH, R, new double[]{z[0]});
+            velocity.compute(velocityH, R, new double[]{z[1]});
+            information.add(position, velocity);
+            covariance.measure(stackedH, stackedR, z);
+        }
+
+        double[] expected = new double[3];
+        double[] actual = new double[3];
+        covariance.getState(expected);
+        information.getState(actual);
+        assertArrayEquals(expected, actual, 1e-8);
+        double[] expectedP = new double[9];
+        double[] actualP = new double[9];
+        covariance.getCovariance(expectedP);
+        information.getCovariance(actualP);
+        assertArrayEquals(expectedP, actualP, 1e-10);
+        assertArrayEquals(actual, information.getEstimate().getMeans(), 0);
+    }
+
+    //Contributions computed on the common pool and summed in sensor order give exactly what measuring one by one does
+    @Test
+    public void testParallelContributions(){
+        int n = 6;
+        int sensors = 32;
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(5);
+        double[][] H = new double[sensors][2 * n];
+        double[][] R = new double[sensors][];
+        double[][] z = new double[sensors][2];
+        for(int s = 0; s < sensors; s++){
+            for(int i = 0; i < H[s].length; i++){
+                H[s][i] = random.nextGaussian();
+            }
+            double variance = measureVariance * (1 + s);
+            R[s] = new double[]{variance, 0.3 * variance, 0.3 * variance, variance};
+            z[s][0] = random.nextGaussian();
+            z[s][1] = random.nextGaussian();
+        }
+
+        InformationKalmanFilter.Contribution[] contributions = new InformationKalmanFilter.Contribution[sensors];
+        for(int s = 0; s < sensors; s++){
+            contributions[s] = new InformationKalmanFilter.Contribution(n, 2);
+        }
+        IntStream.range(0, sensors).parallel().forEach(s -> contributions[s].compute(H[s], R[s], z[s]));
+        InformationKalmanFilter parallel = new InformationKalmanFilter(n, 2);
+        parallel.add(contributions);
+
+        InformationKalmanFilter sequential = new InformationKalmanFilter(n, 2);
+        ArrayMultivariateKalmanFilter covariance = new ArrayMultivariateKalmanFilter(n, 2);
+        covariance.setUpdateMode(UpdateMode.JOSEPH);
+        for(int s = 0; s < sensors; s++){
+            sequential.measure(H[s], R[s], z[s]);
+            covariance.measure(H[s], R[s], z[s]);
+        }
+
+        double[] parallelY = new double[n * n];
+        double[] sequentialY = new double[n * n];
+        parallel.getInformation(parallelY);
+        sequential.getInformation(sequentialY);
+        assertArrayEquals(sequentialY, parallelY, 0);
+
+        double[] expected = new double[n];
+        double[] actual = new double[n];
+        covariance.getState(expected);
+        parallel.getState(actual);
+        assertArrayEquals(expected, actual, 1e-9);
+    }
+
+    //With no prior at all the first full rank measurement is the estimate
+    @Test
+    public void testNoPrior(){
+        InformationKalmanFilter filter = new InformationKalmanFilter(2, 2);
+        filter.setInformation(new double[4], new double[2]);
+        double[] R = {0.5, 0.1, 0.1, 0.25};
+        filter.measure(new double[]{1, 0, 0, 1}, R, new double[]{3, -4});
+
+        double[] state = new double[2];
+        double[] covariance = new double[4];
+        filter.getState(state);
+        filter.getCovariance(covariance);
+        assertArrayEquals(new double[]{3, -4}, state, 1e-12);
+        assertArrayEquals(R, covariance, 1e-12);
+
+        //setState goes back to the same Y and y
+        InformationKalmanFilter restored = new InformationKalmanFilter(2, 2);
+        restored.setState(state, covariance);
+        double[] Y = new double[4];
+        double[] restoredY = new double[4];
+        filter.getInformation(Y);
+        restored.getInformation(restoredY);
+        assertArrayEquals(Y, restoredY, 1e-12);
+        assertEquals(2, restored.getDimension());
+    }
+
+}
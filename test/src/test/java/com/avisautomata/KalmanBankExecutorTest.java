@@ -0,0 +1,122 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KalmanBankExecutorTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    @Test
+    public void testMatchesSequentialBitForBit(){
+        int count = 2003;
+        int steps = 200;
+        double dt = 0.01;
+
+        KalmanFilterBank sequential = new KalmanFilterBank(count, 3, 1);
+        KalmanFilterBank parallel = new KalmanFilterBank(count, 3, 1);
+        parallel.setUpdateMode(UpdateMode.JOSEPH);
+        sequential.setUpdateMode(UpdateMode.JOSEPH);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        KalmanBankExecutor executor = new KalmanBankExecutor(parallel, pool);
+
+        double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0};
+        double[] R = {measureVariance};
+
+        //Every third filter is measured each step
+        int[] indices = new int[count / 3];
+        for(int i = 0; i < indices.length; i++){
+            indices[i] = i * 3;
+        }
+        double[] z = new double[indices.length];
+
+        for(int step = 0; step < steps; step++){
+            for(int i = 0; i < z.length; i++){
+                z[i] = step * dt + i * 0.001 + random.nextGaussian() * Math.sqrt(measureVariance);
+            }
+
+            sequential.predictAll(F, Q);
+            sequential.updateAll(H, R, indices, z);
+
+            executor.predictAll(F, Q);
+            executor.updateAll(H, R, indices, z);
+        }
+        pool.shutdown();
+
+        double[] expected = new double[9];
+        double[] actual = new double[9];
+        for(int f = 0; f < count; f++){
+            sequential.getState(f, expected);
+            parallel.getState(f, actual);
+            for(int i = 0; i < 3; i++){
+                assertTrue(expected[i] == actual[i], "State " + i + " of filter " + f + " differs");
+            }
+            sequential.getCovariance(f, expected);
+            parallel.getCovariance(f, actual);
+            for(int i = 0; i < 9; i++){
+                assertTrue(expected[i] == actual[i], "Covariance " + i + " of filter " + f + " differs");
+            }
+        }
+    }
+
+    //Measuring every filter splits on plain ranges, which must give the same bits as the single threaded bank
+    @Test
+    public void testAllFiltersMatchesSequential(){
+        int count = 1001;
+        double dt = 0.01;
+        KalmanFilterBank sequential = new KalmanFilterBank(count, 3, 2);
+        KalmanFilterBank parallel = new KalmanFilterBank(count, 3, 2);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        KalmanBankExecutor executor = new KalmanBankExecutor(parallel, pool);
+
+        double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0, 0, 1, 0};
+        double[] R = {measureVariance, 0.002, 0.002, measureVariance};
+        double[] z = new double[2 * count];
+        for(int step = 0; step < 50; step++){
+            for(int i = 0; i < z.length; i++){
+                z[i] = step * dt + random.nextGaussian() * Math.sqrt(measureVariance);
+            }
+            sequential.predictAll(F, Q);
+            sequential.updateAll(H, R, z);
+            executor.predictAll(F, Q);
+            executor.updateAll(H, R, z);
+        }
+        assertThrows(NotStrictlyPositiveException.class, () -> executor.updateAll(new double[0], new double[0], new int[0], new double[0]));
+        pool.shutdown();
+
+        double[] expected = new double[9];
+        double[] actual = new double[9];
+        double[] expectedX = new double[3];
+        double[] actualX = new double[3];
+        for(int f = 0; f < count; f++){
+            sequential.getCovariance(f, expected);
+            parallel.getCovariance(f, actual);
+            assertArrayEquals(expected, actual, 0, "Covariance of filter " + f + " differs");
+            sequential.getState(f, expectedX);
+            parallel.getState(f, actualX);
+            assertArrayEquals(expectedX, actualX, 0, "State of filter " + f + " differs");
+        }
+    }
+
+}
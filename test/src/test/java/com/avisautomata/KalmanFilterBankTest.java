@@ -0,0 +1,147 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.distribution.MultivariateNormalDistribution;
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.NotStrictlyPositiveException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KalmanFilterBankTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    @Test
+    public void testMatchesIndependentFilters(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+        int count = 64;
+
+        KalmanFilterBank bank = new KalmanFilterBank(count, 3, 1);
+        ArrayMultivariateKalmanFilter[] filters = new ArrayMultivariateKalmanFilter[count];
+        for(int f = 0; f < count; f++){
+            filters[f] = new ArrayMultivariateKalmanFilter(3, 1);
+        }
+
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0};
+        double[] R = {measureVariance};
+
+        //Only every other filter gets measured each step
+        int[] even = new int[count / 2];
+        for(int i = 0; i < even.length; i++){
+            even[i] = i * 2;
+        }
+        double[] z = new double[even.length];
+        double[] single = new double[1];
+
+        double[] expected = new double[9];
+        double[] actual = new double[9];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            double dt = truth.time() - lastTime;
+            double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+
+            bank.predictAll(F, Q);
+            for(ArrayMultivariateKalmanFilter filter : filters){
+                filter.move(F, Q);
+            }
+
+            for(int i = 0; i < even.length; i++){
+                z[i] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+                single[0] = z[i];
+                filters[even[i]].measure(H, R, single);
+            }
+            bank.updateAll(H, R, even, z);
+
+            lastTime = truth.time();
+        }
+
+        for(int f = 0; f < count; f++){
+            filters[f].getState(expected);
+            bank.getState(f, actual);
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "State " + i + " of filter " + f + " differs");
+            }
+            filters[f].getCovariance(expected);
+            bank.getCovariance(f, actual);
+            for(int i = 0; i < 9; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "Covariance " + i + " of filter " + f + " differs");
+            }
+        }
+
+        MultivariateNormalDistribution estimate = bank.getEstimate(0);
+        assertTrue(Math.abs(estimate.getMeans()[0] - truths.getLast().value()) < 0.25, "Position was off by " + Math.abs(estimate.getMeans()[0] - truths.getLast().value()));
+    }
+
+    //Correlated R is whitened once per call and measured a row at a time, which must land where the engine's joint
+    //update does
+    @Test
+    public void testCorrelatedNoiseAllFilters(){
+        int count = 37;
+        double dt = 0.05;
+        KalmanFilterBank bank = new KalmanFilterBank(count, 3, 2);
+        bank.setUpdateMode(UpdateMode.JOSEPH);
+        ArrayMultivariateKalmanFilter[] filters = new ArrayMultivariateKalmanFilter[count];
+        for(int f = 0; f < count; f++){
+            filters[f] = new ArrayMultivariateKalmanFilter(3, 2);
+            filters[f].setUpdateMode(UpdateMode.JOSEPH);
+        }
+
+        double[] F = {1, dt, 0.5 * dt * dt, 0, 1, dt, 0, 0, 1};
+        double[] Q = {movementVariance, 0, 0, 0, movementVariance, 0, 0, 0, movementVariance};
+        double[] H = {1, 0, 0, 0.5, 1, 0};
+        double[] R = {measureVariance, 0.004, 0.004, 2 * measureVariance};
+        double[] z = new double[2 * count];
+        double[] single = new double[2];
+
+        for(int step = 0; step < 100; step++){
+            bank.predictAll(F, Q);
+            for(int f = 0; f < count; f++){
+                single[0] = step * dt + random.nextGaussian() * 0.1;
+                single[1] = f * 0.01 + random.nextGaussian() * 0.1;
+                z[2 * f] = single[0];
+                z[2 * f + 1] = single[1];
+                filters[f].move(F, Q);
+                filters[f].measure(H, R, single);
+            }
+            bank.updateAll(H, R, z);
+        }
+
+        double[] expected = new double[9];
+        double[] actual = new double[9];
+        for(int f = 0; f < count; f++){
+            filters[f].getState(expected);
+            bank.getState(f, actual);
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "State " + i + " of filter " + f + " differs");
+            }
+            filters[f].getCovariance(expected);
+            bank.getCovariance(f, actual);
+            for(int i = 0; i < 9; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "Covariance " + i + " of filter " + f + " differs");
+            }
+        }
+    }
+
+    @Test
+    public void testRejectsEmptyMeasurement(){
+        KalmanFilterBank bank = new KalmanFilterBank(4, 3, 1);
+        assertThrows(NotStrictlyPositiveException.class, () -> bank.updateAll(new double[0], new double[0], new int[0], new double[0]));
+        assertThrows(DimensionMismatchException.class, () -> bank.updateAll(new double[6], new double[4], new double[8]));
+    }
+
+}
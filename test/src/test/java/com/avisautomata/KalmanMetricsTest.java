@@ -0,0 +1,182 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularMatrixException;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KalmanMetricsTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    @Test
+    public void testHistogramPercentiles(){
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long value = 1; value <= 100_000; value++){
+            histogram.record(value);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 1e-9);
+        for(double percentile : new double[]{1, 50, 90, 99, 99.9}){
+            double exact = percentile * 1000;
+            long reported = histogram.getValueAtPercentile(percentile);
+            assertTrue(reported >= exact && reported <= exact * (1 + 1.0 / 64), percentile + "% was " + reported);
+        }
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+
+        //Small values get a bucket each, huge ones are clamped
+        LatencyHistogram small = new LatencyHistogram();
+        small.record(3);
+        small.record(3);
+        small.record(7);
+        small.record(Long.MAX_VALUE);
+        assertEquals(3, small.getValueAtPercentile(50));
+        assertEquals(7, small.getValueAtPercentile(75));
+        assertEquals(LatencyHistogram.MAX_VALUE, small.getMax());
+
+        histogram.add(small);
+        assertEquals(100_004, histogram.getCount());
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+
+    //Every update mode must report the same innovation statistics, up to how each one rounds P, and they must match
+    //y^T * S^-1 * y worked out by hand
+    @Test
+    public void testMultivariateStatisticsMatchAcrossModes(){
+        RealMatrix F = MatrixUtils.createRealMatrix(new double[][]{{1, 0.01}, {0, 1}});
+        RealMatrix Q = MatrixUtils.createRealDiagonalMatrix(new double[]{movementVariance, movementVariance});
+        RealMatrix H = MatrixUtils.createRealIdentityMatrix(2);
+        RealMatrix R = MatrixUtils.createRealDiagonalMatrix(new double[]{measureVariance, 4 * measureVariance});
+
+        KalmanMetrics[] metrics = new KalmanMetrics[3];
+        UpdateMode[] modes = {UpdateMode.INVERSE, UpdateMode.JOSEPH, UpdateMode.SEQUENTIAL};
+        for(int i = 0; i < 3; i++){
+            MultivariateKalmanFilter filter = new MultivariateKalmanFilter(2);
+            filter.setUpdateMode(modes[i]);
+            metrics[i] = new KalmanMetrics();
+            metrics[i].setOutlierThreshold(9.21);
+            filter.setMetrics(metrics[i]);
+
+            ApacheRandom random = new ApacheRandom();
+            random.setSeed(3);
+            for(int step = 0; step < 500; step++){
+                filter.move(F, Q);
+                RealVector z = MatrixUtils.createRealVector(new double[]{Math.sin(step * 0.01) + random.nextGaussian(), random.nextGaussian()});
+                filter.measure(H, R, z);
+            }
+            assertEquals(500, metrics[i].getPredictCount());
+            assertEquals(500, metrics[i].getUpdateCount());
+            assertEquals(0, metrics[i].getFailedUpdates());
+            assertTrue(metrics[i].getUpdateP99Nanos() <= metrics[i].getUpdateMaxNanos());
+        }
+
+        for(int i = 1; i < 3; i++){
+            assertEquals(metrics[0].getMeanNis(), metrics[i].getMeanNis(), 1e-4 * metrics[0].getMeanNis());
+            assertEquals(metrics[0].getMeanInnovation(), metrics[i].getMeanInnovation(), 1e-4);
+            //A NIS right at the gate can land either side
+            assertEquals(metrics[0].getOutliers(), metrics[i].getOutliers(), 1);
+        }
+        assertTrue(metrics[0].getOutliers() > 0, "Unit noise against R = 0.01 should trip the gate");
+        assertEquals(metrics[0].getLastConditionNumber(), metrics[1].getLastConditionNumber(), 1e-6);
+        assertTrue(Double.isNaN(metrics[2].getLastConditionNumber()));
+
+        //One step by hand from the default P = I
+        MultivariateKalmanFilter filter = new MultivariateKalmanFilter(2);
+        KalmanMetrics single = new KalmanMetrics();
+        filter.setMetrics(single);
+        RealVector z = MatrixUtils.createRealVector(new double[]{1, 2});
+        filter.measure(H, R, z);
+        RealMatrix S = MatrixUtils.createRealIdentityMatrix(2).add(R);
+        assertEquals(z.dotProduct(MatrixUtils.inverse(S).operate(z)), single.getMeanNis(), 1e-12);
+        assertEquals(z.getNorm(), single.getMaxInnovation(), 1e-12);
+        assertEquals(1.04 / 1.01, single.getLastConditionNumber(), 1e-12);
+    }
+
+    @Test
+    public void testFailedUpdatesAreCounted(){
+        MultivariateKalmanFilter filter = new MultivariateKalmanFilter(2);
+        KalmanMetrics metrics = new KalmanMetrics();
+        filter.setMetrics(metrics);
+
+        //S = H * P * H^T + R = 0
+        RealMatrix H = MatrixUtils.createRealMatrix(2, 2);
+        RealMatrix R = MatrixUtils.createRealMatrix(2, 2);
+        assertThrows(SingularMatrixException.class, () -> filter.measure(H, R, MatrixUtils.createRealVector(new double[2])));
+        assertEquals(1, metrics.getFailedUpdates());
+        assertEquals(0, metrics.getUpdateCount());
+    }
+
+    @Test
+    public void testUnivariate(){
+        UnivariateKalmanFilter filter = new UnivariateKalmanFilter(0, 1);
+        assertNull(filter.getMetrics());
+        KalmanMetrics metrics = new KalmanMetrics();
+        filter.setMetrics(metrics);
+
+        filter.move(0, movementVariance);
+        filter.measure(0.5, measureVariance);
+        assertEquals(0.25 / (1 + movementVariance + measureVariance), metrics.getMeanNis(), 1e-12);
+        assertEquals(0.5, metrics.getMaxInnovation());
+        assertEquals(1, metrics.getPredictCount());
+        assertEquals(1, metrics.getUpdateCount());
+
+        //Steady state still knows S
+        filter.setSteadyState(movementVariance, measureVariance);
+        metrics.reset();
+        filter.move(0, movementVariance);
+        double predicted = filter.getVariance();
+        double y = 0.1 - filter.getMean();
+        filter.measure(0.1, measureVariance);
+        assertEquals(y * y / (predicted + measureVariance), metrics.getMeanNis(), 1e-12);
+        assertTrue(Double.isNaN(metrics.getLastConditionNumber()));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        UnivariateKalmanFilter filter = new UnivariateKalmanFilter(0, 1);
+        KalmanMetrics metrics = new KalmanMetrics();
+        filter.setMetrics(metrics);
+        for(int step = 0; step < 10; step++){
+            filter.move(0.01, movementVariance);
+            filter.measure(step * 0.01, measureVariance);
+        }
+
+        Map<String, Double> values = new HashMap<>();
+        metrics.report(values::put);
+        assertEquals(10, values.get("update.count"));
+        assertEquals(metrics.getMeanNis(), values.get("nis.mean"));
+
+        ObjectName name = metrics.register("test-export");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertEquals(10L, server.getAttribute(name, "PredictCount"));
+            assertEquals(metrics.getMeanNis(), server.getAttribute(name, "MeanNis"));
+            //The reset lands on the filter's thread at its next record
+            server.invoke(name, "reset", null, null);
+            assertEquals(10, metrics.getUpdateCount());
+            filter.move(0.01, movementVariance);
+            filter.measure(0.1, measureVariance);
+            assertEquals(1, metrics.getPredictCount());
+            assertEquals(1, metrics.getUpdateCount());
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+package com.avisautomata;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+//Runs many noisy trials of an ArrayMultivariateKalmanFilter against one ground truth axis and folds every step into
+//running RMSE, NEES and NIS sums. Nothing is kept per step.
+//
+//Trials are grouped into fixed blocks of BLOCK trials. A block always runs on one thread in trial order and the block
+//results are merged in block order, so the sums are added up in the same order, and come out bit for bit the same,
+//whatever the pool size. Each trial draws its noise from its own ApacheRandom seeded from a SplittableRandom stream.
+public class MonteCarloEvaluator {
+
+    private static final int BLOCK = 16;
+
+    private final Supplier<TrajectoryCursor> trajectory;
+    private final GroundTruthGenerator.Axis axis;
+    private final Supplier<MotionModel> model;
+    private final int n;
+    private final int m;
+    private final double[] H;
+    private final double[] R;
+    private final double[] noise;
+    private final long seed;
+
+    private UpdateMode updateMode = UpdateMode.INVERSE;
+
+    //The state is the leading n of [value, velocity, acceleration] on the axis, so n is 1 to 3.
+    //H is m x n and R is m x m. Each trial gets a fresh trajectory and model from the suppliers.
+    public MonteCarloEvaluator(Supplier<TrajectoryCursor> trajectory, GroundTruthGenerator.Axis axis, Supplier<MotionModel> model,
+                               double[] H, double[] R, long seed){
+        this.trajectory = trajectory;
+        this.axis = axis;
+        this.model = model;
+        this.n = model.get().getDimension();
+        this.m = (int) Math.round(Math.sqrt(R.length));
+        if(n > 3){
+            throw new IllegalArgumentException("A single axis only has 3 states, the model has " + n);
+        }
+        if(m * m != R.length || H.length != m * n){
+            throw new IllegalArgumentException("H is " + H.length + " entries and R is " + R.length + " for " + n + " states");
+        }
+        this.H = H.clone();
+        this.R = R.clone();
+        this.seed = seed;
+
+        //Measurement noise is drawn as L * w with R = L * L^T
+        this.noise = R.clone();
+        DenseMath.cholesky(noise, m);
+    }
+
+    public void setUpdateMode(UpdateMode updateMode){
+        this.updateMode = updateMode;
+    }
+
+    public Statistics run(int trials){
+        return run(trials, ForkJoinPool.commonPool());
+    }
+
+    public Statistics run(int trials, ForkJoinPool pool){
+        //Seeds are drawn in trial order up front so trial i always sees the same noise
+        SplittableRandom master = new SplittableRandom(seed);
+        long[] seeds = new long[trials];
+        for(int i = 0; i < trials; i++){
+            seeds[i] = master.nextLong();
+        }
+
+        int blocks = (trials + BLOCK - 1) / BLOCK;
+        Statistics[] results = new Statistics[blocks];
+        pool.invoke(new Blocks(seeds, results, 0, blocks));
+
+        Statistics total = new Statistics(n);
+        for(Statistics result : results){
+            total.merge(result);
+        }
+        return total;
+    }
+
+    private class Blocks extends RecursiveAction {
+
+        private final long[] seeds;
+        private final Statistics[] results;
+        private final int from;
+        private final int to;
+
+        private Blocks(long[] seeds, Statistics[] results, int from, int to){
+            this.seeds = seeds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1){
+                results[from] = runBlock(seeds, from * BLOCK, Math.min(seeds.length, (from + 1) * BLOCK));
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            ForkJoinTask.invokeAll(new Blocks(seeds, results, from, middle), new Blocks(seeds, results, middle, to));
+        }
+    }
+
+    private Statistics runBlock(long[] seeds, int from, int to){
+        Statistics statistics = new Statistics(n);
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(n, m);
+        filter.setUpdateMode(updateMode);
+        filter.setInnovationStatistics(true);
+
+        double[] initialState = new double[n];
+        double[] initialCovariance = new double[n * n];
+        for(int i = 0; i < n; i++){
+            initialCovariance[i * n + i] = 1;
+        }
+
+        double[] truth = new double[n];
+        double[] z = new double[m];
+        double[] w = new double[m];
+        double[] state = new double[n];
+        double[] error = new double[n];
+        double[] whitened = new double[n];
+        double[] covariance = new double[n * n];
+        ApacheRandom random = new ApacheRandom();
+
+        for(int trial = from; trial < to; trial++){
+            random.setSeed(seeds[trial]);
+            filter.setState(initialState, initialCovariance);
+            MotionModel motion = model.get();
+            TrajectoryCursor cursor = trajectory.get();
+
+            double lastTime = 0;
+            while(cursor.advance()){
+                truth[0] = cursor.value(axis);
+                if(n > 1){
+                    truth[1] = cursor.velocity(axis);
+                }
+                if(n > 2){
+                    truth[2] = cursor.acceleration(axis);
+                }
+
+                //z = H * truth + L * w
+                for(int i = 0; i < m; i++){
+                    w[i] = random.nextGaussian();
+                }
+                DenseMath.multiplyVector(H, truth, z, m, n);
+                DenseMath.multiplyVectorAdd(noise, w, z, m, m);
+
+                filter.predict(motion, cursor.time() - lastTime);
+                filter.measure(H, R, z);
+                lastTime = cursor.time();
+
+                filter.getState(state);
+                filter.getCovariance(covariance);
+                for(int i = 0; i < n; i++){
+                    error[i] = state[i] - truth[i];
+                }
+                statistics.add(error, nees(covariance, error, whitened), filter.getNormalizedInnovationSquared());
+            }
+            statistics.trials++;
+        }
+        return statistics;
+    }
+
+    //e^T * P^-1 * e = |L^-1 * e|^2, P is destroyed
+    private double nees(double[] P, double[] e, double[] whitened){
+        DenseMath.cholesky(P, n);
+        double squared = 0;
+        for(int i = 0; i < n; i++){
+            double sum = e[i];
+            for(int j = 0; j < i; j++){
+                sum -= P[i * n + j] * whitened[j];
+            }
+            whitened[i] = sum / P[i * n + i];
+            squared += whitened[i] * whitened[i];
+        }
+        return squared;
+    }
+
+    //Running sums over every step of every trial. Two sets of sums merge by adding, so they can be built in pieces.
+    public static class Statistics {
+
+        private final int n;
+        private final double[] squaredError;
+        private long trials;
+        private long steps;
+        private double nees;
+        private double neesSquared;
+        private double nis;
+        private double nisSquared;
+
+        Statistics(int n){
+            this.n = n;
+            this.squaredError = new double[n];
+        }
+
+        private void add(double[] error, double nees, double nis){
+            for(int i = 0; i < n; i++){
+                squaredError[i] += error[i] * error[i];
+            }
+            this.nees += nees;
+            this.neesSquared += nees * nees;
+            this.nis += nis;
+            this.nisSquared += nis * nis;
+            steps++;
+        }
+
+        public void merge(Statistics other){
+            for(int i = 0; i < n; i++){
+                squaredError[i] += other.squaredError[i];
+            }
+            trials += other.trials;
+            steps += other.steps;
+            nees += other.nees;
+            neesSquared += other.neesSquared;
+            nis += other.nis;
+            nisSquared += other.nisSquared;
+        }
+
+        public long getTrials(){
+            return trials;
+        }
+
+        public long getSteps(){
+            return steps;
+        }
+
+        //Root mean squared error of state i over every step of every trial
+        public double getRmse(int i){
+            return Math.sqrt(squaredError[i] / steps);
+        }
+
+        //Averages n for a consistent filter
+        public double getMeanNees(){
+            return nees / steps;
+        }
+
+        public double getNeesVariance(){
+            double mean = getMeanNees();
+            return neesSquared / steps - mean * mean;
+        }
+
+        //Averages the measurement size for a consistent filter
+        public double getMeanNis(){
+            return nis / steps;
+        }
+
+        public double getNisVariance(){
+            double mean = getMeanNis();
+            return nisSquared / steps - mean * mean;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Statistics other)){
+                return false;
+            }
+            return n == other.n && trials == other.trials && steps == other.steps
+                    && Arrays.equals(squaredError, other.squaredError)
+                    && Double.compare(nees, other.nees) == 0 && Double.compare(neesSquared, other.neesSquared) == 0
+                    && Double.compare(nis, other.nis) == 0 && Double.compare(nisSquared, other.nisSquared) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(squaredError) + Long.hashCode(steps);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder rmse = new StringBuilder();
+            for(int i = 0; i < n; i++){
+                rmse.append(i == 0 ? "" : ", ").append(getRmse(i));
+            }
+            return "Statistics{trials=" + trials + ", steps=" + steps + ", rmse=[" + rmse + "], nees=" + getMeanNees() + ", nis=" + getMeanNis() + "}";
+        }
+    }
+
+}
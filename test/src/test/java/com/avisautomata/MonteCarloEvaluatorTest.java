@@ -0,0 +1,49 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MonteCarloEvaluatorTest {
+
+    private static final long seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    private static MonteCarloEvaluator evaluator(){
+        return new MonteCarloEvaluator(GroundTruthGenerator::xBackAndForthCursor, GroundTruthGenerator.Axis.X,
+                () -> new ConstantAccelerationModel(1, movementVariance),
+                new double[]{1, 0, 0}, new double[]{measureVariance}, seed);
+    }
+
+    @Test
+    public void testSameResultForAnyThreadCount(){
+        MonteCarloEvaluator evaluator = evaluator();
+        int trials = 100;
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(4);
+        MonteCarloEvaluator.Statistics expected = evaluator.run(trials, single);
+        MonteCarloEvaluator.Statistics actual = evaluator.run(trials, many);
+        single.shutdown();
+        many.shutdown();
+
+        assertEquals(expected, actual);
+        assertEquals(trials, actual.getTrials());
+        assertEquals(trials * (long) GroundTruthGenerator.xBackAndForth().size(), actual.getSteps());
+    }
+
+    @Test
+    public void testStatistics(){
+        MonteCarloEvaluator.Statistics statistics = evaluator().run(200);
+
+        assertTrue(statistics.getRmse(0) < Math.sqrt(measureVariance), "Filter did no better than the raw measurement: " + statistics);
+        //Truth is piecewise constant acceleration, so with a generous Q the filter is at worst conservative
+        assertTrue(statistics.getMeanNis() > 0.5 && statistics.getMeanNis() < 1.5, "NIS should average about 1: " + statistics);
+        assertTrue(statistics.getMeanNees() < 3 * 1.5, "NEES should not average much above 3: " + statistics);
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MotionModelTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    private static class CountingModel extends ConstantVelocityModel {
+        private int fills;
+
+        CountingModel(){
+            super(1, movementVariance, 0.001, 8);
+        }
+
+        @Override
+        protected void fill(double dt, double[] F, double[] Q) {
+            fills++;
+            super.fill(dt, F, Q);
+        }
+    }
+
+    @Test
+    public void testConstantAccelerationMatrices(){
+        ConstantAccelerationModel model = new ConstantAccelerationModel(2, movementVariance);
+        double dt = 0.02;
+        model.prepare(dt);
+
+        double[] F = model.getF();
+        double[] Q = model.getQ();
+        double[] expectedBlock = {1, dt, dt * dt / 2, 0, 1, dt, 0, 0, 1};
+
+        for(int axis = 0; axis < 2; axis++){
+            for(int i = 0; i < 3; i++){
+                for(int j = 0; j < 3; j++){
+                    int index = (axis * 3 + i) * 6 + axis * 3 + j;
+                    assertTrue(Math.abs(F[index] - expectedBlock[i * 3 + j]) < 1e-12, "F differs at " + i + "," + j);
+                }
+            }
+        }
+        //No coupling between the axes
+        assertTrue(F[3] == 0 && Q[3] == 0 && F[3 * 6] == 0 && Q[3 * 6] == 0, "Axes are coupled");
+        assertTrue(Math.abs(Q[2 * 6 + 2] - movementVariance) < 1e-12, "Acceleration noise is wrong");
+        assertTrue(Math.abs(Q[0] - movementVariance * Math.pow(dt, 4) / 4) < 1e-12, "Position noise is wrong");
+    }
+
+    @Test
+    public void testCachesByQuantizedDt(){
+        CountingModel model = new CountingModel();
+
+        model.prepare(0.0101);
+        model.prepare(0.0099);
+        model.prepare(0.0102);
+        assertTrue(model.fills == 1, "Expected one fill for the same quantized dt, got " + model.fills);
+        assertTrue(Math.abs(model.getF()[1] - 0.01) < 1e-12, "dt was not quantized");
+
+        model.prepare(0.02);
+        model.prepare(0.0101);
+        assertTrue(model.fills == 2, "Expected the first dt to still be cached, got " + model.fills + " fills");
+    }
+
+    @Test
+    public void testVariableTimesteps(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        ConstantAccelerationModel model = new ConstantAccelerationModel(1, movementVariance, 0.001, 64);
+        ArrayMultivariateKalmanFilter filter = new ArrayMultivariateKalmanFilter(3, 1);
+        filter.setUpdateMode(UpdateMode.SEQUENTIAL);
+
+        double[] positionH = {1, 0, 0};
+        double[] velocityH = {0, 1, 0};
+        double[] R = {measureVariance};
+        double[] z = new double[1];
+        double[] state = new double[3];
+
+        //Irregular arrivals, positions rarely and velocities often, like testVariableMeasurements
+        double lastTime = 0;
+        for(int i = 1; i < truths.size(); i++){
+            GroundTruthGenerator.Moment truth = truths.get(i);
+            double time = truths.get(i - 1).time() + random.nextDouble() * (truth.time() - truths.get(i - 1).time());
+
+            filter.predict(model, time - lastTime);
+            if(random.nextDouble() > 0.9){
+                z[0] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+                filter.measure(positionH, R, z);
+            } else {
+                z[0] = truth.velocity() + random.nextGaussian() * Math.sqrt(measureVariance);
+                filter.measure(velocityH, R, z);
+            }
+            lastTime = time;
+
+            filter.getState(state);
+            if(time > 1.0){
+                assertTrue(Math.abs(state[1] - truth.velocity()) < 0.25, "Velocity was off by more than 0.25 at " + time);
+            }
+        }
+        assertTrue(Math.abs(state[0] - truths.getLast().value()) < 0.25, "Position was off by " + Math.abs(state[0] - truths.getLast().value()));
+    }
+
+    @Test
+    public void testMatricesNeedPrepare(){
+        ConstantVelocityModel model = new ConstantVelocityModel(1, movementVariance);
+        assertThrows(IllegalStateException.class, model::getF);
+        assertThrows(IllegalStateException.class, model::getQ);
+        model.prepare(0.1);
+        assertTrue(Math.abs(model.getF()[1] - 0.1) < 1e-12);
+    }
+
+}
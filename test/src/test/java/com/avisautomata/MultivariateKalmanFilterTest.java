@@ -90,6 +90,151 @@ public class MultivariateKalmanFilterTest {
         }
     }
 
+    @Test
+    public void testJosephUpdateThreeStates(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        MultivariateKalmanFilter filter = new MultivariateKalmanFilter(3);
+        filter.setUpdateMode(UpdateMode.JOSEPH);
+        ArrayMultivariateKalmanFilter reference = new ArrayMultivariateKalmanFilter(3, 1);
+
+        RealMatrix F = MatrixUtils.createRealIdentityMatrix(3);
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0, 0}, {0, movementVariance, 0}, {0, 0, movementVariance}});
+        RealMatrix H = MatrixUtils.createRowRealMatrix(new double[]{1, 0, 0});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{measureVariance}});
+
+        double[] state = new double[3];
+        for(GroundTruthGenerator.Moment truth : truths){
+            RealVector z = MatrixUtils.createRealVector(new double[]{new NormalDistribution(random, truth.value(), measureVariance).sample()});
+
+            filter.move(F, Q);
+            filter.measure(H, R, z);
+            reference.move(F, Q);
+            reference.measure(H, R, z);
+
+            MultivariateNormalDistribution estimate = filter.getEstimate();
+            reference.getState(state);
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(estimate.getMeans()[i] - state[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+            }
+        }
+    }
+
+    //Every entry of S is far below an absolute positivity cutoff, but S is perfectly well conditioned
+    @Test
+    public void testJosephWithTinyVariances(){
+        double variance = 1e-14;
+        RealMatrix F = MatrixUtils.createRealIdentityMatrix(1);
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{variance}});
+        RealMatrix H = MatrixUtils.createRealMatrix(new double[][]{{1}, {1}});
+        //Off-diagonal R sends SEQUENTIAL down the Joseph path too
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{2 * variance, variance}, {variance, 2 * variance}});
+
+        MultivariateKalmanFilter inverse = new MultivariateKalmanFilter(1);
+        MultivariateKalmanFilter joseph = new MultivariateKalmanFilter(1);
+        joseph.setUpdateMode(UpdateMode.JOSEPH);
+        MultivariateKalmanFilter sequential = new MultivariateKalmanFilter(1);
+        sequential.setUpdateMode(UpdateMode.SEQUENTIAL);
+        for(MultivariateKalmanFilter filter : List.of(inverse, joseph, sequential)){
+            filter.setState(new double[]{0}, new double[]{variance});
+        }
+
+        for(int step = 0; step < 20; step++){
+            RealVector z = MatrixUtils.createRealVector(new double[]{
+                    random.nextGaussian() * 1e-7, random.nextGaussian() * 1e-7});
+            for(MultivariateKalmanFilter filter : List.of(inverse, joseph, sequential)){
+                filter.move(F, Q);
+                filter.measure(H, R, z);
+            }
+            double expected = inverse.getEstimate().getMeans()[0];
+            double tolerance = 1e-6 * Math.abs(expected) + 1e-15;
+            assertTrue(Math.abs(joseph.getEstimate().getMeans()[0] - expected) < tolerance, "Joseph differs at step " + step);
+            assertTrue(Math.abs(sequential.getEstimate().getMeans()[0] - expected) < tolerance, "Sequential differs at step " + step);
+        }
+    }
+
+    @Test
+    public void testSequentialMatchesJoseph(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        MultivariateKalmanFilter joseph = new MultivariateKalmanFilter(3);
+        joseph.setUpdateMode(UpdateMode.JOSEPH);
+        MultivariateKalmanFilter sequential = new MultivariateKalmanFilter(3);
+        sequential.setUpdateMode(UpdateMode.SEQUENTIAL);
+
+        RealMatrix F = MatrixUtils.createRealIdentityMatrix(3);
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0, 0}, {0, movementVariance, 0}, {0, 0, movementVariance}});
+        RealMatrix H = MatrixUtils.createRealMatrix(new double[][]{{1, 0, 0}, {0, 1, 1}});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{measureVariance, 0}, {0, measureVariance}});
+
+        for(GroundTruthGenerator.Moment truth : truths){
+            RealVector z = MatrixUtils.createRealVector(new double[]{
+                    new NormalDistribution(random, truth.value(), measureVariance).sample(),
+                    new NormalDistribution(random, truth.velocity() + truth.acceleration(), measureVariance).sample()
+            });
+
+            joseph.move(F, Q);
+            joseph.measure(H, R, z);
+            sequential.move(F, Q);
+            sequential.measure(H, R, z);
+
+            double[] expected = joseph.getEstimate().getMeans();
+            double[] actual = sequential.getEstimate().getMeans();
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+            }
+        }
+    }
+
+    //Constant acceleration F is neither the identity nor symmetric, so x' = F * x and P' = F * P * F^T only agree with
+    //each other, and every mode only agrees with the array engine, if all of them apply F and H the same way round
+    @Test
+    public void testModesAgreeWithNonSymmetricF(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        UpdateMode[] modes = UpdateMode.values();
+        MultivariateKalmanFilter[] filters = new MultivariateKalmanFilter[modes.length];
+        for(int i = 0; i < modes.length; i++){
+            filters[i] = new MultivariateKalmanFilter(MatrixUtils.createRealVector(new double[]{1, -1, 0.5}));
+            filters[i].setUpdateMode(modes[i]);
+        }
+        ArrayMultivariateKalmanFilter reference = new ArrayMultivariateKalmanFilter(new double[]{1, -1, 0.5}, 2);
+
+        double dt = 0.1;
+        RealMatrix F = MatrixUtils.createRealMatrix(new double[][]{{1, dt, 0.5 * dt * dt}, {0, 1, dt}, {0, 0, 1}});
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0, 0}, {0, movementVariance, 0}, {0, 0, movementVariance}});
+        RealMatrix H = MatrixUtils.createRealMatrix(new double[][]{{1, 0, 0}, {0, 1, 0}});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{measureVariance, 0}, {0, measureVariance}});
+
+        double[] expectedX = new double[3];
+        double[] expectedP = new double[9];
+        double[] actualX = new double[3];
+        double[] actualP = new double[9];
+        for(GroundTruthGenerator.Moment truth : truths){
+            RealVector z = MatrixUtils.createRealVector(new double[]{
+                    new NormalDistribution(random, truth.value(), measureVariance).sample(),
+                    new NormalDistribution(random, truth.velocity(), measureVariance).sample()
+            });
+            reference.move(F, Q);
+            reference.measure(H, R, z);
+            reference.getState(expectedX);
+            reference.getCovariance(expectedP);
+
+            for(int i = 0; i < modes.length; i++){
+                filters[i].move(F, Q);
+                filters[i].measure(H, R, z);
+                filters[i].getState(actualX);
+                filters[i].getCovariance(actualP);
+                for(int j = 0; j < 3; j++){
+                    assertTrue(Math.abs(expectedX[j] - actualX[j]) < 1e-9, modes[i] + " state " + j + " differs at " + truth.time());
+                }
+                for(int j = 0; j < 9; j++){
+                    assertTrue(Math.abs(expectedP[j] - actualP[j]) < 1e-9, modes[i] + " covariance " + j + " differs at " + truth.time());
+                }
+            }
+        }
+    }
+
     private record HZ(RealMatrix H, RealVector z){}
 
     private record VariableMeasurement(Double time, Double position, Double velocity, Double acceleration){}
@@ -193,4 +338,73 @@ public class MultivariateKalmanFilterTest {
         return measurements.stream().sorted(Comparator.comparing(VariableMeasurement::time)).toList();
     }
 
+    @Test
+    public void testSteadyStateDetection(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        MultivariateKalmanFilter full = new MultivariateKalmanFilter(3);
+        full.setUpdateMode(UpdateMode.JOSEPH);
+        MultivariateKalmanFilter steady = new MultivariateKalmanFilter(3);
+        steady.setUpdateMode(UpdateMode.JOSEPH);
+        steady.setSteadyStateTolerance(1e-12);
+
+        RealMatrix F = MatrixUtils.createRealIdentityMatrix(3);
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0, 0}, {0, movementVariance, 0}, {0, 0, movementVariance}});
+        //Every state has to be observed for P to settle with F = I
+        RealMatrix H = MatrixUtils.createRealIdentityMatrix(3);
+        RealMatrix R = MatrixUtils.createRealDiagonalMatrix(new double[]{measureVariance, measureVariance, measureVariance});
+
+        for(GroundTruthGenerator.Moment truth : truths){
+            RealVector z = MatrixUtils.createRealVector(new double[]{
+                    new NormalDistribution(random, truth.value(), measureVariance).sample(),
+                    new NormalDistribution(random, truth.velocity(), measureVariance).sample(),
+                    new NormalDistribution(random, truth.acceleration(), measureVariance).sample()
+            });
+
+            full.move(F, Q);
+            full.measure(H, R, z);
+            steady.move(F, Q);
+            steady.measure(H, R, z);
+
+            double[] expected = full.getEstimate().getMeans();
+            double[] actual = steady.getEstimate().getMeans();
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "State " + i + " differs at " + truth.time());
+            }
+        }
+        assertTrue(steady.isSteadyState(), "Gain was never frozen");
+    }
+
+    @Test
+    public void testEstimateIsCachedUntilStateChanges(){
+        MultivariateKalmanFilter filter = new MultivariateKalmanFilter(2);
+        filter.setUpdateMode(UpdateMode.JOSEPH);
+        RealMatrix F = MatrixUtils.createRealMatrix(new double[][]{{1, 0.01}, {0, 1}});
+        RealMatrix Q = MatrixUtils.createRealMatrix(new double[][]{{movementVariance, 0}, {0, movementVariance}});
+        RealMatrix H = MatrixUtils.createRowRealMatrix(new double[]{1, 0});
+        RealMatrix R = MatrixUtils.createRealMatrix(new double[][]{{measureVariance}});
+
+        MultivariateNormalDistribution first = filter.getEstimate();
+        assertTrue(first == filter.getEstimate(), "Estimate was rebuilt without a change of state");
+
+        filter.move(F, Q);
+        MultivariateNormalDistribution moved = filter.getEstimate();
+        assertTrue(first != moved, "Estimate was not rebuilt after move()");
+
+        filter.measure(H, R, MatrixUtils.createRealVector(new double[]{0.5}));
+        MultivariateNormalDistribution measured = filter.getEstimate();
+        assertTrue(moved != measured, "Estimate was not rebuilt after measure()");
+
+        double[] state = new double[2];
+        double[] covariance = new double[4];
+        filter.getState(state);
+        filter.getCovariance(covariance);
+        for(int i = 0; i < 2; i++){
+            assertTrue(state[i] == measured.getMeans()[i], "State " + i + " differs from the estimate");
+            for(int j = 0; j < 2; j++){
+                assertTrue(covariance[i * 2 + j] == measured.getCovariances().getEntry(i, j), "Covariance " + i + "," + j + " differs from the estimate");
+            }
+        }
+    }
+
 }
@@ -0,0 +1,90 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NoiseTunerTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+
+    private static double[] times;
+    private static double[] measurements;
+
+    //One noisy pass over xBackAndForth, loaded once and shared read-only by every candidate
+    @BeforeAll
+    protected static void loadMeasurements(){
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(seed);
+
+        int size = GroundTruthGenerator.xBackAndForth().size();
+        times = new double[size];
+        measurements = new double[size];
+        TrajectoryCursor cursor = GroundTruthGenerator.xBackAndForthCursor();
+        for(int i = 0; cursor.advance(); i++){
+            times[i] = cursor.time();
+            measurements[i] = cursor.value(GroundTruthGenerator.Axis.X) + random.nextGaussian() * Math.sqrt(measureVariance);
+        }
+    }
+
+    private static NoiseTuner tuner(){
+        return new NoiseTuner(new double[3], 0, times, measurements, new double[]{1, 0, 0}, q -> new ConstantAccelerationModel(1, q));
+    }
+
+    @Test
+    public void testOptimizeFindsMeasurementVariance(){
+        NoiseTuner.Result result = tuner().optimize(1, 1);
+
+        assertTrue(result.measurementVariance() > 0.5 * measureVariance && result.measurementVariance() < 2 * measureVariance,
+                "Expected R near " + measureVariance + ", got " + result);
+        assertTrue(result.negativeLogLikelihood() <= tuner().score(0.01, measureVariance), "Optimum is worse than the hand-tuned values: " + result);
+    }
+
+    @Test
+    public void testGridMatchesExhaustiveSearch(){
+        double[] processVariances = {1e-4, 1e-3, 1e-2, 1e-1, 1};
+        double[] measurementVariances = {1e-3, 3e-3, 1e-2, 3e-2, 1e-1};
+        NoiseTuner tuner = tuner();
+
+        double best = Double.POSITIVE_INFINITY;
+        double bestQ = 0;
+        double bestR = 0;
+        for(double q : processVariances){
+            for(double r : measurementVariances){
+                double score = tuner.score(q, r);
+                if(score < best){
+                    best = score;
+                    bestQ = q;
+                    bestR = r;
+                }
+            }
+        }
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool many = new ForkJoinPool(4);
+        tuner.setPool(single);
+        NoiseTuner.Result sequential = tuner.grid(processVariances, measurementVariances);
+        tuner.setPool(many);
+        NoiseTuner.Result parallel = tuner.grid(processVariances, measurementVariances);
+        single.shutdown();
+        many.shutdown();
+
+        assertEquals(new NoiseTuner.Result(bestQ, bestR, best), sequential);
+        assertEquals(sequential, parallel);
+    }
+
+    @Test
+    public void testCutoffOnlyDropsLosers(){
+        NoiseTuner tuner = tuner();
+        double score = tuner.score(0.01, measureVariance);
+
+        assertEquals(score, tuner.score(0.01, measureVariance, score + 1e-9));
+        assertEquals(Double.POSITIVE_INFINITY, tuner.score(0.01, measureVariance, score - 1e-9));
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OutOfSequenceKalmanFilterTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    private static final double[] positionH = {1, 0, 0};
+    private static final double[] velocityH = {0, 1, 0};
+    private static final double[] R = {measureVariance};
+
+    private record Measurement(double time, double arrival, boolean position, double value){}
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    //Velocity arrives straight away, camera positions arrive up to 5 steps late
+    private List<Measurement> createMeasurements(List<GroundTruthGenerator.Moment> truths){
+        List<Measurement> measurements = new ArrayList<>();
+        for(GroundTruthGenerator.Moment truth : truths){
+            measurements.add(new Measurement(truth.time(), truth.time(), false, truth.velocity() + random.nextGaussian() * Math.sqrt(measureVariance)));
+            if(random.nextDouble() > 0.9){
+                double delay = random.nextDouble() * 0.05;
+                measurements.add(new Measurement(truth.time() - 0.001, truth.time() + delay, true, truth.value() + random.nextGaussian() * Math.sqrt(measureVariance)));
+            }
+        }
+        return measurements;
+    }
+
+    @Test
+    public void testLateMeasurementsMatchInOrder(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+        List<Measurement> measurements = createMeasurements(truths);
+
+        OutOfSequenceKalmanFilter late = new OutOfSequenceKalmanFilter(new double[3], 0, 1, new ConstantAccelerationModel(1, movementVariance), 32);
+        OutOfSequenceKalmanFilter ordered = new OutOfSequenceKalmanFilter(new double[3], 0, 1, new ConstantAccelerationModel(1, movementVariance), 32);
+
+        double[] z = new double[1];
+        for(Measurement m : measurements.stream().sorted(Comparator.comparing(Measurement::arrival)).toList()){
+            z[0] = m.value;
+            assertTrue(late.measure(m.time, m.position ? positionH : velocityH, R, z), "Rejected measurement at " + m.time);
+        }
+        for(Measurement m : measurements.stream().sorted(Comparator.comparing(Measurement::time)).toList()){
+            z[0] = m.value;
+            ordered.measure(m.time, m.position ? positionH : velocityH, R, z);
+        }
+
+        double[] expected = new double[3];
+        double[] actual = new double[3];
+        ordered.getState(expected);
+        late.getState(actual);
+        for(int i = 0; i < 3; i++){
+            assertTrue(Math.abs(expected[i] - actual[i]) < 1e-9, "State " + i + " differs by " + Math.abs(expected[i] - actual[i]));
+        }
+        assertTrue(Math.abs(actual[0] - truths.getLast().value()) < 0.25, "Position was off by " + Math.abs(actual[0] - truths.getLast().value()));
+    }
+
+    @Test
+    public void testRejectsMeasurementsOlderThanRing(){
+        OutOfSequenceKalmanFilter filter = new OutOfSequenceKalmanFilter(new double[3], 0, 1, new ConstantAccelerationModel(1, movementVariance), 4);
+        double[] z = {0};
+
+        for(int i = 1; i <= 10; i++){
+            assertTrue(filter.measure(i * 0.01, velocityH, R, z), "Rejected in order measurement " + i);
+        }
+
+        assertFalse(filter.measure(0.05, positionH, R, z), "Accepted a measurement the ring no longer covers");
+        assertTrue(filter.measure(0.065, positionH, R, z), "Rejected a measurement the ring still covers");
+        assertTrue(filter.getTime() == 0.1, "Replay did not return to the newest time");
+    }
+
+}
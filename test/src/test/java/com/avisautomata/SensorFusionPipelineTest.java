@@ -0,0 +1,206 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SensorFusionPipelineTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    private static final double[][] H = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+    //Position every step, velocity every third and acceleration every fifth
+    private static final int[] EVERY = {1, 3, 5};
+
+    //Position, velocity and acceleration sensors on their own virtual threads, with rings small enough that they
+    //block on the filter, must give exactly the filter you get by sorting and stacking everything up front
+    @Test
+    public void testMatchesSortedStackedUpdates() throws Exception {
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.xBackAndForth();
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(7);
+        double[][] values = new double[moments.size()][3];
+        for(int i = 0; i < moments.size(); i++){
+            GroundTruthGenerator.Moment x = moments.get(i).x();
+            values[i][0] = x.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+            values[i][1] = x.velocity() + random.nextGaussian() * Math.sqrt(measureVariance);
+            values[i][2] = x.acceleration() + random.nextGaussian() * Math.sqrt(measureVariance);
+        }
+
+        //Reference: one stacked update per step with whichever sensors fired
+        ArrayMultivariateKalmanFilter expected = new ArrayMultivariateKalmanFilter(3, 3);
+        MotionModel expectedModel = new ConstantAccelerationModel(1, movementVariance);
+        double lastTime = 0;
+        int expectedUpdates = 0;
+        for(int i = 0; i < moments.size(); i++){
+            List<double[]> rows = new ArrayList<>();
+            List<Double> z = new ArrayList<>();
+            for(int s = 0; s < 3; s++){
+                if(i % EVERY[s] == 0){
+                    rows.add(H[s]);
+                    z.add(values[i][s]);
+                }
+            }
+            int k = rows.size();
+            double[] stackedH = new double[k * 3];
+            double[] stackedR = new double[k * k];
+            double[] stackedZ = new double[k];
+            for(int r = 0; r < k; r++){
+                System.arraycopy(rows.get(r), 0, stackedH, r * 3, 3);
+                stackedR[r * k + r] = measureVariance;
+                stackedZ[r] = z.get(r);
+            }
+            double time = moments.get(i).time();
+            expected.predict(expectedModel, time - lastTime);
+            expected.measure(stackedH, stackedR, stackedZ);
+            lastTime = time;
+            expectedUpdates++;
+        }
+
+        SensorFusionPipeline pipeline = new SensorFusionPipeline(new ArrayMultivariateKalmanFilter(3, 3),
+                new ConstantAccelerationModel(1, movementVariance), 0);
+        List<Thread> producers = new ArrayList<>();
+        for(int s = 0; s < 3; s++){
+            SensorFusionPipeline.Sensor sensor = pipeline.addSensor(H[s], new double[]{measureVariance}, 8,
+                    SensorFusionPipeline.OverflowPolicy.BLOCK);
+            int axis = s;
+            producers.add(Thread.ofVirtual().unstarted(() -> {
+                double[] z = new double[1];
+                for(int i = 0; i < moments.size(); i += EVERY[axis]){
+                    z[0] = values[i][axis];
+                    assertTrue(sensor.offer(moments.get(i).time(), z));
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        int updates = 0;
+        while(producers.stream().anyMatch(Thread::isAlive)){
+            updates += pipeline.process();
+            Thread.onSpinWait();
+        }
+        for(Thread producer : producers){
+            producer.join();
+        }
+        updates += pipeline.flush();
+
+        assertEquals(expectedUpdates, updates);
+        assertEquals(lastTime, pipeline.getTime());
+        double[] expectedState = new double[3];
+        double[] actualState = new double[3];
+        expected.getState(expectedState);
+        pipeline.getFilter().getState(actualState);
+        assertArrayEquals(expectedState, actualState, 0);
+        double[] expectedCovariance = new double[9];
+        double[] actualCovariance = new double[9];
+        expected.getCovariance(expectedCovariance);
+        pipeline.getFilter().getCovariance(actualCovariance);
+        assertArrayEquals(expectedCovariance, actualCovariance, 0);
+    }
+
+    @Test
+    public void testRejectPolicy(){
+        SensorFusionPipeline pipeline = new SensorFusionPipeline(new ArrayMultivariateKalmanFilter(3, 3),
+                new ConstantAccelerationModel(1, movementVariance), 0);
+        SensorFusionPipeline.Sensor rejecting = pipeline.addSensor(H[0], new double[]{measureVariance}, 4,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+        SensorFusionPipeline.Sensor other = pipeline.addSensor(H[1], new double[]{measureVariance}, 3,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+
+        double[] z = new double[1];
+        int accepted = 0;
+        for(int i = 1; i <= 10; i++){
+            if(rejecting.offer(i, z)){
+                accepted++;
+            }
+            other.offer(i, z);
+        }
+        //Capacities round up to a power of two
+        assertEquals(4, accepted);
+        assertEquals(4, rejecting.size());
+        assertEquals(6, rejecting.getRejected());
+        assertEquals(4, other.size());
+        assertEquals(6, other.getRejected());
+
+        //Both sensors share times 1 to 4, so each pair is one stacked update
+        assertEquals(4, pipeline.flush());
+        assertEquals(4, pipeline.getTime());
+        assertEquals(0, rejecting.size());
+        assertTrue(rejecting.offer(5, z));
+    }
+
+    @Test
+    public void testWatermarkAndLateMeasurements(){
+        SensorFusionPipeline pipeline = new SensorFusionPipeline(new ArrayMultivariateKalmanFilter(3, 3),
+                new ConstantAccelerationModel(1, movementVariance), 0);
+        SensorFusionPipeline.Sensor position = pipeline.addSensor(H[0], new double[]{measureVariance}, 16,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+        SensorFusionPipeline.Sensor velocity = pipeline.addSensor(H[1], new double[]{measureVariance}, 16,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+
+        double[] z = new double[1];
+        position.offer(1, z);
+        position.offer(2, z);
+        position.offer(3, z);
+        //Velocity hasn't reported, so position may still be overtaken
+        assertEquals(0, pipeline.process());
+
+        velocity.offer(2, z);
+        assertEquals(2, pipeline.getWatermark());
+        assertEquals(2, pipeline.process());
+        assertEquals(2, pipeline.getTime());
+        assertEquals(1, position.size());
+
+        //Older than the filter by the time it is processed
+        velocity.offer(1.5, z);
+        assertEquals(1, pipeline.flush());
+        assertEquals(1, velocity.getLate());
+        assertEquals(3, pipeline.getTime());
+        assertFalse(position.size() > 0);
+    }
+
+    //A sensor that never reports, or stops reporting, holds the watermark back only as far as the max lag
+    @Test
+    public void testMaxLag(){
+        SensorFusionPipeline pipeline = new SensorFusionPipeline(new ArrayMultivariateKalmanFilter(3, 3),
+                new ConstantAccelerationModel(1, movementVariance), 0);
+        SensorFusionPipeline.Sensor position = pipeline.addSensor(H[0], new double[]{measureVariance}, 16,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+        SensorFusionPipeline.Sensor velocity = pipeline.addSensor(H[1], new double[]{measureVariance}, 16,
+                SensorFusionPipeline.OverflowPolicy.REJECT);
+        pipeline.setMaxLag(2);
+
+        double[] z = new double[1];
+        for(int i = 1; i <= 5; i++){
+            position.offer(i, z);
+        }
+        //Velocity never reported, so the watermark trails position by the max lag
+        assertEquals(3, pipeline.getWatermark());
+        assertEquals(3, pipeline.process());
+        assertEquals(3, pipeline.getTime());
+
+        //Once velocity catches up it holds the watermark again, and anything it sends from behind is late
+        velocity.offer(2, z);
+        velocity.offer(4, z);
+        assertEquals(4, pipeline.getWatermark());
+        assertEquals(1, pipeline.process());
+        assertEquals(1, velocity.getLate());
+        assertEquals(4, pipeline.getTime());
+
+        //Velocity goes quiet while position carries on
+        for(int i = 6; i <= 10; i++){
+            position.offer(i, z);
+        }
+        assertEquals(8, pipeline.getWatermark());
+        assertEquals(4, pipeline.process());
+        assertEquals(8, pipeline.getTime());
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SquareRootKalmanFilterTest {
+
+    private static final int seed = 0;
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+    private static ApacheRandom random;
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    @Test
+    public void testMatchesStandardFilter(){
+        List<GroundTruthGenerator.Moment> truths = GroundTruthGenerator.xBackAndForth().stream().map(GroundTruthGenerator.RobotMoment::x).toList();
+
+        //Constant acceleration has a rank one Q, so this also covers the semidefinite factor
+        MotionModel model = new ConstantAccelerationModel(1, movementVariance);
+        ArrayMultivariateKalmanFilter standard = new ArrayMultivariateKalmanFilter(3, 2);
+        standard.setUpdateMode(UpdateMode.JOSEPH);
+        SquareRootKalmanFilter squareRoot = new SquareRootKalmanFilter(3, 2);
+
+        double[] H = {1, 0, 0, 0, 0, 1};
+        double[] R = {measureVariance, 0.001, 0.001, 4 * measureVariance};
+        double[] z = new double[2];
+
+        double[] expected = new double[9];
+        double[] actual = new double[9];
+        double lastTime = 0;
+        for(GroundTruthGenerator.Moment truth : truths){
+            z[0] = truth.value() + random.nextGaussian() * Math.sqrt(measureVariance);
+            z[1] = truth.acceleration() + random.nextGaussian() * Math.sqrt(4 * measureVariance);
+
+            standard.predict(model, truth.time() - lastTime);
+            squareRoot.predict(model, truth.time() - lastTime);
+            lastTime = truth.time();
+
+            //Every other step only sees the position
+            if(Math.round(truth.time() * 100) % 2 == 0){
+                standard.measure(H, R, z);
+                squareRoot.measure(H, R, z);
+            } else {
+                double[] position = {z[0]};
+                standard.measure(new double[]{1, 0, 0}, new double[]{measureVariance}, position);
+                squareRoot.measure(new double[]{1, 0, 0}, new double[]{measureVariance}, position);
+            }
+
+            standard.getState(expected);
+            squareRoot.getState(actual);
+            for(int i = 0; i < 3; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-8, "State " + i + " differs at " + truth.time());
+            }
+            standard.getCovariance(expected);
+            squareRoot.getCovariance(actual);
+            for(int i = 0; i < 9; i++){
+                assertTrue(Math.abs(expected[i] - actual[i]) < 1e-10, "Covariance " + i + " differs at " + truth.time());
+            }
+        }
+    }
+
+    //A nearly exact position sensor with almost no process noise, P shrinks by many orders of magnitude
+    @Test
+    public void testStaysPositiveDefinite(){
+        double dt = 0.01;
+        double[] F = {1, dt, 0, 1};
+        double[] Q = {1e-12, 0, 0, 1e-12};
+        double[] H = {1, 0};
+        double[] R = {1e-14};
+        double[] z = new double[1];
+
+        SquareRootKalmanFilter squareRoot = new SquareRootKalmanFilter(2, 1);
+
+        double[] covariance = new double[4];
+        for(int step = 0; step < 100_000; step++){
+            z[0] = step * dt + random.nextGaussian() * 1e-7;
+            squareRoot.move(F, Q);
+            squareRoot.measure(H, R, z);
+
+            squareRoot.getCovariance(covariance);
+            assertTrue(smallestEigenvalue(covariance) >= 0, "Square root P lost definiteness at step " + step);
+            assertTrue(covariance[1] == covariance[2], "Square root P is not symmetric at step " + step);
+        }
+
+        double[] state = new double[2];
+        squareRoot.getState(state);
+        assertTrue(Math.abs(state[1] - 1) < 1e-3, "Velocity should be 1, got " + state[1]);
+        squareRoot.getEstimate();
+    }
+
+    //A position known exactly gives a singular P, which setState must take rather than reject
+    @Test
+    public void testSemidefiniteState(){
+        SquareRootKalmanFilter squareRoot = new SquareRootKalmanFilter(2, 1);
+        double[] P = {0, 0, 0, 4};
+        squareRoot.setState(new double[]{1, 2}, P);
+
+        double[] covariance = new double[4];
+        squareRoot.getCovariance(covariance);
+        assertArrayEquals(P, covariance, 0);
+
+        squareRoot.move(new double[]{1, 0.1, 0, 1}, new double[]{0.01, 0, 0, 0.01});
+        squareRoot.measure(new double[]{1, 0}, new double[]{0.01}, new double[]{1.2});
+        squareRoot.getCovariance(covariance);
+        assertTrue(smallestEigenvalue(covariance) >= 0, "P lost definiteness after a singular start");
+    }
+
+    private static double smallestEigenvalue(double[] P){
+        RealMatrix matrix = MatrixUtils.createRealMatrix(new double[][]{{P[0], 0.5 * (P[1] + P[2])}, {0.5 * (P[1] + P[2]), P[3]}});
+        double smallest = Double.POSITIVE_INFINITY;
+        for(double value : new EigenDecomposition(matrix).getRealEigenvalues()){
+            smallest = Math.min(smallest, value);
+        }
+        return smallest;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.avisautomata;
+
+import org.apache.commons.math3.exception.OutOfRangeException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StructuredMatrixTest {
+
+    private static final double measureVariance = 0.01;
+    private static final double movementVariance = 0.01;
+
+    //x/y/h constant acceleration, 9 states as three 3-state blocks, with position measured on each axis. The block and
+    //selection kernels only skip exact zeros, so they must track the dense ones bit for bit.
+    @Test
+    public void testStructuredMatchesDense(){
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.allBackAndForth();
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(2);
+
+        MotionModel structuredModel = new ConstantAccelerationModel(3, movementVariance);
+        MotionModel denseModel = new ConstantAccelerationModel(3, movementVariance);
+        assertEquals(3, structuredModel.getBlockSize());
+        ArrayMultivariateKalmanFilter structured = new ArrayMultivariateKalmanFilter(9, 3);
+        ArrayMultivariateKalmanFilter dense = new ArrayMultivariateKalmanFilter(9, 3);
+        structured.setInnovationStatistics(true);
+        dense.setInnovationStatistics(true);
+
+        SelectionMatrix H = new SelectionMatrix(9, 0, 3, 6);
+        DiagonalMatrix R = new DiagonalMatrix(measureVariance, measureVariance, 2 * measureVariance);
+        double[] denseH = H.toArray();
+        double[] r = R.getDiagonal().clone();
+        double[] z = new double[3];
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.RobotMoment moment : moments){
+            z[0] = moment.x().value() + random.nextGaussian() * 0.1;
+            z[1] = moment.y().value() + random.nextGaussian() * 0.1;
+            z[2] = moment.h().value() + random.nextGaussian() * 0.1;
+            double dt = moment.time() - lastTime;
+            lastTime = moment.time();
+
+            structured.predict(structuredModel, dt);
+            structured.measure(H, R, z);
+
+            denseModel.prepare(dt);
+            dense.move(denseModel.getF(), denseModel.getQ());
+            dense.measureDiagonal(denseH, r, z);
+
+            assertEquals(dense.getNormalizedInnovationSquared(), structured.getNormalizedInnovationSquared(), 0);
+        }
+
+        assertSameState(dense, structured, 9);
+    }
+
+    @Test
+    public void testBlockDiagonalMove(){
+        BlockDiagonalMatrix F = new BlockDiagonalMatrix(2, 1, 3);
+        ApacheRandom random = new ApacheRandom();
+        random.setSeed(4);
+        double[] denseF = new double[36];
+        int[] block = {0, 0, 1, 2, 2, 2};
+        for(int i = 0; i < 6; i++){
+            for(int j = 0; j < 6; j++){
+                if(block[i] == block[j]){
+                    double value = random.nextGaussian();
+                    F.setEntry(i, j, value);
+                    denseF[i * 6 + j] = value;
+                }
+            }
+        }
+        assertArrayEquals(denseF, F.toArray(), 0);
+
+        DiagonalMatrix Q = new DiagonalMatrix(1, 2, 3, 4, 5, 6);
+        double[] denseQ = Q.toArray();
+        double[] initial = {1, -1, 2, -2, 3, -3};
+        ArrayMultivariateKalmanFilter structured = new ArrayMultivariateKalmanFilter(initial, 1);
+        ArrayMultivariateKalmanFilter dense = new ArrayMultivariateKalmanFilter(initial, 1);
+        for(int step = 0; step < 5; step++){
+            structured.move(F, Q);
+            dense.move(denseF, denseQ);
+        }
+        assertSameState(dense, structured, 6);
+
+        structured.move(F, denseQ);
+        dense.move(denseF, denseQ);
+        assertSameState(dense, structured, 6);
+
+        //Copying blocks out of a dense matrix with the same structure
+        BlockDiagonalMatrix copy = new BlockDiagonalMatrix(2, 1, 3);
+        copy.copyBlocksFrom(denseF);
+        assertArrayEquals(denseF, copy.toArray(), 0);
+    }
+
+    @Test
+    public void testSelectionMatrix(){
+        SelectionMatrix H = new SelectionMatrix(4, 2, 0);
+        assertArrayEquals(new double[]{0, 0, 1, 0, 1, 0, 0, 0}, H.toArray(), 0);
+        assertEquals(2, H.getRowDimension());
+        assertEquals(4, H.getColumnDimension());
+        assertThrows(OutOfRangeException.class, () -> new SelectionMatrix(4, 4));
+    }
+
+    private static void assertSameState(ArrayMultivariateKalmanFilter expected, ArrayMultivariateKalmanFilter actual, int n){
+        double[] expectedX = new double[n];
+        double[] actualX = new double[n];
+        expected.getState(expectedX);
+        actual.getState(actualX);
+        assertArrayEquals(expectedX, actualX, 0);
+        double[] expectedP = new double[n * n];
+        double[] actualP = new double[n * n];
+        expected.getCovariance(expectedP);
+        actual.getCovariance(actualP);
+        assertArrayEquals(expectedP, actualP, 0);
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.avisautomata;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+//Generates a trajectory one step at a time from a chain of segments, holding only the current step in primitives.
+//Each segment restarts the clock at its start time and carries value and velocity over from the previous step,
+//the same way GroundTruthGenerator.move() is chained from the last moment, so any length runs in constant memory.
+public class TrajectoryCursor {
+
+    //Pass as a segment acceleration to keep the axis' current acceleration
+    public static final double KEEP = Double.NaN;
+
+    public record Segment(double startTime, double duration, double xAcceleration, double yAcceleration, double hAcceleration) {
+        private double acceleration(GroundTruthGenerator.Axis axis){
+            return switch(axis){
+                case X -> xAcceleration;
+                case Y -> yAcceleration;
+                case H -> hAcceleration;
+            };
+        }
+    }
+
+    private final double timeStep;
+    private final Segment[] segments;
+
+    private final double[] value = new double[3];
+    private final double[] velocity = new double[3];
+    private final double[] acceleration = new double[3];
+
+    private int segment = -1;
+    private double time;
+    private double endTime;
+
+    //Starts at 0 on every axis with the given velocities
+    public TrajectoryCursor(double timeStep, double xVelocity, double yVelocity, double hVelocity, Segment... segments){
+        this.timeStep = timeStep;
+        this.segments = segments.clone();
+        velocity[GroundTruthGenerator.Axis.X.ordinal()] = xVelocity;
+        velocity[GroundTruthGenerator.Axis.Y.ordinal()] = yVelocity;
+        velocity[GroundTruthGenerator.Axis.H.ordinal()] = hVelocity;
+    }
+
+    //Moves to the next step, returns false once every segment is used up
+    public boolean advance(){
+        while(segment < 0 || Math.abs(time - endTime) <= timeStep){
+            if(segment + 1 >= segments.length){
+                return false;
+            }
+            startSegment(segments[++segment]);
+        }
+
+        time += timeStep;
+        for(int axis = 0; axis < 3; axis++){
+            value[axis] += (velocity[axis] * timeStep) + (0.5 * acceleration[axis] * Math.pow(timeStep, 2));
+            velocity[axis] += acceleration[axis] * timeStep;
+        }
+        return true;
+    }
+
+    private void startSegment(Segment next){
+        time = next.startTime();
+        endTime = next.startTime() + next.duration();
+        for(GroundTruthGenerator.Axis axis : GroundTruthGenerator.Axis.values()){
+            double a = next.acceleration(axis);
+            if(!Double.isNaN(a)){
+                acceleration[axis.ordinal()] = a;
+            }
+        }
+    }
+
+    public double time(){
+        return time;
+    }
+
+    public double value(GroundTruthGenerator.Axis axis){
+        return value[axis.ordinal()];
+    }
+
+    public double velocity(GroundTruthGenerator.Axis axis){
+        return velocity[axis.ordinal()];
+    }
+
+    public double acceleration(GroundTruthGenerator.Axis axis){
+        return acceleration[axis.ordinal()];
+    }
+
+    public GroundTruthGenerator.Moment moment(GroundTruthGenerator.Axis axis){
+        return new GroundTruthGenerator.Moment(time, value(axis), velocity(axis), acceleration(axis));
+    }
+
+    public GroundTruthGenerator.RobotMoment moment(){
+        return new GroundTruthGenerator.RobotMoment(time, moment(GroundTruthGenerator.Axis.X), moment(GroundTruthGenerator.Axis.Y), moment(GroundTruthGenerator.Axis.H));
+    }
+
+    //Lazy stream of the remaining steps, each pulled from the cursor on demand
+    public Stream<GroundTruthGenerator.RobotMoment> stream(){
+        Spliterator<GroundTruthGenerator.RobotMoment> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+            @Override
+            public boolean tryAdvance(Consumer<? super GroundTruthGenerator.RobotMoment> action) {
+                if(!advance()){
+                    return false;
+                }
+                action.accept(moment());
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrajectoryCursorTest {
+
+    //The cursor has to reproduce the segment-by-segment move() and zip() composition exactly
+    @Test
+    public void testMatchesMaterializedSegments(){
+        double dt = GroundTruthGenerator.TIME_STEPS;
+        List<GroundTruthGenerator.RobotMoment> expected = new ArrayList<>(GroundTruthGenerator.zip(
+                GroundTruthGenerator.move(dt, 0, 0, 1, 0, 4),
+                GroundTruthGenerator.move(dt, 0, 0, 1, 0, 4),
+                GroundTruthGenerator.move(dt, 0, 0, Math.PI / 2, 0, 4)
+        ));
+        GroundTruthGenerator.RobotMoment last = expected.getLast();
+        expected.addAll(GroundTruthGenerator.zip(
+                GroundTruthGenerator.move(dt, 4, last.x().value(), last.x().velocity(), -1, 2),
+                GroundTruthGenerator.move(dt, 4, last.y().value(), last.y().velocity(), -1, 2),
+                GroundTruthGenerator.move(dt, 4, last.h().value(), last.h().velocity(), -Math.PI / 2, 2)
+        ));
+        last = expected.getLast();
+        expected.addAll(GroundTruthGenerator.zip(
+                GroundTruthGenerator.move(dt, 6, last.x().value(), last.x().velocity(), 0, 4),
+                GroundTruthGenerator.move(dt, 6, last.y().value(), last.y().velocity(), 0, 4),
+                GroundTruthGenerator.move(dt, 6, last.h().value(), last.h().velocity(), 0, 4)
+        ));
+
+        assertEquals(expected, GroundTruthGenerator.allBackAndForth());
+    }
+
+    @Test
+    public void testCursorMatchesStream(){
+        TrajectoryCursor cursor = GroundTruthGenerator.xBackAndForthCursor();
+        List<GroundTruthGenerator.RobotMoment> streamed = GroundTruthGenerator.xBackAndForth();
+
+        for(GroundTruthGenerator.RobotMoment moment : streamed){
+            assertTrue(cursor.advance(), "Cursor ended early");
+            assertTrue(moment.time() == cursor.time());
+            assertTrue(moment.x().value() == cursor.value(GroundTruthGenerator.Axis.X));
+            assertTrue(moment.x().velocity() == cursor.velocity(GroundTruthGenerator.Axis.X));
+            assertTrue(moment.x().acceleration() == cursor.acceleration(GroundTruthGenerator.Axis.X));
+        }
+        assertFalse(cursor.advance(), "Cursor ran past the last segment");
+    }
+
+    //Ten million steps through the primitive cursor, nothing is kept between steps
+    @Test
+    public void testLongRun(){
+        double dt = 1e-4;
+        TrajectoryCursor cursor = new TrajectoryCursor(dt, 1, 0, 0,
+                new TrajectoryCursor.Segment(0, 500, 0, 0, 0),
+                new TrajectoryCursor.Segment(500, 500, 0.01, TrajectoryCursor.KEEP, TrajectoryCursor.KEEP)
+        );
+
+        long steps = 0;
+        while(cursor.advance()){
+            steps++;
+        }
+
+        assertTrue(Math.abs(steps - 1e7) <= 2, "Expected about 1e7 steps, got " + steps);
+        assertEquals(6, cursor.velocity(GroundTruthGenerator.Axis.X), 1e-3);
+        assertEquals(0, cursor.value(GroundTruthGenerator.Axis.Y), 0);
+    }
+
+}
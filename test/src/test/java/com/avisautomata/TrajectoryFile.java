@@ -0,0 +1,199 @@
+package com.avisautomata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+//Fixed-width binary version of the .moments files. A 32 byte header is followed by one packed column of
+//little-endian doubles per field, in COLUMNS order:
+//
+//  int magic, int version, long count, int columns, 12 bytes padding
+//  time[count], x.value[count], x.velocity[count], x.acceleration[count], y.value[count], ... h.acceleration[count]
+//
+//Readers map each column straight from the file and read moments by index without building objects.
+public class TrajectoryFile {
+
+    public static final String EXTENSION = ".trajectory";
+
+    private static final int MAGIC = 0x4D4F4D54; //"MOMT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int COLUMNS = 10;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static void main(String[] args) throws IOException {
+        //Converts every .moments file in the resources directory
+        try(Stream<Path> files = Files.list(GroundTruthGenerator.DIRECTORY)){
+            for(Path json : files.filter(p -> p.getFileName().toString().endsWith(GroundTruthGenerator.EXTENSION)).toList()){
+                Path binary = Paths.get(json.toString().replace(GroundTruthGenerator.EXTENSION, EXTENSION));
+                System.out.println("Converting " + json + " to " + binary);
+                convert(json, binary);
+            }
+        }
+    }
+
+    public static void convert(Path json, Path binary) throws IOException {
+        write(binary, GroundTruthGenerator.read(json));
+    }
+
+    public static void write(Path path, List<GroundTruthGenerator.RobotMoment> moments) throws IOException {
+        write(path, moments.size(), moments.iterator());
+    }
+
+    //Streams count moments into the file without holding them. The columns are laid out by count, so it has to be
+    //known up front, and moments must yield exactly that many.
+    public static void write(Path path, long count, Iterator<GroundTruthGenerator.RobotMoment> moments) throws IOException {
+        if(count > Integer.MAX_VALUE / Double.BYTES){
+            throw new IOException(count + " moments don't fit in a trajectory file");
+        }
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).putInt(COLUMNS);
+            header.clear();
+            channel.write(header, 0);
+
+            MappedByteBuffer[] mapped = new MappedByteBuffer[COLUMNS];
+            DoubleBuffer[] values = new DoubleBuffer[COLUMNS];
+            for(int column = 0; column < COLUMNS; column++){
+                mapped[column] = channel.map(FileChannel.MapMode.READ_WRITE, offset(column, count), count * Double.BYTES);
+                values[column] = mapped[column].order(ORDER).asDoubleBuffer();
+            }
+            for(long i = 0; i < count; i++){
+                if(!moments.hasNext()){
+                    throw new IOException("Expected " + count + " moments, got " + i);
+                }
+                GroundTruthGenerator.RobotMoment moment = moments.next();
+                for(int column = 0; column < COLUMNS; column++){
+                    values[column].put(field(moment, column));
+                }
+            }
+            if(moments.hasNext()){
+                throw new IOException("Expected " + count + " moments, got more");
+            }
+            for(MappedByteBuffer column : mapped){
+                column.force();
+            }
+        }
+    }
+
+    public static Reader open(Path path) throws IOException {
+        return new Reader(path);
+    }
+
+    private static long offset(int column, long count){
+        return HEADER_BYTES + column * count * Double.BYTES;
+    }
+
+    private static double field(GroundTruthGenerator.RobotMoment moment, int column){
+        if(column == 0){
+            return moment.time();
+        }
+        GroundTruthGenerator.Moment axis = switch((column - 1) / 3){
+            case 0 -> moment.x();
+            case 1 -> moment.y();
+            default -> moment.h();
+        };
+        return switch((column - 1) % 3){
+            case 0 -> axis.value();
+            case 1 -> axis.velocity();
+            default -> axis.acceleration();
+        };
+    }
+
+    //Each column is mapped on its own, so a file can hold up to 2^28 moments rather than 2GB in total. close() releases
+    //the channel and drops the mappings, the reader must not be used after it.
+    public static class Reader implements Closeable {
+
+        private final int count;
+        private final FileChannel channel;
+        private final DoubleBuffer[] columns = new DoubleBuffer[COLUMNS];
+
+        private Reader(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.READ);
+            try{
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ORDER);
+                while(header.hasRemaining()){
+                    if(channel.read(header, header.position()) < 0){
+                        throw new IOException(path + " is truncated");
+                    }
+                }
+                header.flip();
+
+                if(header.getInt() != MAGIC){
+                    throw new IOException(path + " is not a trajectory file");
+                }
+                int version = header.getInt();
+                if(version != VERSION){
+                    throw new IOException(path + " has unsupported version " + version);
+                }
+                long moments = header.getLong();
+                if(header.getInt() != COLUMNS || moments > Integer.MAX_VALUE / Double.BYTES){
+                    throw new IOException(path + " has an unexpected layout");
+                }
+                if(channel.size() < offset(COLUMNS, moments)){
+                    throw new IOException(path + " is truncated");
+                }
+
+                this.count = (int) moments;
+                for(int column = 0; column < COLUMNS; column++){
+                    columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, offset(column, moments), moments * Double.BYTES)
+                            .order(ORDER).asDoubleBuffer();
+                }
+            }catch(IOException | RuntimeException e){
+                channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            Arrays.fill(columns, null);
+            channel.close();
+        }
+
+        public int size(){
+            return count;
+        }
+
+        public double time(int index){
+            return columns[0].get(index);
+        }
+
+        public double value(GroundTruthGenerator.Axis axis, int index){
+            return columns[1 + axis.ordinal() * 3].get(index);
+        }
+
+        public double velocity(GroundTruthGenerator.Axis axis, int index){
+            return columns[2 + axis.ordinal() * 3].get(index);
+        }
+
+        public double acceleration(GroundTruthGenerator.Axis axis, int index){
+            return columns[3 + axis.ordinal() * 3].get(index);
+        }
+
+        //Builds the record for callers that still want objects
+        public GroundTruthGenerator.RobotMoment moment(int index){
+            double time = time(index);
+            return new GroundTruthGenerator.RobotMoment(time, moment(GroundTruthGenerator.Axis.X, time, index), moment(GroundTruthGenerator.Axis.Y, time, index), moment(GroundTruthGenerator.Axis.H, time, index));
+        }
+
+        private GroundTruthGenerator.Moment moment(GroundTruthGenerator.Axis axis, double time, int index){
+            return new GroundTruthGenerator.Moment(time, value(axis, index), velocity(axis, index), acceleration(axis, index));
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.avisautomata;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrajectoryFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.allBackAndForth();
+        Path path = directory.resolve("all-back-forth" + TrajectoryFile.EXTENSION);
+
+        TrajectoryFile.write(path, moments);
+        try(TrajectoryFile.Reader reader = TrajectoryFile.open(path)){
+            assertTrue(reader.size() == moments.size(), "Expected " + moments.size() + " moments, got " + reader.size());
+            for(int i = 0; i < moments.size(); i++){
+                GroundTruthGenerator.RobotMoment expected = moments.get(i);
+                assertTrue(expected.time() == reader.time(i), "Time differs at " + i);
+                assertTrue(expected.y().velocity() == reader.velocity(GroundTruthGenerator.Axis.Y, i), "Y velocity differs at " + i);
+                assertTrue(expected.h().acceleration() == reader.acceleration(GroundTruthGenerator.Axis.H, i), "H acceleration differs at " + i);
+                assertTrue(expected.equals(reader.moment(i)), "Moment differs at " + i);
+            }
+        }
+    }
+
+    //Moments generated on the fly are written without ever being collected
+    @Test
+    public void testStreamingWrite() throws IOException {
+        int count = 100_000;
+        Path path = directory.resolve("generated" + TrajectoryFile.EXTENSION);
+        Iterator<GroundTruthGenerator.RobotMoment> generated = IntStream.range(0, count).mapToObj(TrajectoryFileTest::generate).iterator();
+        TrajectoryFile.write(path, count, generated);
+
+        try(TrajectoryFile.Reader reader = TrajectoryFile.open(path)){
+            assertTrue(reader.size() == count, "Expected " + count + " moments, got " + reader.size());
+            for(int i = 0; i < count; i += 997){
+                assertTrue(generate(i).equals(reader.moment(i)), "Moment differs at " + i);
+            }
+        }
+
+        Iterator<GroundTruthGenerator.RobotMoment> tooFew = IntStream.range(0, 10).mapToObj(TrajectoryFileTest::generate).iterator();
+        assertThrows(IOException.class, () -> TrajectoryFile.write(path, 11, tooFew));
+    }
+
+    //A file cut off inside its header fails with the path rather than a buffer underflow
+    @Test
+    public void testTruncatedHeader() throws IOException {
+        Path path = directory.resolve("short" + TrajectoryFile.EXTENSION);
+        TrajectoryFile.write(path, GroundTruthGenerator.xBackAndForth());
+        Files.write(path, Arrays.copyOf(Files.readAllBytes(path), 12));
+
+        IOException thrown = assertThrows(IOException.class, () -> TrajectoryFile.open(path));
+        assertTrue(thrown.getMessage().contains("truncated"), "Unexpected message " + thrown.getMessage());
+    }
+
+    private static GroundTruthGenerator.RobotMoment generate(int i){
+        double time = i * 0.01;
+        return new GroundTruthGenerator.RobotMoment(time,
+                new GroundTruthGenerator.Moment(time, Math.sin(time), Math.cos(time), -Math.sin(time)),
+                new GroundTruthGenerator.Moment(time, i, 1, 0),
+                new GroundTruthGenerator.Moment(time, -i, -1, 0));
+    }
+
+    @Test
+    public void testConvertFromJson() throws IOException {
+        List<GroundTruthGenerator.RobotMoment> moments = GroundTruthGenerator.xBackAndForth();
+        Path json = directory.resolve("x-back-forth" + GroundTruthGenerator.EXTENSION);
+        Path binary = directory.resolve("x-back-forth" + TrajectoryFile.EXTENSION);
+        new ObjectMapper().writeValue(json.toFile(), moments);
+
+        TrajectoryFile.convert(json, binary);
+        try(TrajectoryFile.Reader reader = TrajectoryFile.open(binary)){
+            assertTrue(reader.size() == moments.size(), "Expected " + moments.size() + " moments, got " + reader.size());
+            assertTrue(moments.getLast().equals(reader.moment(reader.size() - 1)), "Last moment differs");
+        }
+    }
+
+}
@@ -89,6 +89,47 @@ public class UnivariateKalmanFilterTest {
         }
     }
 
+    @Test
+    public void testPrimitiveMatchesDistribution() {
+        UnivariateKalmanFilter distributionFilter = new UnivariateKalmanFilter();
+        UnivariateKalmanFilter primitiveFilter = new UnivariateKalmanFilter(0, 1);
+
+        for(Measurement m : getMeasurements()){
+            distributionFilter.move(new NormalDistribution(m.distance, Math.sqrt(movementVariance)));
+            distributionFilter.measure(new NormalDistribution(m.position, Math.sqrt(measureVariance)));
+
+            primitiveFilter.move(m.distance, movementVariance);
+            primitiveFilter.measure(m.position, measureVariance);
 
+            assertTrue(Math.abs(distributionFilter.getMean() - primitiveFilter.getMean()) < 1e-12, "Means differ at " + m.time);
+            assertTrue(Math.abs(distributionFilter.getVariance() - primitiveFilter.getVariance()) < 1e-12, "Variances differ at " + m.time);
+        }
+
+        assertTrue(Math.abs(primitiveFilter.getEstimate().getNumericalVariance() - primitiveFilter.getVariance()) < 1e-12, "Estimate variance differs");
+    }
+
+    @Test
+    public void testSteadyStateMatchesConvergedFilter(){
+        UnivariateKalmanFilter full = new UnivariateKalmanFilter();
+        for(int i = 0; i < 1000; i++){
+            full.move(0.01, movementVariance);
+            full.measure(i * 0.01 + random.nextGaussian() * Math.sqrt(measureVariance), measureVariance);
+        }
+
+        UnivariateKalmanFilter steady = new UnivariateKalmanFilter(full.getMean(), full.getVariance());
+        steady.setSteadyState(movementVariance, measureVariance);
+        assertTrue(Math.abs(steady.getVariance() - full.getVariance()) < 1e-12, "Closed form variance " + steady.getVariance() + " vs " + full.getVariance());
+
+        for(int i = 1000; i < 2000; i++){
+            double z = i * 0.01 + random.nextGaussian() * Math.sqrt(measureVariance);
+            full.move(0.01, movementVariance);
+            steady.move(0.01, movementVariance);
+            assertTrue(Math.abs(full.getVariance() - steady.getVariance()) < 1e-12, "Predicted variance differs at step " + i);
+            full.measure(z, measureVariance);
+            steady.measure(z, measureVariance);
+            assertTrue(Math.abs(full.getMean() - steady.getMean()) < 1e-9, "Mean differs at step " + i);
+            assertTrue(Math.abs(full.getVariance() - steady.getVariance()) < 1e-12, "Variance differs at step " + i);
+        }
+    }
 
 }
@@ -0,0 +1,152 @@
+package com.avisautomata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UnscentedKalmanFilterTest {
+
+    private static final int seed = 0;
+    private static final double rangeVariance = 0.01;
+    private static final double bearingVariance = 0.0001;
+    //The robot brakes at 1 m/s^2, constant velocity needs that much acceleration noise to keep up
+    private static final double movementVariance = 1.0;
+    private static ApacheRandom random;
+
+    //Range and bearing to the robot from a fixed beacon, state is [x, vx, y, vy]
+    private static final double beaconX = -3;
+    private static final double beaconY = -4;
+
+    private static final VectorFunction rangeBearing = (state, out) -> {
+        double dx = state[0] - beaconX;
+        double dy = state[2] - beaconY;
+        out[0] = Math.sqrt(dx * dx + dy * dy);
+        out[1] = Math.atan2(dy, dx);
+    };
+
+    @BeforeEach
+    protected void resetRandom(){
+        random = new ApacheRandom();
+        random.setSeed(seed);
+    }
+
+    private static double[] measureRangeBearing(GroundTruthGenerator.RobotMoment truth, double[] z){
+        rangeBearing.apply(new double[]{truth.x().value(), 0, truth.y().value(), 0}, z);
+        z[0] += random.nextGaussian() * Math.sqrt(rangeVariance);
+        z[1] += random.nextGaussian() * Math.sqrt(bearingVariance);
+        return z;
+    }
+
+    private double[] run(UnscentedKalmanFilter filter, boolean check){
+        double warmup = 1.0;
+        double threshold = 0.25;
+
+        List<GroundTruthGenerator.RobotMoment> truths = GroundTruthGenerator.allBackAndForth();
+        ConstantVelocityModel model = new ConstantVelocityModel(2, movementVariance);
+
+        double[] R = {rangeVariance, 0, 0, bearingVariance};
+        double[] z = new double[2];
+        double[] state = new double[4];
+        double[] F = new double[16];
+        VectorFunction f = (in, out) -> DenseMath.multiplyVector(F, in, out, 4, 4);
+
+        double lastTime = 0;
+        for(GroundTruthGenerator.RobotMoment truth : truths){
+            model.prepare(truth.time() - lastTime);
+            System.arraycopy(model.getF(), 0, F, 0, 16);
+
+            filter.predict(f, model.getQ());
+            filter.measure(rangeBearing, R, measureRangeBearing(truth, z));
+
+            filter.getState(state);
+            if(check && truth.time() > warmup){
+                assertTrue(Math.abs(state[0] - truth.x().value()) < threshold, "X was off by more than " + threshold + " at " + truth.time());
+                assertTrue(Math.abs(state[2] - truth.y().value()) < threshold, "Y was off by more than " + threshold + " at " + truth.time());
+            }
+            lastTime = truth.time();
+        }
+        return state;
+    }
+
+    @Test
+    public void testRangeBearingTracking(){
+        run(new UnscentedKalmanFilter(4, 2), true);
+    }
+
+    @Test
+    public void testParallelMatchesSequential(){
+        double[] sequential = run(new UnscentedKalmanFilter(4, 2), false);
+
+        resetRandom();
+        UnscentedKalmanFilter filter = new UnscentedKalmanFilter(4, 2);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        filter.setPool(pool);
+        double[] parallel = run(filter, false);
+        pool.shutdown();
+
+        for(int i = 0; i < 4; i++){
+            assertTrue(sequential[i] == parallel[i], "State " + i + " differs");
+        }
+    }
+
+    //Heading h turning at a steady 0.8 rad/s from 2.6, crossing from pi to -pi a little after 0.6s. State is [h, vh],
+    //f wraps h, so sigma points of both the state and the measurement straddle the wrap.
+    private double headingError(boolean angles){
+        double headingVariance = 0.0025;
+        double dt = 0.02;
+        double warmup = 0.3;
+        ConstantVelocityModel model = new ConstantVelocityModel(1, 0.01);
+        model.prepare(dt);
+        double[] F = model.getF();
+        VectorFunction f = (in, out) -> {
+            DenseMath.multiplyVector(F, in, out, 2, 2);
+            out[0] = ResidualFunction.wrap(out[0]);
+        };
+        VectorFunction h = (in, out) -> out[0] = ResidualFunction.wrap(in[0]);
+
+        //A wide alpha so the sigma points spread far enough to land on both sides of the wrap
+        UnscentedKalmanFilter filter = new UnscentedKalmanFilter(new double[]{2.6, 0.8}, 1, 0.5, 2, 0);
+        MeanFunction mean = MeanFunction.WEIGHTED;
+        ResidualFunction residual = ResidualFunction.SUBTRACT;
+        if(angles){
+            mean = MeanFunction.angles(0);
+            residual = ResidualFunction.angles(0);
+            filter.setStateFunctions(mean, residual);
+        }
+
+        double[] R = {headingVariance};
+        double[] z = new double[1];
+        double[] state = new double[2];
+        double worst = 0;
+        for(int step = 1; step <= 150; step++){
+            double time = step * dt;
+            double truth = 2.6 + 0.8 * time;
+            z[0] = ResidualFunction.wrap(truth + random.nextGaussian() * Math.sqrt(headingVariance));
+
+            filter.predict(f, model.getQ());
+            filter.measure(h, R, z, mean, residual);
+
+            filter.getState(state);
+            if(time > warmup){
+                worst = Math.max(worst, Math.abs(ResidualFunction.wrap(state[0] - truth)));
+            }
+        }
+        return worst;
+    }
+
+    @Test
+    public void testHeadingWrapsAcrossPi(){
+        double wrapped = headingError(true);
+        assertTrue(wrapped < 0.15, "Heading was off by " + wrapped);
+
+        //Plain means and differences average sigma points at +pi and -pi to about 0
+        resetRandom();
+        double plain = headingError(false);
+        assertTrue(plain > 1, "Plain means should lose the heading at the wrap, worst error was " + plain);
+    }
+
+}